@@ -0,0 +1,80 @@
+#!/usr/bin/env bash
+# Startup time and RSS against a file-based H2 database for:
+#   default               the plain jar, ddl-auto=update and eager beans
+#   fast-startup          the same jar with the fast-startup profile, lazy beans
+#   fast-startup+aot      the jar built with -Pfast-startup and -Dspring.aot.enabled=true
+#   fast-startup+aot+cds  that jar with the AppCDS archive recorded by the -Pfast-startup build
+# Every jar is started from its extracted layout, so the variants differ only in the above.
+# The time is from launching the JVM until GET /edu/api/v1/getallstudents answers, which includes
+# creating the beans that lazy initialization put off. The RSS (VmRSS, Linux only) is taken at
+# that moment. Each variant is started <runs> times and the medians are printed.
+# Usage: scripts/measure-startup.sh [runs] [port], MVN=mvn to use an installed Maven
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+RUNS=${1:-5}
+PORT=${2:-18080}
+MVN=${MVN:-./mvnw}
+WORK=target/startup
+MAIN=se.verran.springbootdemowithtests.SpringBootDemoWithTestsApplication
+JAR=SpringBootDemoWithTests-0.0.1-SNAPSHOT.jar
+URL=http://127.0.0.1:$PORT/edu/api/v1/getallstudents
+
+# The plain jar first, the -Pfast-startup build reuses its classes and leaves target/startup alone
+"$MVN" -B -q -DskipTests clean package
+mkdir -p "$WORK"
+java -Djarmode=tools -jar "target/$JAR" extract --force --destination "$WORK/default"
+"$MVN" -B -q -DskipTests -Pfast-startup package
+
+# H2 is a test dependency, it goes on the classpath after the application's jars
+"$MVN" -B -q dependency:build-classpath -Dmdep.outputFile="$WORK/classpath.txt"
+H2=$(tr ':' '\n' < "$WORK/classpath.txt" | grep '/h2-[0-9.]*\.jar$')
+
+rm -rf "$WORK/db"
+DATABASE=(--spring.datasource.url="jdbc:h2:file:$PWD/$WORK/db/springbootdb;MODE=MySQL;DATABASE_TO_LOWER=TRUE"
+          --spring.datasource.username=sa --spring.datasource.password=
+          --spring.datasource.driver-class-name=org.h2.Driver --spring.sql.init.platform=h2 --server.port="$PORT")
+
+# The schema, so no variant pays for creating it
+java -Dspring.context.exit=onRefresh -cp "$WORK/default/$JAR:$H2" "$MAIN" "${DATABASE[@]}" \
+    --spring.jpa.hibernate.ddl-auto=update > "$WORK/schema.log"
+
+median() {
+    printf '%s\n' "$@" | sort -n | awk '{ values[NR] = $1 } END { print values[int((NR + 1) / 2)] }'
+}
+
+# measure <variant> <jar> [jvm options...] -- [application arguments...]
+measure() {
+    local variant=$1 jar=$2
+    shift 2
+    local jvmOptions=()
+    while [[ $1 != -- ]]; do jvmOptions+=("$1"); shift; done
+    shift
+    local times=() rss=() started=()
+    for ((run = 1; run <= RUNS; run++)); do
+        local log="$WORK/$variant-$run.log"
+        local start=$(date +%s%N)
+        java "${jvmOptions[@]}" -cp "$jar:$H2" "$MAIN" "${DATABASE[@]}" "$@" > "$log" 2>&1 &
+        local pid=$!
+        until curl -sf -o /dev/null "$URL"; do
+            if ! kill -0 "$pid" 2> /dev/null; then
+                echo "$variant didn't start, see $log" >&2
+                exit 1
+            fi
+            sleep 0.05
+        done
+        times+=($(( ($(date +%s%N) - start) / 1000000 )))
+        rss+=($(( $(awk '/^VmRSS/ { print $2 }' "/proc/$pid/status") / 1024 )))
+        started+=($(grep -o 'Started [A-Za-z]* in [0-9.]* seconds' "$log" | awk '{ print $4 * 1000 }'))
+        kill "$pid"
+        wait "$pid" 2> /dev/null || true
+    done
+    printf '%-22s %14s %16s %10s\n' "$variant" "$(median "${started[@]}")" "$(median "${times[@]}")" "$(median "${rss[@]}")"
+}
+
+printf '%-22s %14s %16s %10s\n' variant "started ms" "first answer ms" "RSS MB"
+measure default "$WORK/default/$JAR" --
+measure fast-startup "$WORK/default/$JAR" -- --spring.profiles.active=fast-startup
+measure fast-startup+aot "target/cds/$JAR" -Dspring.aot.enabled=true -- --spring.profiles.active=fast-startup
+measure fast-startup+aot+cds "target/cds/$JAR" -XX:SharedArchiveFile=target/cds/application.jsa -Dspring.aot.enabled=true \
+    -- --spring.profiles.active=fast-startup
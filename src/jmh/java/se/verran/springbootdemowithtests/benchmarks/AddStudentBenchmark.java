@@ -0,0 +1,84 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+import se.verran.springbootdemowithtests.services.StudentService;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Inserts per second with the old existsStudentByEmail + save check against the insert that
+// relies on the unique constraint, for new emails and for emails that already exist.
+// Run with -t to add concurrent writers.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AddStudentBenchmark {
+
+    private static final String EXISTING_EMAIL = "student1@example.com";
+
+    private final AtomicInteger nextEmail = new AtomicInteger();
+    private ConfigurableApplicationContext context;
+    private StudentService studentService;
+    private StudentRepository studentRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seedStudents(context, 10_000);
+        studentService = context.getBean(StudentService.class);
+        studentRepository = context.getBean(StudentRepository.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Student checkThenInsertNewEmail() {
+        return checkThenInsert(newStudent("new" + nextEmail.incrementAndGet() + "@example.com"));
+    }
+
+    @Benchmark
+    public Student constraintInsertNewEmail() {
+        return studentService.addStudent(newStudent("new" + nextEmail.incrementAndGet() + "@example.com"));
+    }
+
+    @Benchmark
+    public Object checkThenInsertExistingEmail() {
+        try {
+            return checkThenInsert(newStudent(EXISTING_EMAIL));
+        } catch (ResponseStatusException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object constraintInsertExistingEmail() {
+        try {
+            return studentService.addStudent(newStudent(EXISTING_EMAIL));
+        } catch (ResponseStatusException e) {
+            return e;
+        }
+    }
+
+    // The implementation addStudent had before the unique constraint
+    private Student checkThenInsert(Student student) {
+        if (studentRepository.existsStudentByEmail(student.getEmail()))
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Email " + student.getEmail() + " already exists");
+        return studentRepository.save(student);
+    }
+
+    private static Student newStudent(String email) {
+        return new Student("First", "Last", LocalDate.of(1990, 1, 1), email);
+    }
+}
@@ -0,0 +1,69 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Compares two JMH JSON result files, e.g. target/jmh-result.json of two commits, and exits
+// with status 1 when a benchmark got worse by more than the threshold percent (default 10).
+// mvn -Pbenchmark test-compile exec:exec \
+//     -Dbenchmark.main=se.verran.springbootdemowithtests.benchmarks.BenchmarkComparison \
+//     -Dbenchmark.args="baseline.json target/jmh-result.json 10"
+public class BenchmarkComparison {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkComparison <baseline.json> <current.json> [threshold percent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+        Map<String, JsonNode> baseline = readResults(new File(args[0]));
+        Map<String, JsonNode> current = readResults(new File(args[1]));
+
+        int regressions = 0;
+        System.out.printf("%-90s %14s %14s %9s%n", "benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, JsonNode> entry : new TreeMap<>(current).entrySet()) {
+            JsonNode baselineResult = baseline.get(entry.getKey());
+            JsonNode primaryMetric = entry.getValue().get("primaryMetric");
+            double currentScore = primaryMetric.get("score").asDouble();
+            String unit = primaryMetric.get("scoreUnit").asText();
+            if (baselineResult == null) {
+                System.out.printf("%-90s %14s %14.3f %9s  %s%n", entry.getKey(), "-", currentScore, "new", unit);
+                continue;
+            }
+            double baselineScore = baselineResult.get("primaryMetric").get("score").asDouble();
+            double change = (currentScore - baselineScore) / baselineScore * 100;
+            // Throughput is better when higher, every other mode measures time
+            boolean higherIsBetter = entry.getValue().get("mode").asText().equals("thrpt");
+            boolean regression = (higherIsBetter ? -change : change) > threshold;
+            if (regression)
+                regressions++;
+            System.out.printf("%-90s %14.3f %14.3f %+8.1f%%  %s%s%n", entry.getKey(), baselineScore, currentScore, change, unit, regression ? "  REGRESSION" : "");
+        }
+        System.out.printf("%d regression%s above %.1f%%%n", regressions, regressions == 1 ? "" : "s", threshold);
+        if (regressions > 0)
+            System.exit(1);
+    }
+
+    // Keyed by benchmark method and parameters, e.g. "...SchoolServiceBenchmark.calculateAverageGrade numberOfStudents=1000"
+    private static Map<String, JsonNode> readResults(File file) throws Exception {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(result.get("benchmark").asText());
+            JsonNode params = result.get("params");
+            if (params != null) {
+                for (Iterator<Map.Entry<String, JsonNode>> fields = params.fields(); fields.hasNext(); ) {
+                    Map.Entry<String, JsonNode> param = fields.next();
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+                }
+            }
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+}
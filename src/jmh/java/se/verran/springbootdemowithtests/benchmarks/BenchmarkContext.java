@@ -0,0 +1,93 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import se.verran.springbootdemowithtests.SpringBootDemoWithTestsApplication;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.services.SchoolAggregateStore;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Boots the application against the in-memory H2 database from the test configuration
+// and fills the student table with generated rows
+final class BenchmarkContext {
+
+    private static final int INSERT_BATCH_SIZE = 10_000;
+
+    private BenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start(String... args) {
+        return builder().web(WebApplicationType.NONE).run(withDefaults(args));
+    }
+
+    // Starts the embedded web server on a random port, see serverPort
+    static ConfigurableApplicationContext startServer(String... args) {
+        return builder().web(WebApplicationType.SERVLET).run(withDefaults(args, "--server.port=0"));
+    }
+
+    // startServer for the reactive profile, WebFlux on Netty over R2DBC
+    static ConfigurableApplicationContext startReactiveServer(String... args) {
+        return builder().web(WebApplicationType.REACTIVE).profiles("reactive").run(withDefaults(args, "--server.port=0"));
+    }
+
+    static int serverPort(ConfigurableApplicationContext context) {
+        return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+    }
+
+    private static SpringApplicationBuilder builder() {
+        return new SpringApplicationBuilder(SpringBootDemoWithTestsApplication.class).logStartupInfo(false);
+    }
+
+    // Passed as arguments so they win over application.properties, later arguments override them
+    private static String[] withDefaults(String[] args, String... extraDefaults) {
+        List<String> allArgs = new ArrayList<>(List.of("--spring.jpa.show-sql=false", "--logging.level.root=WARN"));
+        allArgs.addAll(List.of(extraDefaults));
+        allArgs.addAll(List.of(args));
+        return allArgs.toArray(String[]::new);
+    }
+
+    static void seedStudents(ConfigurableApplicationContext context, int numberOfStudents) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        List<Object[]> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (int id = 1; id <= numberOfStudents; id++) {
+            batch.add(new Object[]{
+                    id,
+                    "First" + id,
+                    "Last" + id,
+                    Date.valueOf(LocalDate.of(1980 + id % 25, 1 + id % 12, 1 + id % 28)),
+                    "student" + id + "@example.com",
+                    id * 7 % 51,
+                    0
+            });
+            if (batch.size() == INSERT_BATCH_SIZE || id == numberOfStudents) {
+                jdbcTemplate.batchUpdate("insert into student (id, first_name, last_name, birth_date, email, java_programming_grade_tenths, version) values (?, ?, ?, ?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+        // Ids are set explicitly above, move the sequence past them so inserts through JPA don't collide
+        jdbcTemplate.execute("alter sequence student_seq restart with " + (numberOfStudents + 1000));
+        // The rows bypassed the write paths that keep the aggregate store up to date
+        context.getBean(SchoolAggregateStore.class).reconcile();
+    }
+
+    static void deleteStudents(ConfigurableApplicationContext context) {
+        context.getBean(JdbcTemplate.class).execute("truncate table student");
+        context.getBean(SchoolAggregateStore.class).reconcile();
+    }
+
+    static List<Student> newStudents(int numberOfStudents, String emailPrefix) {
+        List<Student> students = new ArrayList<>(numberOfStudents);
+        for (int i = 0; i < numberOfStudents; i++) {
+            Student student = new Student("First" + i, "Last" + i, LocalDate.of(1980 + i % 25, 1 + i % 12, 1 + i % 28), emailPrefix + i + "@example.com");
+            student.setJavaProgrammingGrade((i * 7 % 51) / 10.0);
+            students.add(student);
+        }
+        return students;
+    }
+}
@@ -0,0 +1,50 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+import se.verran.springbootdemowithtests.services.StudentService;
+
+import java.util.concurrent.TimeUnit;
+
+// Compares /countstudents before (findAll().size()) and after (COUNT query).
+// Run with -prof gc: gc.alloc.rate.norm grows with the row count for the
+// findAll path and stays flat for countStudents.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CountStudentsBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int numberOfStudents;
+
+    private ConfigurableApplicationContext context;
+    private StudentRepository studentRepository;
+    private StudentService studentService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seedStudents(context, numberOfStudents);
+        studentRepository = context.getBean(StudentRepository.class);
+        studentService = context.getBean(StudentService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int countByLoadingAllStudents() {
+        return studentRepository.findAll().size();
+    }
+
+    @Benchmark
+    public int countStudents() {
+        return studentService.countStudents();
+    }
+}
@@ -0,0 +1,55 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.verran.springbootdemowithtests.config.JacksonConfig;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+import se.verran.springbootdemowithtests.services.StudentService;
+
+import java.util.concurrent.TimeUnit;
+
+// /getallstudents before (managed entities from findAll, serialized by bean introspection) and
+// after (StudentDto projection, serialized by StudentDtoSerializer), query and body together.
+// Run with -prof gc, gc.alloc.rate.norm is what a request allocates for the table.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class GetAllStudentsBenchmark {
+
+    @Param({"1000", "100000"})
+    private int numberOfStudents;
+
+    private ConfigurableApplicationContext context;
+    private StudentRepository studentRepository;
+    private StudentService studentService;
+    private ObjectMapper objectMapper;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seedStudents(context, numberOfStudents);
+        studentRepository = context.getBean(StudentRepository.class);
+        studentService = context.getBean(StudentService.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] entities() throws JsonProcessingException {
+        return JacksonConfig.withToday(objectMapper.writer()).writeValueAsBytes(studentRepository.findAll());
+    }
+
+    @Benchmark
+    public byte[] dtos() throws JsonProcessingException {
+        return JacksonConfig.withToday(objectMapper.writer()).writeValueAsBytes(studentService.getAllStudents());
+    }
+}
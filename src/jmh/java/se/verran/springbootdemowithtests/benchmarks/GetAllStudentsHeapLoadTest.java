@@ -0,0 +1,114 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Peak live heap (heap in use right after each garbage collection) while one client reads the
+// whole student table through the full list, keyset pages of 1000 and the NDJSON stream.
+// The live heap before the request, which includes the H2 table itself, is subtracted and
+// the client discards what it reads, so the numbers are what the server holds on to. Young
+// collections leave promoted garbage behind, so compare how a column grows with the row count.
+// Arguments are the row counts to test, a small young generation gives more samples:
+// mvn -Pbenchmark test-compile exec:exec \
+//     -Dbenchmark.main=se.verran.springbootdemowithtests.benchmarks.GetAllStudentsHeapLoadTest \
+//     -Dbenchmark.jvmArgs="-Xmx2g -Xmn16m" -Dbenchmark.args="10000 100000 1000000"
+public class GetAllStudentsHeapLoadTest {
+
+    private static final int PAGE_SIZE = 1000;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String baseUrl;
+
+    private GetAllStudentsHeapLoadTest(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] rowCounts = args.length == 0 ? new String[]{"10000", "100000", "1000000"} : args;
+        System.out.printf("%12s %16s %16s %16s%n", "rows", "full list MB", "keyset pages MB", "ndjson MB");
+        for (String rowCount : rowCounts) {
+            int numberOfStudents = Integer.parseInt(rowCount);
+            try (ConfigurableApplicationContext context = BenchmarkContext.startServer()) {
+                BenchmarkContext.seedStudents(context, numberOfStudents);
+                GetAllStudentsHeapLoadTest loadTest = new GetAllStudentsHeapLoadTest(
+                        "http://localhost:" + BenchmarkContext.serverPort(context) + "/edu/api/v1");
+                long fullList = peakHeapDuring(loadTest::readFullList);
+                long keysetPages = peakHeapDuring(loadTest::readKeysetPages);
+                long ndjson = peakHeapDuring(loadTest::readStream);
+                System.out.printf("%12d %16.1f %16.1f %16.1f%n", numberOfStudents, megabytes(fullList), megabytes(keysetPages), megabytes(ndjson));
+            }
+        }
+    }
+
+    private void readFullList() throws Exception {
+        httpClient.send(get("/getallstudents"), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private void readKeysetPages() throws Exception {
+        int after = 0;
+        while (true) {
+            HttpResponse<byte[]> response = httpClient.send(get("/getallstudents?after=" + after + "&limit=" + PAGE_SIZE), HttpResponse.BodyHandlers.ofByteArray());
+            JsonNode page = objectMapper.readTree(response.body());
+            if (page.isEmpty())
+                return;
+            after = page.get(page.size() - 1).get("id").asInt();
+        }
+    }
+
+    private void readStream() throws Exception {
+        httpClient.send(get("/streamallstudents"), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+    }
+
+    private static long peakHeapDuring(Request request) throws Exception {
+        System.gc();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long liveHeapBefore = memory.getHeapMemoryUsage().getUsed();
+        AtomicLong peakLiveHeap = new AtomicLong(liveHeapBefore);
+        NotificationListener listener = (notification, handback) -> {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType()))
+                return;
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            long liveHeap = info.getGcInfo().getMemoryUsageAfterGc().values().stream().mapToLong(MemoryUsage::getUsed).sum();
+            peakLiveHeap.accumulateAndGet(liveHeap, Math::max);
+        };
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        collectors.forEach(collector -> ((NotificationEmitter) collector).addNotificationListener(listener, null, null));
+        try {
+            request.run();
+        } finally {
+            for (GarbageCollectorMXBean collector : collectors)
+                ((NotificationEmitter) collector).removeNotificationListener(listener);
+        }
+        return peakLiveHeap.get() - liveHeapBefore;
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        void run() throws Exception;
+    }
+}
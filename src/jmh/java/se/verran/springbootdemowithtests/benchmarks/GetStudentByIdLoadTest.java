@@ -0,0 +1,124 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.verran.springbootdemowithtests.services.StudentService;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Open-loop load on StudentService.getStudentById: lookups start at a fixed rate, whether the
+// earlier ones have answered or not, on a pool the size of Tomcat's. Half of them go to a few
+// hot ids, the rest to any student. Each batch window of StudentByIdLoader gets its own
+// application, PT0S is one findById per lookup. The JDBC statements are counted by Hibernate,
+// latencies are from the moment a lookup was due, so a backlog shows up in them.
+// The second-level cache is off unless cache=true, with it a warm cache answers most lookups.
+// mvn -Pbenchmark clean test-compile exec:exec \
+//     -Dbenchmark.main=se.verran.springbootdemowithtests.benchmarks.GetStudentByIdLoadTest \
+//     -Dbenchmark.args="rate=5000 seconds=30 windows=PT0S,PT0.001S,PT0.002S"
+public class GetStudentByIdLoadTest {
+    private static final int WORKER_THREADS = 200;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(Map.of(
+                "rate", "5000",
+                "seconds", "30",
+                "warmup", "10",
+                "windows", "PT0S,PT0.002S",
+                "students", "100000",
+                "hotIds", "10",
+                "cache", "false"));
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            options.put(option[0], option[1]);
+        }
+        int rate = Integer.parseInt(options.get("rate"));
+        int numberOfStudents = Integer.parseInt(options.get("students"));
+        int hotIds = Integer.parseInt(options.get("hotIds"));
+
+        System.out.printf("%-10s %8s %10s %10s %14s %12s %10s %10s %8s%n",
+                "window", "rate", "lookups", "queries", "queries/lookup", "ids/query", "p50 ms", "p99 ms", "errors");
+        for (String window : options.get("windows").split(",")) {
+            try (ConfigurableApplicationContext context = BenchmarkContext.start(
+                    "--student.by-id.batch-window=" + window,
+                    "--spring.jpa.properties.hibernate.cache.use_second_level_cache=" + options.get("cache"))) {
+                BenchmarkContext.seedStudents(context, numberOfStudents);
+                StudentService studentService = context.getBean(StudentService.class);
+                Statistics statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+                MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+
+                run(studentService, rate, numberOfStudents, hotIds, Duration.ofSeconds(Long.parseLong(options.get("warmup"))));
+                statistics.clear();
+                double batchesBefore = meterRegistry.get("student.by.id.batch.size").summary().count();
+                double idsBefore = meterRegistry.get("student.by.id.batch.size").summary().totalAmount();
+                Result result = run(studentService, rate, numberOfStudents, hotIds, Duration.ofSeconds(Long.parseLong(options.get("seconds"))));
+                long queries = statistics.getPrepareStatementCount();
+                double batches = meterRegistry.get("student.by.id.batch.size").summary().count() - batchesBefore;
+                double ids = meterRegistry.get("student.by.id.batch.size").summary().totalAmount() - idsBefore;
+
+                long[] latencies = result.latencies();
+                Arrays.sort(latencies);
+                System.out.printf("%-10s %8d %10d %10d %14.3f %12.1f %10.2f %10.2f %8d%n", window, rate, latencies.length, queries,
+                        (double) queries / latencies.length, batches == 0 ? 1.0 : ids / batches,
+                        percentile(latencies, 0.50), percentile(latencies, 0.99), result.errors());
+            }
+        }
+    }
+
+    private static Result run(StudentService studentService, int rate, int numberOfStudents, int hotIds, Duration duration) throws InterruptedException {
+        int lookups = (int) (rate * duration.toSeconds());
+        long[] latencies = new long[lookups];
+        AtomicInteger completed = new AtomicInteger();
+        AtomicLong errors = new AtomicLong();
+        ExecutorService workers = Executors.newFixedThreadPool(WORKER_THREADS);
+        ScheduledExecutorService dispatcher = Executors.newSingleThreadScheduledExecutor();
+        long start = System.nanoTime();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        AtomicInteger dispatched = new AtomicInteger();
+        // Every millisecond the lookups that have become due are handed to the workers
+        dispatcher.scheduleAtFixedRate(() -> {
+            int due = (int) Math.min(lookups, (System.nanoTime() - start) / intervalNanos + 1);
+            for (int i = dispatched.get(); i < due; i = dispatched.incrementAndGet()) {
+                long dueAt = start + i * intervalNanos;
+                workers.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int id = 1 + (random.nextBoolean() ? random.nextInt(hotIds) : random.nextInt(numberOfStudents));
+                    try {
+                        studentService.getStudentById(id);
+                        latencies[completed.getAndIncrement()] = System.nanoTime() - dueAt;
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                    }
+                });
+            }
+        }, 0, 1, TimeUnit.MILLISECONDS);
+        while (dispatched.get() < lookups)
+            Thread.sleep(10);
+        dispatcher.shutdownNow();
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+        return new Result(Arrays.copyOf(latencies, completed.get()), errors.get());
+    }
+
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0)
+            return Double.NaN;
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1e6;
+    }
+
+    private record Result(long[] latencies, long errors) {
+    }
+}
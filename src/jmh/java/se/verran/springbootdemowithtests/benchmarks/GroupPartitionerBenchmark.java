@@ -0,0 +1,64 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.verran.springbootdemowithtests.dto.StudentGroups;
+import se.verran.springbootdemowithtests.services.GroupPartitioner;
+import se.verran.springbootdemowithtests.services.RankedStudents;
+import se.verran.springbootdemowithtests.services.SchoolAggregateStore;
+import se.verran.springbootdemowithtests.services.SchoolService;
+
+import java.util.concurrent.TimeUnit;
+
+// /groups: the snake draft alone on a ranked snapshot, and the whole service call, which
+// also walks the grade index of the aggregate store for the snapshot
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class GroupPartitionerBenchmark {
+
+    @Param({"10000", "1000000"})
+    private int numberOfStudents;
+
+    private ConfigurableApplicationContext context;
+    private SchoolService schoolService;
+    private SchoolAggregateStore aggregateStore;
+    private RankedStudents rankedStudents;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seedStudents(context, numberOfStudents);
+        schoolService = context.getBean(SchoolService.class);
+        aggregateStore = context.getBean(SchoolAggregateStore.class);
+        rankedStudents = aggregateStore.getStudentsByGrade();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public StudentGroups partitionIntoGroupsOfFour() {
+        return GroupPartitioner.partition(rankedStudents, numberOfStudents / 4);
+    }
+
+    @Benchmark
+    public StudentGroups partitionIntoTenGroups() {
+        return GroupPartitioner.partition(rankedStudents, 10);
+    }
+
+    @Benchmark
+    public RankedStudents snapshot() {
+        return aggregateStore.getStudentsByGrade();
+    }
+
+    @Benchmark
+    public StudentGroups divideIntoGroupsOfFour() {
+        return schoolService.divideIntoGroupsOf(4);
+    }
+}
@@ -0,0 +1,192 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Closed-loop HTTP load test of thread-per-request (platform) against the virtual and the
+// reactive profile. Each mode starts its own server on a seeded H2 table. Every client sends its
+// next request as soon as the previous one has answered, for a warmup and then for the measured duration.
+// {id} in the path is replaced by a random student id, the default path reads a keyset page
+// from the database, path=/getstudentbyid/{id} looks up single students.
+// Peak heap and peak live threads are sampled during the measured duration. The clients run in the
+// same JVM, so they are in both numbers, the same for every mode. Virtual threads are not counted.
+// mvn -Pbenchmark clean test-compile exec:exec \
+//     -Dbenchmark.main=se.verran.springbootdemowithtests.benchmarks.LoadTestHarness \
+//     -Dbenchmark.jvmArgs="-Xmx4g" -Dbenchmark.args="clients=1000,5000,10000 seconds=30 modes=platform,virtual,reactive"
+// url=http://host:port/edu/api/v1 runs against a server that is already running, e.g. on MySQL,
+// the heap and thread columns then only show the clients.
+// The virtual mode needs Java 21, older JVMs skip it. ulimit -n has to be above twice the client count.
+public class LoadTestHarness {
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+    private final String baseUrl;
+    private final String path;
+    private final int numberOfStudents;
+
+    private LoadTestHarness(String baseUrl, String path, int numberOfStudents) {
+        this.baseUrl = baseUrl;
+        this.path = path;
+        this.numberOfStudents = numberOfStudents;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(Map.of(
+                "clients", "1000,5000,10000",
+                "seconds", "30",
+                "warmup", "10",
+                "modes", "platform,virtual,reactive",
+                "students", "100000",
+                "path", "/getallstudents?after={id}&limit=20"));
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            options.put(option[0], option[1]);
+        }
+        int[] clientCounts = Arrays.stream(options.get("clients").split(",")).mapToInt(Integer::parseInt).toArray();
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.get("warmup")));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.get("seconds")));
+        int numberOfStudents = Integer.parseInt(options.get("students"));
+
+        System.out.printf("%-10s %8s %10s %12s %10s %10s %8s %13s %8s%n",
+                "mode", "clients", "requests", "requests/s", "p50 ms", "p99 ms", "errors", "peak heap MB", "threads");
+        if (options.containsKey("url")) {
+            LoadTestHarness harness = new LoadTestHarness(options.get("url"), options.get("path"), numberOfStudents);
+            for (int clients : clientCounts)
+                harness.run("external", clients, warmup, duration);
+            return;
+        }
+        for (String mode : options.get("modes").split(",")) {
+            if (mode.equals("virtual") && Runtime.version().feature() < 21) {
+                System.out.printf("%-10s skipped, virtual threads need Java 21 (running %s)%n", mode, Runtime.version());
+                continue;
+            }
+            List<String> serverArgs = new ArrayList<>(List.of("--server.tomcat.max-connections=20000", "--server.tomcat.accept-count=1000"));
+            if (mode.equals("virtual"))
+                serverArgs.add("--spring.profiles.active=virtual");
+            try (ConfigurableApplicationContext context = mode.equals("reactive")
+                    ? BenchmarkContext.startReactiveServer()
+                    : BenchmarkContext.startServer(serverArgs.toArray(String[]::new))) {
+                BenchmarkContext.seedStudents(context, numberOfStudents);
+                LoadTestHarness harness = new LoadTestHarness(
+                        "http://localhost:" + BenchmarkContext.serverPort(context) + "/edu/api/v1", options.get("path"), numberOfStudents);
+                for (int clients : clientCounts)
+                    harness.run(mode, clients, warmup, duration);
+            }
+        }
+    }
+
+    private void run(String mode, int clients, Duration warmup, Duration duration) throws InterruptedException {
+        measure(clients, warmup);
+        System.gc();
+        THREADS.resetPeakThreadCount();
+        HeapSampler heapSampler = new HeapSampler();
+        heapSampler.start();
+        Result result = measure(clients, duration);
+        heapSampler.interrupt();
+        heapSampler.join();
+        long[] latencies = result.latencies();
+        Arrays.sort(latencies);
+        System.out.printf("%-10s %8d %10d %12.0f %10.1f %10.1f %8d %13d %8d%n", mode, clients, latencies.length,
+                latencies.length / (duration.toNanos() / 1e9), percentile(latencies, 0.50), percentile(latencies, 0.99), result.errors(),
+                heapSampler.peakBytes / (1024 * 1024), THREADS.getPeakThreadCount());
+    }
+
+    private Result measure(int clients, Duration duration) {
+        long deadline = System.nanoTime() + duration.toNanos();
+        AtomicLong errors = new AtomicLong();
+        List<Client> allClients = new ArrayList<>(clients);
+        CompletableFuture<?>[] finished = new CompletableFuture<?>[clients];
+        for (int i = 0; i < clients; i++) {
+            Client client = new Client();
+            allClients.add(client);
+            finished[i] = client.sendUntil(deadline, errors);
+        }
+        CompletableFuture.allOf(finished).join();
+        long[] latencies = allClients.stream().flatMapToLong(client -> Arrays.stream(client.latencies, 0, client.count)).toArray();
+        return new Result(latencies, errors.get());
+    }
+
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0)
+            return Double.NaN;
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1e6;
+    }
+
+    private HttpRequest nextRequest() {
+        String nextPath = path.replace("{id}", String.valueOf(1 + ThreadLocalRandom.current().nextInt(numberOfStudents)));
+        return HttpRequest.newBuilder(URI.create(baseUrl + nextPath)).timeout(Duration.ofSeconds(60)).GET().build();
+    }
+
+    private record Result(long[] latencies, long errors) {
+    }
+
+    // Used heap every 10 ms, a collection can hide a short peak in between
+    private static class HeapSampler extends Thread {
+        private volatile long peakBytes;
+
+        HeapSampler() {
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                peakBytes = Math.max(peakBytes, MEMORY.getHeapMemoryUsage().getUsed());
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Latencies of the successful requests of one client, a client has one request in flight at a time
+    private class Client {
+        private long[] latencies = new long[64];
+        private int count;
+
+        CompletableFuture<Void> sendUntil(long deadline, AtomicLong errors) {
+            if (System.nanoTime() >= deadline)
+                return CompletableFuture.completedFuture(null);
+            long start = System.nanoTime();
+            return httpClient.sendAsync(nextRequest(), HttpResponse.BodyHandlers.discarding())
+                    .handle((response, failure) -> {
+                        if (failure == null && response.statusCode() < 400)
+                            add(System.nanoTime() - start);
+                        else
+                            errors.incrementAndGet();
+                        return null;
+                    })
+                    .thenCompose(ignored -> sendUntil(deadline, errors));
+        }
+
+        private void add(long latency) {
+            if (count == latencies.length)
+                latencies = Arrays.copyOf(latencies, count * 2);
+            latencies[count++] = latency;
+        }
+    }
+}
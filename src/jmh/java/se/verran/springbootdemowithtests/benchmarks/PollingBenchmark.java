@@ -0,0 +1,69 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.verran.springbootdemowithtests.services.StudentTableVersion;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+// Polls over HTTP with one client: the answer to an up to date If-None-Match (304), the cached
+// bytes for a client without an ETag (200), and the body built again for every poll, which is
+// what every poll cost before. The last one bumps the table version before each request, so
+// the body can't come from the cache, without writing to the table.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PollingBenchmark {
+
+    @Param({"1000", "100000"})
+    private int numberOfStudents;
+
+    @Param({"/getallstudents", "/school/averagegrade", "/school/top20percentscoringstudents"})
+    private String path;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private ConfigurableApplicationContext context;
+    private StudentTableVersion tableVersion;
+    private URI uri;
+    private String etag;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = BenchmarkContext.startServer();
+        BenchmarkContext.seedStudents(context, numberOfStudents);
+        tableVersion = context.getBean(StudentTableVersion.class);
+        tableVersion.bump();
+        uri = URI.create("http://localhost:" + BenchmarkContext.serverPort(context) + "/edu/api/v1" + path);
+        etag = httpClient.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding())
+                .headers().firstValue("ETag").orElseThrow();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int notModified() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri).header("If-None-Match", etag).build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Benchmark
+    public byte[] cachedBody() throws Exception {
+        return httpClient.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofByteArray()).body();
+    }
+
+    @Benchmark
+    public byte[] rebuiltBody() throws Exception {
+        tableVersion.bump();
+        return httpClient.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofByteArray()).body();
+    }
+}
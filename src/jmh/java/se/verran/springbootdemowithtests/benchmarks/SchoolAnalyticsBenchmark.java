@@ -0,0 +1,54 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import se.verran.springbootdemowithtests.services.SnapshotAnalytics;
+import se.verran.springbootdemowithtests.services.StudentSnapshot;
+
+import java.time.LocalDate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// The fork/join pass of the school analytics over a columnar snapshot, at pool sizes from 1 up
+// to the cores of the machine. Pool sizes above the available processors show the overhead of
+// the splitting, not more speed. No context is started, the snapshot is built in memory.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SchoolAnalyticsBenchmark {
+
+    @Param({"1000000", "10000000"})
+    private int numberOfStudents;
+
+    @Param({"1", "2", "4", "8"})
+    private int parallelism;
+
+    private ForkJoinPool pool;
+    private StudentSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new ForkJoinPool(parallelism);
+        int[] ids = new int[numberOfStudents];
+        short[] gradeTenths = new short[numberOfStudents];
+        int[] birthEpochDays = new int[numberOfStudents];
+        for (int i = 0; i < numberOfStudents; i++) {
+            ids[i] = i + 1;
+            gradeTenths[i] = i % 10 == 0 ? StudentSnapshot.UNGRADED : (short) (i * 7 % 51);
+            birthEpochDays[i] = (int) LocalDate.of(1980 + i % 25, 1 + i % 12, 1 + i % 28).toEpochDay();
+        }
+        snapshot = new StudentSnapshot(ids, gradeTenths, birthEpochDays);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public SnapshotAnalytics compute() {
+        return SnapshotAnalytics.compute(snapshot, pool);
+    }
+}
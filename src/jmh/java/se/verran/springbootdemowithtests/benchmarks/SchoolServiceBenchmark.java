@@ -0,0 +1,53 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.services.SchoolService;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The SchoolService read paths behind /averagegrade and /top{percent}percentscoringstudents
+// as they run in the application, at several table sizes
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SchoolServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int numberOfStudents;
+
+    private ConfigurableApplicationContext context;
+    private SchoolService schoolService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seedStudents(context, numberOfStudents);
+        schoolService = context.getBean(SchoolService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String calculateAverageGrade() {
+        return schoolService.calculateAverageGrade();
+    }
+
+    @Benchmark
+    public List<StudentDto> getTopScoringStudents() {
+        return schoolService.getTopScoringStudents();
+    }
+
+    @Benchmark
+    public List<StudentDto> getTopOnePercentScoringStudents() {
+        return schoolService.getTopScoringStudents(1);
+    }
+}
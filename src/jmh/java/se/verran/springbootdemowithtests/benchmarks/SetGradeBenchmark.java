@@ -0,0 +1,74 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.server.ResponseStatusException;
+import se.verran.springbootdemowithtests.services.StudentService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// StudentService.setGradeForStudentById for a valid grade, which parses and updates a random
+// student, and for grades that are rejected while parsing without touching the database.
+// gradeWrites is direct for one UPDATE per grade, or the fsync policy of the write-behind journal
+// (GradeWriteBehind), where a grade costs an append and the flush runs in the background.
+// Run with -prof gc, gc.alloc.rate.norm is the allocation per request.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SetGradeBenchmark {
+
+    private static final int NUMBER_OF_STUDENTS = 10_000;
+    private static final String[] VALID_GRADES = {"0.0", "1.5", "2.7", "3.0", "4.2", "5.0"};
+
+    @Param({"direct", "PERIODIC", "ALWAYS"})
+    private String gradeWrites;
+
+    private ConfigurableApplicationContext context;
+    private StudentService studentService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = gradeWrites.equals("direct")
+                ? BenchmarkContext.start()
+                : BenchmarkContext.start("--student.grades.write-behind.enabled=true",
+                        "--student.grades.write-behind.fsync=" + gradeWrites,
+                        "--student.grades.write-behind.journal-dir=" + Files.createTempDirectory("grade-journal"));
+        BenchmarkContext.seedStudents(context, NUMBER_OF_STUDENTS);
+        studentService = context.getBean(StudentService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public double validGrade() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return studentService.setGradeForStudentById(1 + random.nextInt(NUMBER_OF_STUDENTS), VALID_GRADES[random.nextInt(VALID_GRADES.length)]);
+    }
+
+    @Benchmark
+    public Object gradeOutOfRange() {
+        return setGradeExpectingRejection("6.0");
+    }
+
+    @Benchmark
+    public Object gradeNotANumber() {
+        return setGradeExpectingRejection("four");
+    }
+
+    private Object setGradeExpectingRejection(String grade) {
+        try {
+            return studentService.setGradeForStudentById(1, grade);
+        } catch (ResponseStatusException e) {
+            return e;
+        }
+    }
+}
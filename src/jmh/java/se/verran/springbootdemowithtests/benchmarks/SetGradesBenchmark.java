@@ -0,0 +1,76 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.verran.springbootdemowithtests.dto.GradeBatchResult;
+import se.verran.springbootdemowithtests.dto.GradeUpdate;
+import se.verran.springbootdemowithtests.entities.Grades;
+import se.verran.springbootdemowithtests.services.GradeBatchService;
+import se.verran.springbootdemowithtests.services.StudentService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Time to set 50000 grades in a seeded table, one /setgrade call per grade against the chunked,
+// batched /setgrades. One grade in a hundred is for a student that doesn't exist.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SetGradesBenchmark {
+    private static final int NUMBER_OF_STUDENTS = 100_000;
+
+    @Param({"50000"})
+    private int numberOfGrades;
+
+    private ConfigurableApplicationContext context;
+    private StudentService studentService;
+    private GradeBatchService gradeBatchService;
+    private List<GradeUpdate> gradeUpdates;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seedStudents(context, NUMBER_OF_STUDENTS);
+        studentService = context.getBean(StudentService.class);
+        gradeBatchService = context.getBean(GradeBatchService.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void newGrades() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        gradeUpdates = new ArrayList<>(numberOfGrades);
+        for (int i = 0; i < numberOfGrades; i++) {
+            int studentId = i % 100 == 0 ? NUMBER_OF_STUDENTS + 1 + i : 1 + random.nextInt(NUMBER_OF_STUDENTS);
+            gradeUpdates.add(new GradeUpdate(studentId, Grades.format(random.nextInt(Grades.MAX_TENTHS + 1))));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int setGradeOneByOne() {
+        int updated = 0;
+        for (GradeUpdate gradeUpdate : gradeUpdates) {
+            try {
+                studentService.setGradeForStudentById(gradeUpdate.studentId(), gradeUpdate.grade());
+                updated++;
+            } catch (RuntimeException e) {
+                // Not found, counted like /setgrades does
+            }
+        }
+        return updated;
+    }
+
+    @Benchmark
+    public GradeBatchResult setGrades() {
+        return gradeBatchService.setGrades(gradeUpdates.iterator());
+    }
+}
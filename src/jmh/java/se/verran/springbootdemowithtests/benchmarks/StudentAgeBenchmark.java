@@ -0,0 +1,40 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import se.verran.springbootdemowithtests.entities.Student;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Student.getAge(), computed for every student the API serializes, against the
+// LocalDate.now() and Period.between it used before
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StudentAgeBenchmark {
+
+    private List<Student> students;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        students = BenchmarkContext.newStudents(1024, "age");
+    }
+
+    @Benchmark
+    public int getAge() {
+        next = (next + 1) & 1023;
+        return students.get(next).getAge();
+    }
+
+    @Benchmark
+    public int periodBetweenNow() {
+        next = (next + 1) & 1023;
+        return Period.between(students.get(next).getBirthDate(), LocalDate.now()).getYears();
+    }
+}
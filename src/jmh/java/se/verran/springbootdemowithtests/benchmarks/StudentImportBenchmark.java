@@ -0,0 +1,61 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.verran.springbootdemowithtests.dto.StudentImportResult;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.services.StudentImportService;
+import se.verran.springbootdemowithtests.services.StudentService;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Time to import a whole school into an empty table, one addStudent call per student
+// against the chunked, batched /addstudents import
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class StudentImportBenchmark {
+
+    @Param({"10000", "100000"})
+    private int numberOfStudents;
+
+    private ConfigurableApplicationContext context;
+    private StudentService studentService;
+    private StudentImportService studentImportService;
+    private List<Student> students;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        studentService = context.getBean(StudentService.class);
+        studentImportService = context.getBean(StudentImportService.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyTable() {
+        BenchmarkContext.deleteStudents(context);
+        students = BenchmarkContext.newStudents(numberOfStudents, "import");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int addStudentOneByOne() {
+        for (Student student : students) {
+            studentService.addStudent(student);
+        }
+        return students.size();
+    }
+
+    @Benchmark
+    public StudentImportResult importStudents() {
+        return studentImportService.importStudents(students.iterator());
+    }
+}
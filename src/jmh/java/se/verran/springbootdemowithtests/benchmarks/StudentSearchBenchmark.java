@@ -0,0 +1,69 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.verran.springbootdemowithtests.dto.StudentSearchQuery;
+import se.verran.springbootdemowithtests.dto.StudentSummary;
+import se.verran.springbootdemowithtests.services.StudentService;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Latency of /students/search at a million students, one benchmark per criterion. A last name
+// prefix like "Last12345" matches 11 students, the grade range 4.9 - 5.0 about 4 in 100.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StudentSearchBenchmark {
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"1000000"})
+    private int numberOfStudents;
+
+    private ConfigurableApplicationContext context;
+    private StudentService studentService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seedStudents(context, numberOfStudents);
+        studentService = context.getBean(StudentService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<StudentSummary> byLastNamePrefix() {
+        return search(new StudentSearchQuery(null, "Last" + (numberOfStudents / 100 + randomId() % (numberOfStudents / 100)), null, null, null));
+    }
+
+    @Benchmark
+    public List<StudentSummary> byEmail() {
+        return search(new StudentSearchQuery(null, null, "student" + randomId() + "@example.com", null, null));
+    }
+
+    @Benchmark
+    public List<StudentSummary> byGradeRange() {
+        return search(new StudentSearchQuery(null, null, null, 4.9, 5.0));
+    }
+
+    @Benchmark
+    public List<StudentSummary> byFirstNamePrefixAndGrade() {
+        return search(new StudentSearchQuery("First" + (numberOfStudents / 100 + randomId() % (numberOfStudents / 100)), null, null, 2.5, null));
+    }
+
+    private List<StudentSummary> search(StudentSearchQuery query) {
+        return studentService.searchStudents(query, 0, PAGE_SIZE);
+    }
+
+    private int randomId() {
+        return 1 + ThreadLocalRandom.current().nextInt(numberOfStudents);
+    }
+}
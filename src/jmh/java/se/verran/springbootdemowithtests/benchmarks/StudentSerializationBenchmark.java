@@ -0,0 +1,52 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import se.verran.springbootdemowithtests.config.JacksonConfig;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.entities.Student;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Jackson serialization of the response body of /getallstudents, the entities it used to
+// return against the DTOs with their hand-written serializer.
+// The ObjectMapper is configured by the same builder Spring Boot uses and the writer gets today's
+// date like JacksonConfig's converter gives it, no context is started.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StudentSerializationBenchmark {
+
+    @Param({"20", "1000", "100000"})
+    private int numberOfStudents;
+
+    private ObjectMapper objectMapper;
+    private List<Student> students;
+    private List<StudentDto> studentDtos;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        students = BenchmarkContext.newStudents(numberOfStudents, "json");
+        studentDtos = students.stream()
+                .map(student -> new StudentDto(student.getId(), student.getFirstName(), student.getLastName(),
+                        student.getBirthDate(), student.getEmail(), student.getJavaProgrammingGrade(), student.getVersion()))
+                .toList();
+    }
+
+    @Benchmark
+    public byte[] writeStudentList() throws JsonProcessingException {
+        return JacksonConfig.withToday(objectMapper.writer()).writeValueAsBytes(students);
+    }
+
+    @Benchmark
+    public byte[] writeStudentDtoList() throws JsonProcessingException {
+        return JacksonConfig.withToday(objectMapper.writer()).writeValueAsBytes(studentDtos);
+    }
+}
@@ -0,0 +1,179 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+import se.verran.springbootdemowithtests.services.StudentImportService;
+import se.verran.springbootdemowithtests.services.StudentService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+// Closed-loop load on the write and lookup paths, once per profile, to compare the default JDBC
+// settings with the throughput profile (application-throughput.properties). Each profile gets its
+// own application and threads workers that call one workload for the given seconds:
+//   insert     StudentService.addStudent, one row per transaction
+//   flush100   100 students saved in one transaction, the flush hibernate.jdbc.batch_size batches
+//   setgrade   StudentService.setGradeForStudentById
+//   getbyid    StudentService.getStudentById
+//   getbyids   StudentService.getStudentsByIds with 1 to 100 ids, the IN lists that get padded
+// statements/op counts what Hibernate prepared, the JdbcTemplate UPDATE of setgrade isn't in it.
+// Compare the times of profiles=default and profiles=throughput run one after the other, in one JVM
+// the second application runs on the code the first one got compiled and looks faster.
+// Against the in-memory H2 of the test configuration by default. The statement caching of the profile
+// is Connector/J's, for it pass a local MySQL, e.g. docker run -e MYSQL_ROOT_PASSWORD=1234
+// -e MYSQL_DATABASE=springbootdb -p 3306:3306 mysql:8 and url=jdbc:mysql://localhost:3306/springbootdb
+// mvn -Pbenchmark clean test-compile exec:exec \
+//     -Dbenchmark.main=se.verran.springbootdemowithtests.benchmarks.ThroughputProfileLoadTest \
+//     -Dbenchmark.args="threads=20 seconds=20 workloads=insert,getbyids"
+public class ThroughputProfileLoadTest {
+    private static final int FLUSH_SIZE = 100;
+    private static final int MAX_IDS = 100;
+    private static final AtomicInteger CALLS = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(Map.of(
+                "profiles", "default,throughput",
+                "workloads", "insert,flush100,setgrade,getbyid,getbyids",
+                "threads", "20",
+                "seconds", "20",
+                "warmup", "5",
+                "students", "10000"));
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            options.put(option[0], option[1]);
+        }
+        int threads = Integer.parseInt(options.get("threads"));
+        int numberOfStudents = Integer.parseInt(options.get("students"));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.get("warmup")));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.get("seconds")));
+
+        System.out.printf("%-11s %-9s %8s %10s %10s %10s %14s %8s%n",
+                "profile", "workload", "threads", "ops/s", "p50 ms", "p99 ms", "statements/op", "errors");
+        for (String profile : options.get("profiles").split(",")) {
+            try (ConfigurableApplicationContext context = BenchmarkContext.start(arguments(profile, options))) {
+                StudentRepository studentRepository = context.getBean(StudentRepository.class);
+                context.getBean(StudentImportService.class).importStudents(BenchmarkContext.newStudents(numberOfStudents, profile + "-seed").iterator());
+                int[] ids = studentRepository.findAll().stream().mapToInt(Student::getId).toArray();
+                Statistics statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+
+                for (String name : options.get("workloads").split(",")) {
+                    IntConsumer workload = workloads(context, profile, ids).get(name);
+                    if (workload == null)
+                        throw new IllegalArgumentException("Unknown workload " + name);
+                    run(workload, threads, warmup);
+                    statistics.clear();
+                    Result result = run(workload, threads, duration);
+                    long statements = statistics.getPrepareStatementCount();
+
+                    long[] latencies = result.latencies();
+                    Arrays.sort(latencies);
+                    System.out.printf("%-11s %-9s %8d %10.0f %10.2f %10.2f %14.2f %8d%n", profile, name, threads,
+                            latencies.length / (double) duration.toSeconds(), percentile(latencies, 0.50), percentile(latencies, 0.99),
+                            latencies.length == 0 ? Double.NaN : (double) statements / latencies.length, result.errors());
+                }
+                // A MySQL database outlives the application
+                BenchmarkContext.deleteStudents(context);
+            }
+        }
+    }
+
+    private static String[] arguments(String profile, Map<String, String> options) {
+        List<String> arguments = new ArrayList<>();
+        if (!profile.equals("default"))
+            arguments.add("--spring.profiles.active=" + profile);
+        if (options.containsKey("url")) {
+            arguments.add("--spring.datasource.url=" + options.get("url"));
+            arguments.add("--spring.datasource.username=" + options.getOrDefault("username", "root"));
+            arguments.add("--spring.datasource.password=" + options.getOrDefault("password", "1234"));
+            arguments.add("--spring.datasource.driver-class-name=com.mysql.cj.jdbc.Driver");
+            arguments.add("--spring.jpa.hibernate.ddl-auto=update");
+            arguments.add("--spring.sql.init.platform=mysql");
+        }
+        return arguments.toArray(String[]::new);
+    }
+
+    // Each workload gets the number of the call, which keeps emails unique
+    private static Map<String, IntConsumer> workloads(ConfigurableApplicationContext context, String profile, int[] ids) {
+        StudentService studentService = context.getBean(StudentService.class);
+        StudentRepository studentRepository = context.getBean(StudentRepository.class);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        AtomicInteger batches = new AtomicInteger();
+        Map<String, IntConsumer> workloads = new LinkedHashMap<>();
+        workloads.put("insert", call -> studentService.addStudent(
+                BenchmarkContext.newStudents(1, profile + "-insert" + call + "-").get(0)));
+        workloads.put("flush100", call -> transactionTemplate.executeWithoutResult(status -> {
+            studentRepository.saveAll(BenchmarkContext.newStudents(FLUSH_SIZE, profile + "-flush" + batches.incrementAndGet() + "-"));
+            studentRepository.flush();
+        }));
+        workloads.put("setgrade", call -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            studentService.setGradeForStudentById(ids[random.nextInt(ids.length)], String.valueOf(random.nextInt(51) / 10.0));
+        });
+        workloads.put("getbyid", call -> studentService.getStudentById(ids[ThreadLocalRandom.current().nextInt(ids.length)]));
+        workloads.put("getbyids", call -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            List<Integer> someIds = new ArrayList<>();
+            for (int i = 1 + random.nextInt(MAX_IDS); i > 0; i--)
+                someIds.add(ids[random.nextInt(ids.length)]);
+            studentService.getStudentsByIds(someIds);
+        });
+        return workloads;
+    }
+
+    private static Result run(IntConsumer workload, int threads, Duration duration) throws InterruptedException {
+        ConcurrentLinkedQueue<long[]> latenciesPerWorker = new ConcurrentLinkedQueue<>();
+        AtomicLong errors = new AtomicLong();
+        long end = System.nanoTime() + duration.toNanos();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            workers.execute(() -> {
+                long[] latencies = new long[1024];
+                int count = 0;
+                for (long start = System.nanoTime(); start < end; start = System.nanoTime()) {
+                    try {
+                        workload.accept(CALLS.incrementAndGet());
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                        continue;
+                    }
+                    if (count == latencies.length)
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    latencies[count++] = System.nanoTime() - start;
+                }
+                latenciesPerWorker.add(Arrays.copyOf(latencies, count));
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(duration.toSeconds() + 60, TimeUnit.SECONDS);
+        return new Result(latenciesPerWorker.stream().flatMapToLong(Arrays::stream).toArray(), errors.get());
+    }
+
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0)
+            return Double.NaN;
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1e6;
+    }
+
+    private record Result(long[] latencies, long errors) {
+    }
+}
@@ -0,0 +1,85 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+import se.verran.springbootdemowithtests.services.SchoolService;
+import se.verran.springbootdemowithtests.services.TopScoringSelector;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Top 20 percent: the old full sort against the heap selector on an already loaded list,
+// and the old findAll-and-sort endpoint path against the ORDER BY ... LIMIT query of the
+// repository and getTopScoringStudents, which walks the grade index of the aggregate store.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class TopScoringStudentsBenchmark {
+
+    @Param({"10000", "1000000", "5000000"})
+    private int numberOfStudents;
+
+    private ConfigurableApplicationContext context;
+    private StudentRepository studentRepository;
+    private SchoolService schoolService;
+    private List<Student> loadedStudents;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seedStudents(context, numberOfStudents);
+        studentRepository = context.getBean(StudentRepository.class);
+        schoolService = context.getBean(SchoolService.class);
+        loadedStudents = studentRepository.findAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Student> sortLoadedList() {
+        return sortAndTakeTop(loadedStudents);
+    }
+
+    @Benchmark
+    public List<Student> heapSelectLoadedList() {
+        return TopScoringSelector.selectTop(loadedStudents, topCount(loadedStudents.size()));
+    }
+
+    @Benchmark
+    public List<Student> findAllAndSort() {
+        return sortAndTakeTop(studentRepository.findAll());
+    }
+
+    @Benchmark
+    public List<Student> limitQuery() {
+        return studentRepository.findByOrderByJavaProgrammingGradeTenthsDesc(Limit.of(topCount(numberOfStudents)));
+    }
+
+    @Benchmark
+    public List<StudentDto> aggregateStoreIndex() {
+        return schoolService.getTopScoringStudents(20);
+    }
+
+    // The implementation getTopScoringStudents had before the pushed-down query
+    private static List<Student> sortAndTakeTop(List<Student> studentList) {
+        List<Student> sortedStudentList = studentList
+                .stream()
+                .sorted((student1, student2) -> Double.compare(student2.getJavaProgrammingGrade(), student1.getJavaProgrammingGrade()))
+                .toList();
+        return sortedStudentList.subList(0, topCount(sortedStudentList.size()));
+    }
+
+    private static int topCount(int numberOfStudents) {
+        return (int) Math.ceil(numberOfStudents * 0.2);
+    }
+}
@@ -0,0 +1,91 @@
+package se.verran.springbootdemowithtests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import se.verran.springbootdemowithtests.dto.StudentPatch;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.services.StudentService;
+
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Latency of changing the email of a student with PUT /updatestudent (exists check and merge of
+// the whole student) against PATCH /updatestudent/{id}. After every iteration the SQL statements
+// per update are printed, counted by H2's query statistics.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UpdateStudentBenchmark {
+    private static final int NUMBER_OF_STUDENTS = 10_000;
+
+    private ConfigurableApplicationContext context;
+    private StudentService studentService;
+    private JdbcTemplate jdbcTemplate;
+    // The version each student was last written at, what a client would have read
+    private final int[] versions = new int[NUMBER_OF_STUDENTS + 1];
+    private long updates;
+    private long statementsBefore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seedStudents(context, NUMBER_OF_STUDENTS);
+        studentService = context.getBean(StudentService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.execute("set query_statistics true");
+    }
+
+    @Setup(Level.Iteration)
+    public void countStatements() {
+        updates = 0;
+        statementsBefore = executedStatements();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printStatementsPerUpdate() {
+        // The query reading the statistics counts itself once
+        long statements = executedStatements() - statementsBefore - 1;
+        System.out.printf("%n%.2f statements per update%n", (double) statements / updates);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Student putUpdateStudent() {
+        int id = 1 + ThreadLocalRandom.current().nextInt(NUMBER_OF_STUDENTS);
+        Student student = new Student("First" + id, "Last" + id, LocalDate.of(1980 + id % 25, 1 + id % 12, 1 + id % 28), newEmail(id));
+        student.setId(id);
+        student.setJavaProgrammingGradeTenths((short) (id * 7 % 51));
+        student.setVersion(versions[id]);
+        Student saved = studentService.updateStudent(student);
+        versions[id] = saved.getVersion();
+        updates++;
+        return saved;
+    }
+
+    @Benchmark
+    public int patchStudent() {
+        int id = 1 + ThreadLocalRandom.current().nextInt(NUMBER_OF_STUDENTS);
+        versions[id] = studentService.patchStudent(id, new StudentPatch(null, null, null, newEmail(id), null, versions[id]));
+        updates++;
+        return versions[id];
+    }
+
+    // Unique because the version is part of it
+    private String newEmail(int id) {
+        return "student" + id + "-" + (versions[id] + 1) + "@example.com";
+    }
+
+    private long executedStatements() {
+        Long executions = jdbcTemplate.queryForObject("select sum(execution_count) from information_schema.query_statistics", Long.class);
+        return executions == null ? 0 : executions;
+    }
+}
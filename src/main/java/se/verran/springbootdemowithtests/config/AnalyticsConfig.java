@@ -0,0 +1,20 @@
+package se.verran.springbootdemowithtests.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ForkJoinPool;
+
+// The fork/join pool of SchoolAnalyticsService. A pool of its own, so the analytics of a large
+// snapshot don't take the common pool from parallel streams elsewhere in the application.
+@Configuration
+public class AnalyticsConfig {
+    public static final String ANALYTICS_POOL = "analyticsPool";
+
+    // 0 uses every available processor
+    @Bean(name = ANALYTICS_POOL, destroyMethod = "shutdown")
+    public ForkJoinPool analyticsPool(@Value("${school.analytics.parallelism:0}") int parallelism) {
+        return new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+}
@@ -0,0 +1,12 @@
+package se.verran.springbootdemowithtests.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+// Caffeine cache for the grade statistics, size and expiry are set by spring.cache.caffeine.spec.
+// Every StudentService write evicts it. Count, average and top students come from SchoolAggregateStore.
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    public static final String GRADE_AGGREGATES = "gradeAggregates";
+}
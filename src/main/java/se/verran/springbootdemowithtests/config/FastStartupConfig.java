@@ -0,0 +1,22 @@
+package se.verran.springbootdemowithtests.config;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import se.verran.springbootdemowithtests.services.GradeWriteBehind;
+import se.verran.springbootdemowithtests.services.SchoolAggregateStore;
+
+// The fast-startup profile, see application-fast-startup.properties. Every bean is created on
+// first use except the ones with work to do at startup: GradeWriteBehind replays its journal and
+// starts flushing, SchoolAggregateStore is seeded and schedules its reconciliation.
+@Configuration
+@Profile("fast-startup")
+public class FastStartupConfig {
+
+    // Static, the filters are looked up before any other bean is created
+    @Bean
+    static LazyInitializationExcludeFilter startupWorkExcludeFilter() {
+        return LazyInitializationExcludeFilter.forBeanTypes(GradeWriteBehind.class, SchoolAggregateStore.class);
+    }
+}
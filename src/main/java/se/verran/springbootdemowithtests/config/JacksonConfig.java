@@ -0,0 +1,38 @@
+package se.verran.springbootdemowithtests.config;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import se.verran.springbootdemowithtests.entities.Ages;
+import se.verran.springbootdemowithtests.entities.StudentAgeWriter;
+
+import java.time.LocalDate;
+
+// Every response body is written with today's date as a writer attribute, the ages of all the
+// students in it are computed against that one date. Replaces the converter Spring Boot would add.
+@Configuration
+public class JacksonConfig {
+
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper) {
+        return new MappingJackson2HttpMessageConverter(objectMapper) {
+            @Override
+            protected ObjectWriter customizeWriter(ObjectWriter writer, JavaType javaType, MediaType contentType) {
+                return withToday(writer);
+            }
+        };
+    }
+
+    public static ObjectWriter withToday(ObjectWriter writer) {
+        return withDate(writer, Ages.today());
+    }
+
+    // Ages against the given date instead, for bodies that are written ahead and kept
+    public static ObjectWriter withDate(ObjectWriter writer, LocalDate today) {
+        return writer.withAttribute(StudentAgeWriter.TODAY, today);
+    }
+}
@@ -0,0 +1,32 @@
+package se.verran.springbootdemowithtests.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+// Endpoints are timed by Spring MVC (http.server.requests) and repository methods by Spring Data
+// (spring.data.repository.invocations). The services are timed here, every public method of a
+// class annotated with @Timed, and the rows a request loads are counted by RepositoryRowsAspect.
+// Everything is scraped from /actuator/prometheus.
+@Configuration
+public class MetricsConfig implements WebMvcConfigurer {
+
+    private final MeterRegistry meterRegistry;
+
+    public MetricsConfig(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Bean
+    public TimedAspect timedAspect() {
+        return new TimedAspect(meterRegistry);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RowsPerRequestInterceptor(meterRegistry));
+    }
+}
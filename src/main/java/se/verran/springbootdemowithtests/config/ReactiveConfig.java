@@ -0,0 +1,76 @@
+package se.verran.springbootdemowithtests.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.util.MimeType;
+
+import java.util.Map;
+
+// The reactive profile, see application-reactive.properties
+@Configuration
+@Profile("reactive")
+public class ReactiveConfig implements DisposableBean {
+
+    private ConnectionPool connectionPool;
+
+    // Spring Boot leaves out the DataSource, and with it JPA, as soon as there is a ConnectionFactory
+    // bean. The pool is kept here instead and only DatabaseClient is a bean.
+    @Bean
+    public DatabaseClient databaseClient(@Value("${spring.r2dbc.url}") String url,
+                                         @Value("${spring.r2dbc.username}") String username,
+                                         @Value("${spring.r2dbc.password}") String password,
+                                         @Value("${spring.r2dbc.pool.initial-size:5}") int initialSize,
+                                         @Value("${spring.r2dbc.pool.max-size:20}") int maxSize) {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build();
+        connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+                .initialSize(initialSize)
+                .maxSize(maxSize)
+                .build());
+        return DatabaseClient.create(connectionPool);
+    }
+
+    @Override
+    public void destroy() {
+        if (connectionPool != null)
+            connectionPool.dispose();
+    }
+
+    // Tomcat is on the classpath for Spring MVC and Spring Boot would serve WebFlux on it as well.
+    // The event loops of Netty are what the profile is for.
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    // The ages in a body are written against one date, as JacksonConfig does for Spring MVC. A Flux
+    // is written with one ObjectWriter, so a streamed list gets one date as well. Ordered after
+    // the customizer that registers Spring Boot's own encoder.
+    @Bean
+    @Order(1)
+    public CodecCustomizer todayJacksonCodecCustomizer(ObjectMapper objectMapper) {
+        return configurer -> configurer.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper) {
+            @Override
+            protected ObjectWriter customizeWriter(ObjectWriter writer, MimeType mimeType, ResolvableType elementType, Map<String, Object> hints) {
+                return JacksonConfig.withToday(super.customizeWriter(writer, mimeType, elementType, hints));
+            }
+        });
+    }
+}
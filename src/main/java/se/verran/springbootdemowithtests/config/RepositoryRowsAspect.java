@@ -0,0 +1,76 @@
+package se.verran.springbootdemowithtests.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Counts the rows StudentRepository methods return as student.repository.rows per method, and
+// adds them to the row counter of the current request. A collection counts its size, a stream
+// the elements consumed before it is closed and any other entity or projection one row.
+// Counts, updates and exists checks return numbers or booleans and aren't counted, neither are
+// the entities save methods hand back.
+@Aspect
+@Component
+public class RepositoryRowsAspect {
+
+    private final MeterRegistry meterRegistry;
+    // Looked up once per method, registering is a registry lookup with a new Meter.Id every time
+    private final ConcurrentHashMap<Method, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    public RepositoryRowsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("this(se.verran.springbootdemowithtests.repositories.StudentRepository)")
+    public Object countRows(ProceedingJoinPoint joinPoint) throws Throwable {
+        Object result = joinPoint.proceed();
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        if (method.getName().startsWith("save"))
+            return result;
+        AtomicLong requestRows = requestRows();
+        if (result instanceof Stream<?> stream) {
+            AtomicLong rows = new AtomicLong();
+            return stream.peek(row -> rows.incrementAndGet())
+                    .onClose(() -> record(method, rows.get(), requestRows));
+        }
+        if (result instanceof Collection<?> collection)
+            record(method, collection.size(), requestRows);
+        else if (result instanceof Optional<?> optional)
+            record(method, optional.isPresent() ? 1 : 0, requestRows);
+        else if (result != null && !(result instanceof Number) && !(result instanceof Boolean))
+            record(method, 1, requestRows);
+        return result;
+    }
+
+    private void record(Method method, long rows, AtomicLong requestRows) {
+        summaries.computeIfAbsent(method, m -> DistributionSummary.builder("student.repository.rows")
+                        .description("Rows returned by a StudentRepository method")
+                        .baseUnit("rows")
+                        .tag("method", m.getName())
+                        .register(meterRegistry))
+                .record(rows);
+        if (requestRows != null)
+            requestRows.addAndGet(rows);
+    }
+
+    // null outside of a request, e.g. in the scheduled reconciliation
+    private static AtomicLong requestRows() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null)
+            return null;
+        return attributes.getAttribute(RowsPerRequestInterceptor.ROWS_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof AtomicLong rows ? rows : null;
+    }
+}
@@ -0,0 +1,47 @@
+package se.verran.springbootdemowithtests.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Gives every request a row counter for RepositoryRowsAspect and records it as
+// http.server.requests.rows per endpoint. A streamed response is recorded when the stream has
+// been written, afterCompletion of an async request runs after its async dispatch.
+class RowsPerRequestInterceptor implements HandlerInterceptor {
+    static final String ROWS_ATTRIBUTE = RowsPerRequestInterceptor.class.getName() + ".rows";
+
+    private final MeterRegistry meterRegistry;
+    // One per URI pattern, registered by the first request
+    private final ConcurrentHashMap<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    RowsPerRequestInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(ROWS_ATTRIBUTE) == null)
+            request.setAttribute(ROWS_ATTRIBUTE, new AtomicLong());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (!(request.getAttribute(ROWS_ATTRIBUTE) instanceof AtomicLong rows))
+            return;
+        Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        summaries.computeIfAbsent(uri == null ? "UNKNOWN" : uri.toString(), u -> DistributionSummary.builder("http.server.requests.rows")
+                        .description("Rows loaded from StudentRepository per request")
+                        .baseUnit("rows")
+                        .tag("uri", u)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(rows.get());
+    }
+}
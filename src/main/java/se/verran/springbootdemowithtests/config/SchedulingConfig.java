@@ -0,0 +1,20 @@
+package se.verran.springbootdemowithtests.config;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import se.verran.springbootdemowithtests.services.SchoolAggregateStore;
+
+// Seeds SchoolAggregateStore and runs its periodic reconciliation against the database
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+    // Once every singleton exists and before the web server is started, so the first request
+    // already sees every student. Through the proxy, the seeding runs in a transaction.
+    @Bean
+    SmartInitializingSingleton schoolAggregateSeeding(SchoolAggregateStore aggregateStore) {
+        return aggregateStore::reconcile;
+    }
+}
@@ -0,0 +1,32 @@
+package se.verran.springbootdemowithtests.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+// The virtual profile, see application-virtual.properties. Tomcat's thread pool no longer
+// bounds how many requests reach the database at once, so the DataSource gets a limiter.
+@Configuration
+@Profile("virtual")
+public class VirtualThreadConfig {
+
+    // Static, post processors are created before the beans they process
+    @Bean
+    static BeanPostProcessor connectionLimitingDataSourcePostProcessor(
+            @Value("${datasource.limiter.max-concurrent-connections:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrentConnections,
+            @Value("${datasource.limiter.acquire-timeout:PT5S}") Duration acquireTimeout) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ConnectionLimitingDataSource))
+                    return new ConnectionLimitingDataSource(dataSource, maxConcurrentConnections, acquireTimeout);
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,78 @@
+package se.verran.springbootdemowithtests.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
+import se.verran.springbootdemowithtests.config.JacksonConfig;
+import se.verran.springbootdemowithtests.entities.Ages;
+import se.verran.springbootdemowithtests.services.StudentTableVersion;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.function.Supplier;
+
+// Conditional GET for the endpoints clients poll. The body is written once and kept with an ETag
+// of the table version, today's date, the ages in student bodies change at midnight, and the time
+// it was written. A matching If-None-Match is answered with 304 without building anything.
+// The table version only counts the writes made through this JVM, with several instances a write
+// through another one isn't noticed here. Bodies expire after max-age and are written again
+// under a new ETag, which bounds how long a client can be told that an outdated copy is current.
+// The bodies are kept up to max-bytes in total. There is no Last-Modified, HTTP dates have whole
+// seconds and a write in the second of a response would leave its date unchanged.
+// A String body is sent as text/plain, anything else as JSON.
+@Component
+@Profile("!reactive")
+class CachedResponses {
+
+    private final StudentTableVersion tableVersion;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, CachedBody> bodies;
+
+    CachedResponses(StudentTableVersion tableVersion, ObjectMapper objectMapper,
+                    @Value("${student.responses.max-age:PT1M}") Duration maxAge,
+                    @Value("${student.responses.max-bytes:67108864}") long maxBytes) {
+        this.tableVersion = tableVersion;
+        this.objectMapper = objectMapper;
+        this.bodies = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, CachedBody body) -> body.bytes().length)
+                .expireAfterWrite(maxAge)
+                .build();
+    }
+
+    // null when the client's copy is current, Spring MVC has then already set the 304 and its headers
+    ResponseEntity<byte[]> get(WebRequest request, String key, Supplier<Object> body) throws JsonProcessingException {
+        long version = tableVersion.current();
+        LocalDate today = Ages.today();
+        CachedBody cached = bodies.getIfPresent(key);
+        if (cached == null || cached.version() != version || !cached.today().equals(today)) {
+            cached = write(body.get(), version, today);
+            bodies.put(key, cached);
+        } else if (request.checkNotModified(cached.etag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(cached.etag())
+                .contentType(cached.contentType())
+                .body(cached.bytes());
+    }
+
+    private CachedBody write(Object body, long version, LocalDate today) throws JsonProcessingException {
+        String etag = "\"" + tableVersion.instance() + "-" + version + "-" + today + "-" + Long.toHexString(System.nanoTime()) + "\"";
+        if (body instanceof String text)
+            return new CachedBody(version, today, etag, new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8), text.getBytes(StandardCharsets.UTF_8));
+        byte[] bytes = JacksonConfig.withDate(objectMapper.writer(), today).writeValueAsBytes(body);
+        return new CachedBody(version, today, etag, MediaType.APPLICATION_JSON, bytes);
+    }
+
+    private record CachedBody(long version, LocalDate today, String etag, MediaType contentType, byte[] bytes) {
+    }
+}
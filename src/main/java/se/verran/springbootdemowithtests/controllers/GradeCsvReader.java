@@ -0,0 +1,65 @@
+package se.verran.springbootdemowithtests.controllers;
+
+import se.verran.springbootdemowithtests.dto.GradeUpdate;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Reads "studentId,grade" lines one at a time. Blank lines are skipped, and so is the first other
+// line when it doesn't start with a digit, the header. A line without a numeric student id can't be reported
+// per id and throws IllegalArgumentException. The lines come from BufferedReader.lines() in
+// StudentController and from the decoded request body in ReactiveStudentController.
+class GradeCsvReader implements Iterator<GradeUpdate> {
+    private final Iterator<String> lines;
+    private int lineNumber;
+    private boolean headerChecked;
+    private GradeUpdate next;
+
+    GradeCsvReader(Iterator<String> lines) {
+        this.lines = lines;
+        advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public GradeUpdate next() {
+        if (next == null)
+            throw new NoSuchElementException();
+        GradeUpdate current = next;
+        advance();
+        return current;
+    }
+
+    // Leaves next null at the end of the input
+    private void advance() {
+        next = null;
+        while (lines.hasNext()) {
+            String line = lines.next();
+            lineNumber++;
+            if (line.isBlank())
+                continue;
+            if (!headerChecked) {
+                headerChecked = true;
+                if (!Character.isDigit(line.strip().charAt(0)))
+                    continue;
+            }
+            next = parse(line);
+            return;
+        }
+    }
+
+    private GradeUpdate parse(String line) {
+        int comma = line.indexOf(',');
+        if (comma < 0)
+            throw new IllegalArgumentException("Line " + lineNumber + " should be studentId,grade");
+        try {
+            return new GradeUpdate(Integer.parseInt(line.substring(0, comma).strip()), line.substring(comma + 1).strip());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Line " + lineNumber + " has no valid student id");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package se.verran.springbootdemowithtests.controllers;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import se.verran.springbootdemowithtests.dto.BirthYearCohort;
+import se.verran.springbootdemowithtests.dto.GradeDistribution;
+import se.verran.springbootdemowithtests.dto.GradePercentiles;
+import se.verran.springbootdemowithtests.dto.GradeStatistics;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.dto.StudentGroups;
+import se.verran.springbootdemowithtests.services.ReactiveSchoolService;
+import se.verran.springbootdemowithtests.services.SchoolAnalyticsService;
+
+import java.util.List;
+
+// SchoolController of the reactive profile. The analytics snapshot is built over JDBC when it
+// has expired, so those endpoints run on boundedElastic.
+@RestController
+@Profile("reactive")
+@RequestMapping("/edu/api/v1/school")
+public class ReactiveSchoolController {
+
+    private final ReactiveSchoolService schoolService;
+    private final SchoolAnalyticsService schoolAnalyticsService;
+
+    public ReactiveSchoolController(ReactiveSchoolService schoolService, SchoolAnalyticsService schoolAnalyticsService) {
+        this.schoolService = schoolService;
+        this.schoolAnalyticsService = schoolAnalyticsService;
+    }
+
+    @GetMapping("/countstudents")
+    public Mono<Integer> countStudents(){
+        return schoolService.countStudents();
+    }
+    @GetMapping("/divideintogroupsof/{n}")
+    public Mono<String> getNumberOfGroupsWhenNStudentsPerGroup(@PathVariable int n){
+        return schoolService.numberOfGroupsWhenDividedIntoGroupsOf(n);
+    }
+    @GetMapping("/createnumberofgroups/{n}")
+    public Mono<String> getStudentsPerGroup(@PathVariable int n){
+        return schoolService.numberOfStudentsPerGroupWhenDivideIntoNumberOfGroups(n);
+    }
+    @GetMapping("/groups")
+    public Mono<StudentGroups> getGroups(@RequestParam(required = false) Integer size,
+                                         @RequestParam(required = false) Integer count){
+        if((size == null) == (count == null))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Give either size or count");
+        return size != null ? schoolService.divideIntoGroupsOf(size) : schoolService.divideIntoNumberOfGroups(count);
+    }
+    @GetMapping("/averagegrade")
+    public Mono<String> getAverageGrade(){
+        return schoolService.calculateAverageGrade();
+    }
+    @GetMapping("/gradestats")
+    public Mono<GradeStatistics> getGradeStatistics(){
+        return schoolService.getGradeStatistics();
+    }
+    @GetMapping("/gradepercentiles")
+    public Mono<GradePercentiles> getGradePercentiles(){
+        return Mono.fromCallable(schoolAnalyticsService::getGradePercentiles).subscribeOn(Schedulers.boundedElastic());
+    }
+    @GetMapping("/birthyearcohorts")
+    public Mono<List<BirthYearCohort>> getBirthYearCohorts(){
+        return Mono.fromCallable(schoolAnalyticsService::getBirthYearCohorts).subscribeOn(Schedulers.boundedElastic());
+    }
+    @GetMapping("/gradedistribution")
+    public Mono<GradeDistribution> getGradeDistribution(){
+        return Mono.fromCallable(schoolAnalyticsService::getGradeDistribution).subscribeOn(Schedulers.boundedElastic());
+    }
+    @GetMapping("/top{percent}percentscoringstudents")
+    public Flux<StudentDto> getTopScoringStudents(@PathVariable int percent){
+        return schoolService.getTopScoringStudents(percent);
+    }
+}
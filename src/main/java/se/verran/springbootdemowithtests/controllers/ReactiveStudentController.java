@@ -0,0 +1,143 @@
+package se.verran.springbootdemowithtests.controllers;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import se.verran.springbootdemowithtests.dto.GradeBatchResult;
+import se.verran.springbootdemowithtests.dto.GradeUpdate;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.dto.StudentImportResult;
+import se.verran.springbootdemowithtests.dto.StudentPatch;
+import se.verran.springbootdemowithtests.dto.StudentSearchQuery;
+import se.verran.springbootdemowithtests.dto.StudentSummary;
+import se.verran.springbootdemowithtests.entities.Ages;
+import se.verran.springbootdemowithtests.entities.Grades;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.services.GradeBatchService;
+import se.verran.springbootdemowithtests.services.ReactiveStudentService;
+import se.verran.springbootdemowithtests.services.StudentImportService;
+
+// StudentController of the reactive profile, the same paths, parameters and errors. Lists are
+// written as the rows arrive from R2DBC. The bulk endpoints keep the JDBC batches of
+// StudentImportService and GradeBatchService, they read the decoded body as an Iterator on
+// boundedElastic while the event loop goes on receiving it.
+@RestController
+@Profile("reactive")
+@RequestMapping("/edu/api/v1")
+public class ReactiveStudentController {
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String TEXT_CSV_VALUE = "text/csv";
+
+    private final ReactiveStudentService studentService;
+    private final StudentImportService studentImportService;
+    private final GradeBatchService gradeBatchService;
+
+    public ReactiveStudentController(ReactiveStudentService studentService, StudentImportService studentImportService,
+                                     GradeBatchService gradeBatchService) {
+        this.studentService = studentService;
+        this.studentImportService = studentImportService;
+        this.gradeBatchService = gradeBatchService;
+    }
+
+    @PostMapping("/addstudent")
+    public Mono<Student> addStudent(@RequestBody Student student){
+        return studentService.addStudent(student);
+    }
+    // Accepts a JSON array or NDJSON
+    @PostMapping(value = "/addstudents", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<StudentImportResult> addStudents(@RequestBody Flux<Student> students){
+        return Mono.fromCallable(() -> studentImportService.importStudents(students.toIterable().iterator()))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+    @GetMapping("/getstudentbyid/{id}")
+    public Mono<StudentDto> getStudentById(@PathVariable int id){
+        return studentService.getStudentById(id);
+    }
+    // Without parameters every student, with after and/or limit one page ordered by id
+    @GetMapping("/getallstudents")
+    public Flux<StudentDto> getAllStudents(@RequestParam(required = false) Integer after,
+                                           @RequestParam(required = false) Integer limit){
+        if(after == null && limit == null)
+            return studentService.getAllStudents();
+        int pageSize = limit == null ? MAX_PAGE_SIZE : limit;
+        if(pageSize < 1 || pageSize > MAX_PAGE_SIZE)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit should be between 1 and " + MAX_PAGE_SIZE);
+        return studentService.getStudentsAfter(after == null ? 0 : after, pageSize);
+    }
+    @GetMapping("/students")
+    public Flux<StudentDto> getStudentsByAge(@RequestParam(defaultValue = "0") int minAge,
+                                             @RequestParam(defaultValue = "" + Ages.MAX_AGE) int maxAge,
+                                             @RequestParam(defaultValue = "0") int page,
+                                             @RequestParam(defaultValue = "" + MAX_PAGE_SIZE) int size){
+        if(minAge < 0 || maxAge > Ages.MAX_AGE || minAge > maxAge)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Ages should be between 0 and " + Ages.MAX_AGE + " and minAge at most maxAge");
+        return studentService.getStudentsByAge(minAge, maxAge, pageOf(page, size));
+    }
+    @GetMapping("/students/search")
+    public Flux<StudentSummary> searchStudents(@RequestParam(required = false) String firstName,
+                                               @RequestParam(required = false) String lastName,
+                                               @RequestParam(required = false) String email,
+                                               @RequestParam(required = false) Double minGrade,
+                                               @RequestParam(required = false) Double maxGrade,
+                                               @RequestParam(defaultValue = "0") int after,
+                                               @RequestParam(defaultValue = "" + MAX_PAGE_SIZE) int limit){
+        StudentSearchQuery query = new StudentSearchQuery(firstName, lastName, email, minGrade, maxGrade);
+        if(query.isEmpty())
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Search by firstName, lastName, email, minGrade or maxGrade, or use /getallstudents");
+        if(!isGrade(minGrade) || !isGrade(maxGrade))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Valid grades are 0.0 - 5.0");
+        if(limit < 1 || limit > MAX_PAGE_SIZE)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit should be between 1 and " + MAX_PAGE_SIZE);
+        return studentService.searchStudents(query, after, limit);
+    }
+    // One JSON document per line, as the rows are read
+    @GetMapping(value = "/streamallstudents", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<StudentDto> streamAllStudents(){
+        return studentService.getAllStudents();
+    }
+    @PutMapping("/updatestudent")
+    public Mono<Student> updateStudentById(@RequestBody Student student){
+        return studentService.updateStudent(student);
+    }
+    @PatchMapping("/updatestudent/{id}")
+    public Mono<String> patchStudentById(@PathVariable int id, @RequestBody StudentPatch patch){
+        return studentService.patchStudent(id, patch).map(version -> "Student by id " + id + " updated to version " + version);
+    }
+    @PutMapping("/setgrade/{studentId}/{grade}")
+    public Mono<String> setGradeForStudentById(@PathVariable int studentId, @PathVariable String grade){
+        return studentService.setGradeForStudentById(studentId, grade).map(storedGrade -> "Grade of student by id " + studentId + " set to " + storedGrade);
+    }
+    // A JSON array of {"studentId", "grade"}
+    @PutMapping(value = "/setgrades", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<GradeBatchResult> setGrades(@RequestBody Flux<GradeUpdate> gradeUpdates){
+        return Mono.fromCallable(() -> gradeBatchService.setGrades(gradeUpdates.toIterable().iterator()))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+    // CSV lines of studentId,grade, split into lines by the codecs
+    @PutMapping(value = "/setgrades", consumes = TEXT_CSV_VALUE)
+    public Mono<GradeBatchResult> setGradesFromCsv(@RequestBody Flux<String> lines){
+        return Mono.fromCallable(() -> gradeBatchService.setGrades(new GradeCsvReader(lines.toIterable().iterator())))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Could not read grades: " + e.getMessage()));
+    }
+    @DeleteMapping("/deletestudentbyid/{id}")
+    public Mono<String> deleteStudentById(@PathVariable int id){
+        return studentService.deleteStudent(id).thenReturn("Student by id " + id + " deleted");
+    }
+
+    private static Pageable pageOf(int page, int size) {
+        if(page < 0 || size < 1 || size > MAX_PAGE_SIZE)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Page should be at least 0 and size between 1 and " + MAX_PAGE_SIZE);
+        return PageRequest.of(page, size);
+    }
+    private static boolean isGrade(Double grade) {
+        return grade == null || grade >= 0 && grade <= Grades.MAX_TENTHS / 10.0;
+    }
+}
@@ -1,31 +1,48 @@
 package se.verran.springbootdemowithtests.controllers;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import se.verran.springbootdemowithtests.entities.Student;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import se.verran.springbootdemowithtests.dto.BirthYearCohort;
+import se.verran.springbootdemowithtests.dto.GradeDistribution;
+import se.verran.springbootdemowithtests.dto.GradePercentiles;
+import se.verran.springbootdemowithtests.dto.GradeStatistics;
+import se.verran.springbootdemowithtests.dto.StudentGroups;
+import se.verran.springbootdemowithtests.services.SchoolAnalyticsService;
 import se.verran.springbootdemowithtests.services.SchoolService;
 import se.verran.springbootdemowithtests.services.StudentService;
 
 import java.util.List;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/edu/api/v1/school")
 public class SchoolController {
 
     private final StudentService studentService;
     private final SchoolService schoolService;
+    private final SchoolAnalyticsService schoolAnalyticsService;
+    private final CachedResponses cachedResponses;
 
-    public SchoolController(StudentService studentService, SchoolService schoolService) {
+    public SchoolController(StudentService studentService, SchoolService schoolService, SchoolAnalyticsService schoolAnalyticsService,
+                            CachedResponses cachedResponses) {
         this.studentService = studentService;
         this.schoolService = schoolService;
+        this.schoolAnalyticsService = schoolAnalyticsService;
+        this.cachedResponses = cachedResponses;
     }
 
     @GetMapping("/countstudents")
     public ResponseEntity<Integer> countStudents(){
-        return ResponseEntity.ok(studentService.getAllStudents().size());
+        return ResponseEntity.ok(studentService.countStudents());
     }
     @GetMapping("/divideintogroupsof/{n}")
     public ResponseEntity<String> getNumberOfGroupsWhenNStudentsPerGroup(@PathVariable int n){
@@ -35,12 +52,35 @@ public class SchoolController {
     public ResponseEntity<String> getStudentsPerGroup(@PathVariable int n){
         return ResponseEntity.ok(schoolService.numberOfStudentsPerGroupWhenDivideIntoNumberOfGroups(n));
     }
+    @GetMapping("/groups")
+    public ResponseEntity<StudentGroups> getGroups(@RequestParam(required = false) Integer size,
+                                                   @RequestParam(required = false) Integer count){
+        if((size == null) == (count == null))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Give either size or count");
+        return ResponseEntity.ok(size != null ? schoolService.divideIntoGroupsOf(size) : schoolService.divideIntoNumberOfGroups(count));
+    }
     @GetMapping("/averagegrade")
-    public ResponseEntity<String> getAverageGrade(){
-        return ResponseEntity.ok(schoolService.calculateAverageGrade());
+    public ResponseEntity<byte[]> getAverageGrade(WebRequest request) throws JsonProcessingException {
+        return cachedResponses.get(request, "averagegrade", schoolService::calculateAverageGrade);
+    }
+    @GetMapping("/gradestats")
+    public ResponseEntity<GradeStatistics> getGradeStatistics(){
+        return ResponseEntity.ok(schoolService.getGradeStatistics());
+    }
+    @GetMapping("/gradepercentiles")
+    public ResponseEntity<GradePercentiles> getGradePercentiles(){
+        return ResponseEntity.ok(schoolAnalyticsService.getGradePercentiles());
+    }
+    @GetMapping("/birthyearcohorts")
+    public ResponseEntity<List<BirthYearCohort>> getBirthYearCohorts(){
+        return ResponseEntity.ok(schoolAnalyticsService.getBirthYearCohorts());
+    }
+    @GetMapping("/gradedistribution")
+    public ResponseEntity<GradeDistribution> getGradeDistribution(){
+        return ResponseEntity.ok(schoolAnalyticsService.getGradeDistribution());
     }
-    @GetMapping("/top20percentscoringstudents")
-    public ResponseEntity<List<Student>> getTopScoringStudents(){
-        return ResponseEntity.ok(schoolService.getTopScoringStudents());
+    @GetMapping("/top{percent}percentscoringstudents")
+    public ResponseEntity<byte[]> getTopScoringStudents(@PathVariable int percent, WebRequest request) throws JsonProcessingException {
+        return cachedResponses.get(request, "top" + percent + "percentscoringstudents", () -> schoolService.getTopScoringStudents(percent));
     }
 }
@@ -1,46 +1,202 @@
 package se.verran.springbootdemowithtests.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import se.verran.springbootdemowithtests.config.JacksonConfig;
+import se.verran.springbootdemowithtests.dto.GradeBatchResult;
+import se.verran.springbootdemowithtests.dto.GradeUpdate;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.dto.StudentImportResult;
+import se.verran.springbootdemowithtests.dto.StudentPatch;
+import se.verran.springbootdemowithtests.dto.StudentSearchQuery;
+import se.verran.springbootdemowithtests.dto.StudentSummary;
+import se.verran.springbootdemowithtests.entities.Ages;
+import se.verran.springbootdemowithtests.entities.Grades;
 import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.services.GradeBatchService;
+import se.verran.springbootdemowithtests.services.StudentImportService;
 import se.verran.springbootdemowithtests.services.StudentService;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/edu/api/v1")
 public class StudentController {
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String TEXT_CSV_VALUE = "text/csv";
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType(TEXT_CSV_VALUE);
+
     private final StudentService studentService;
+    private final StudentImportService studentImportService;
+    private final GradeBatchService gradeBatchService;
+    private final CachedResponses cachedResponses;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader studentReader;
+    private final ObjectReader gradeUpdateReader;
+    private final ObjectWriter studentWriter;
 
     @Autowired
-    public StudentController(StudentService studentService) {
+    public StudentController(StudentService studentService, StudentImportService studentImportService,
+                             GradeBatchService gradeBatchService, CachedResponses cachedResponses, ObjectMapper objectMapper) {
         this.studentService = studentService;
+        this.studentImportService = studentImportService;
+        this.gradeBatchService = gradeBatchService;
+        this.cachedResponses = cachedResponses;
+        this.objectMapper = objectMapper;
+        this.studentReader = objectMapper.readerFor(Student.class);
+        this.gradeUpdateReader = objectMapper.readerFor(GradeUpdate.class);
+        this.studentWriter = objectMapper.writerFor(StudentDto.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     @PostMapping("/addstudent")
     public ResponseEntity<Student> addStudent(@RequestBody Student student){
         return ResponseEntity.ok(studentService.addStudent(student));
     }
+    // Accepts a JSON array or NDJSON, the body is read one student at a time and imported in chunks
+    @PostMapping(value = "/addstudents", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<StudentImportResult> addStudents(InputStream body) throws IOException {
+        try (MappingIterator<Student> students = studentReader.readValues(body)) {
+            return ResponseEntity.ok(studentImportService.importStudents(students));
+        } catch (JsonProcessingException | RuntimeJsonMappingException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Could not read students: " + e.getMessage());
+        }
+    }
     @GetMapping("/getstudentbyid/{id}")
     public ResponseEntity<Student> getStudentById(@PathVariable int id){
         return ResponseEntity.ok(studentService.getStudentById(id));
     }
+    // Without parameters every student is returned, with after and/or limit one page ordered by id.
+    // The next page starts after the id of the last student in the previous one. Only the full
+    // list is polled, it is served by CachedResponses.
     @GetMapping("/getallstudents")
-    public ResponseEntity<List<Student>> getAllStudents(){
-        return ResponseEntity.ok(studentService.getAllStudents());
+    public ResponseEntity<?> getAllStudents(@RequestParam(required = false) Integer after,
+                                            @RequestParam(required = false) Integer limit,
+                                            WebRequest request) throws JsonProcessingException {
+        if(after == null && limit == null)
+            return cachedResponses.get(request, "getallstudents", studentService::getAllStudents);
+        int pageSize = limit == null ? MAX_PAGE_SIZE : limit;
+        if(pageSize < 1 || pageSize > MAX_PAGE_SIZE)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit should be between 1 and " + MAX_PAGE_SIZE);
+        return ResponseEntity.ok(studentService.getStudentsAfter(after == null ? 0 : after, pageSize));
+    }
+    // Students from minAge to maxAge years old, youngest first. Either bound can be left out. One page
+    // of at most MAX_PAGE_SIZE students, page counts from 0.
+    @GetMapping("/students")
+    public ResponseEntity<List<StudentDto>> getStudentsByAge(@RequestParam(defaultValue = "0") int minAge,
+                                                          @RequestParam(defaultValue = "" + Ages.MAX_AGE) int maxAge,
+                                                          @RequestParam(defaultValue = "0") int page,
+                                                          @RequestParam(defaultValue = "" + MAX_PAGE_SIZE) int size){
+        if(minAge < 0 || maxAge > Ages.MAX_AGE || minAge > maxAge)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Ages should be between 0 and " + Ages.MAX_AGE + " and minAge at most maxAge");
+        return ResponseEntity.ok(studentService.getStudentsByAge(minAge, maxAge, pageOf(page, size)));
+    }
+    // Names match by prefix, email exactly and grades from minGrade to maxGrade. Pages like
+    // /getallstudents, the next page starts after the id of the last student in the previous one.
+    @GetMapping("/students/search")
+    public ResponseEntity<List<StudentSummary>> searchStudents(@RequestParam(required = false) String firstName,
+                                                               @RequestParam(required = false) String lastName,
+                                                               @RequestParam(required = false) String email,
+                                                               @RequestParam(required = false) Double minGrade,
+                                                               @RequestParam(required = false) Double maxGrade,
+                                                               @RequestParam(defaultValue = "0") int after,
+                                                               @RequestParam(defaultValue = "" + MAX_PAGE_SIZE) int limit){
+        StudentSearchQuery query = new StudentSearchQuery(firstName, lastName, email, minGrade, maxGrade);
+        if(query.isEmpty())
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Search by firstName, lastName, email, minGrade or maxGrade, or use /getallstudents");
+        if(!isGrade(minGrade) || !isGrade(maxGrade))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Valid grades are 0.0 - 5.0");
+        if(limit < 1 || limit > MAX_PAGE_SIZE)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Limit should be between 1 and " + MAX_PAGE_SIZE);
+        return ResponseEntity.ok(studentService.searchStudents(query, after, limit));
+    }
+    // One JSON document per line, written while the rows are read so memory use doesn't depend on the table size
+    @GetMapping(value = "/streamallstudents", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllStudents(){
+        StreamingResponseBody body = outputStream -> {
+            ObjectWriter writer = JacksonConfig.withToday(studentWriter);
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.setRootValueSeparator(null);
+                studentService.forEachStudent(student -> {
+                    try {
+                        writer.writeValue(generator, student);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
     @PutMapping("/updatestudent")
     public ResponseEntity<Student> updateStudentById(@RequestBody Student student){
         return ResponseEntity.ok(studentService.updateStudent(student));
     }
+    // Writes only the fields in the body, version has to be the one the student was read at
+    @PatchMapping("/updatestudent/{id}")
+    public ResponseEntity<String> patchStudentById(@PathVariable int id, @RequestBody StudentPatch patch){
+        return ResponseEntity.ok("Student by id " + id + " updated to version " + studentService.patchStudent(id, patch));
+    }
     @PutMapping("/setgrade/{studentId}/{grade}")
-    public ResponseEntity<Student> setGradeForStudentById(@PathVariable int studentId, @PathVariable String grade){
-        return ResponseEntity.ok(studentService.setGradeForStudentById(studentId, grade));
+    public ResponseEntity<String> setGradeForStudentById(@PathVariable int studentId, @PathVariable String grade){
+        return ResponseEntity.ok("Grade of student by id " + studentId + " set to " + studentService.setGradeForStudentById(studentId, grade));
+    }
+    // Accepts a JSON array of {"studentId", "grade"} or CSV lines of studentId,grade. Every row gets
+    // a result, a grade that isn't valid or a student that doesn't exist doesn't fail the others.
+    // A row that can't be read at all is a 400 and no grade is written.
+    @PutMapping(value = "/setgrades", consumes = {MediaType.APPLICATION_JSON_VALUE, TEXT_CSV_VALUE})
+    public ResponseEntity<GradeBatchResult> setGrades(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                                      InputStream body) throws IOException {
+        if (contentType.isCompatibleWith(TEXT_CSV)) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, contentType.getCharset() == null ? StandardCharsets.UTF_8 : contentType.getCharset()))) {
+                return ResponseEntity.ok(gradeBatchService.setGrades(new GradeCsvReader(reader.lines().iterator())));
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Could not read grades: " + e.getMessage());
+            }
+        }
+        try (MappingIterator<GradeUpdate> gradeUpdates = gradeUpdateReader.readValues(body)) {
+            return ResponseEntity.ok(gradeBatchService.setGrades(gradeUpdates));
+        } catch (JsonProcessingException | RuntimeJsonMappingException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Could not read grades: " + e.getMessage());
+        }
     }
     @DeleteMapping("/deletestudentbyid/{id}")
     public ResponseEntity<String> deleteStudentById(@PathVariable int id){
         studentService.deleteStudent(id);
         return ResponseEntity.ok("Student by id " + id + " deleted");
     }
+
+    private static Pageable pageOf(int page, int size) {
+        if(page < 0 || size < 1 || size > MAX_PAGE_SIZE)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Page should be at least 0 and size between 1 and " + MAX_PAGE_SIZE);
+        return PageRequest.of(page, size);
+    }
+    private static boolean isGrade(Double grade) {
+        return grade == null || grade >= 0 && grade <= Grades.MAX_TENTHS / 10.0;
+    }
 }
@@ -0,0 +1,8 @@
+package se.verran.springbootdemowithtests.dto;
+
+// averageGrade is null when no student born that year has a grade
+public record BirthYearCohort(int birthYear,
+                              long numberOfStudents,
+                              long numberOfGradedStudents,
+                              Double averageGrade) {
+}
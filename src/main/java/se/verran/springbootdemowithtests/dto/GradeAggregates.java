@@ -0,0 +1,17 @@
+package se.verran.springbootdemowithtests.dto;
+
+// Raw result of StudentRepository.aggregateGrades(), one row computed by the database.
+// Students without a grade are counted in numberOfStudents only.
+public interface GradeAggregates {
+    long getNumberOfStudents();
+    long getNumberOfGradedStudents();
+    Double getAverage();
+    Double getMin();
+    Double getMax();
+    Double getSumOfSquares();
+    long getGradesFrom0();
+    long getGradesFrom1();
+    long getGradesFrom2();
+    long getGradesFrom3();
+    long getGradesFrom4();
+}
@@ -0,0 +1,12 @@
+package se.verran.springbootdemowithtests.dto;
+
+import java.util.List;
+
+// One result per row, in the order the rows were sent
+public record GradeBatchResult(int updated, int notFound, int invalidGrade, List<Result> results) {
+
+    public enum Status { UPDATED, NOT_FOUND, INVALID_GRADE }
+
+    public record Result(int studentId, Status status) {
+    }
+}
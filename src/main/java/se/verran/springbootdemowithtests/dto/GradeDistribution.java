@@ -0,0 +1,11 @@
+package se.verran.springbootdemowithtests.dto;
+
+import java.util.List;
+
+// One count per grade a student can have, 0.0 - 5.0 in steps of 0.1
+public record GradeDistribution(long numberOfUngradedStudents,
+                                List<GradeCount> grades) {
+
+    public record GradeCount(double grade, long count) {
+    }
+}
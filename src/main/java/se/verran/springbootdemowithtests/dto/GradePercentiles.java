@@ -0,0 +1,8 @@
+package se.verran.springbootdemowithtests.dto;
+
+// Nearest-rank percentiles of the graded students, null when no student has a grade
+public record GradePercentiles(long numberOfGradedStudents,
+                               Double p10,
+                               Double p50,
+                               Double p90) {
+}
@@ -0,0 +1,17 @@
+package se.verran.springbootdemowithtests.dto;
+
+import java.util.List;
+
+// average, min, max and standardDeviation are null when no student has a grade
+public record GradeStatistics(long numberOfStudents,
+                              long numberOfGradedStudents,
+                              Double average,
+                              Double min,
+                              Double max,
+                              Double standardDeviation,
+                              List<GradeBucket> histogram) {
+
+    // Grades from (inclusive) up to to (exclusive), the last bucket also holds 5.0
+    public record GradeBucket(double from, double to, long count) {
+    }
+}
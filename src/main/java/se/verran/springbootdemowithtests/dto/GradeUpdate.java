@@ -0,0 +1,5 @@
+package se.verran.springbootdemowithtests.dto;
+
+// One row of /setgrades, the grade is read like the {grade} of /setgrade
+public record GradeUpdate(int studentId, String grade) {
+}
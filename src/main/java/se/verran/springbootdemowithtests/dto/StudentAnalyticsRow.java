@@ -0,0 +1,10 @@
+package se.verran.springbootdemowithtests.dto;
+
+import java.time.LocalDate;
+
+// The columns of one student that the school analytics snapshot keeps
+public interface StudentAnalyticsRow {
+    int getId();
+    Short getGradeTenths();
+    LocalDate getBirthDate();
+}
@@ -0,0 +1,18 @@
+package se.verran.springbootdemowithtests.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import se.verran.springbootdemowithtests.entities.Grades;
+
+import java.time.LocalDate;
+
+// A student as the read endpoints return it, selected with a constructor expression so no entity
+// is loaded, managed or snapshotted. Written by StudentDtoSerializer as the same JSON as Student.
+@JsonSerialize(using = StudentDtoSerializer.class)
+public record StudentDto(int id, String firstName, String lastName, LocalDate birthDate, String email,
+                         Double javaProgrammingGrade, int version) {
+
+    public StudentDto(int id, String firstName, String lastName, LocalDate birthDate, String email,
+                      Short javaProgrammingGradeTenths, int version) {
+        this(id, firstName, lastName, birthDate, email, Grades.toGrade(javaProgrammingGradeTenths), version);
+    }
+}
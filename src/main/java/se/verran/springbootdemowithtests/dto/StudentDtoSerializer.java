@@ -0,0 +1,74 @@
+package se.verran.springbootdemowithtests.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import se.verran.springbootdemowithtests.entities.Ages;
+import se.verran.springbootdemowithtests.entities.StudentAgeWriter;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+// Writes the fields directly, in the order Student has them, instead of going through bean
+// introspection, with pre-encoded field names. The age is computed against the date of the
+// response like StudentAgeWriter does.
+public class StudentDtoSerializer extends StdSerializer<StudentDto> {
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString FIRST_NAME = new SerializedString("firstName");
+    private static final SerializableString LAST_NAME = new SerializedString("lastName");
+    private static final SerializableString BIRTH_DATE = new SerializedString("birthDate");
+    private static final SerializableString EMAIL = new SerializedString("email");
+    private static final SerializableString JAVA_PROGRAMMING_GRADE = new SerializedString("javaProgrammingGrade");
+    private static final SerializableString VERSION = new SerializedString("version");
+    private static final SerializableString AGE = new SerializedString("age");
+
+    public StudentDtoSerializer() {
+        super(StudentDto.class);
+    }
+
+    @Override
+    public void serialize(StudentDto student, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject(student);
+        generator.writeFieldName(ID);
+        generator.writeNumber(student.id());
+        generator.writeFieldName(FIRST_NAME);
+        generator.writeString(student.firstName());
+        generator.writeFieldName(LAST_NAME);
+        generator.writeString(student.lastName());
+        generator.writeFieldName(BIRTH_DATE);
+        writeDate(student.birthDate(), generator, provider);
+        generator.writeFieldName(EMAIL);
+        generator.writeString(student.email());
+        generator.writeFieldName(VERSION);
+        generator.writeNumber(student.version());
+        generator.writeFieldName(JAVA_PROGRAMMING_GRADE);
+        if (student.javaProgrammingGrade() == null)
+            generator.writeNull();
+        else
+            generator.writeNumber(student.javaProgrammingGrade());
+        generator.writeFieldName(AGE);
+        if (student.birthDate() == null)
+            generator.writeNull();
+        else
+            generator.writeNumber(Ages.age(student.birthDate(), provider.getAttribute(StudentAgeWriter.TODAY) instanceof LocalDate today ? today : Ages.today()));
+        generator.writeEndObject();
+    }
+
+    // The two forms Jackson's LocalDateSerializer writes, depending on WRITE_DATES_AS_TIMESTAMPS
+    private static void writeDate(LocalDate date, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        if (date == null) {
+            generator.writeNull();
+        } else if (provider.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)) {
+            generator.writeStartArray();
+            generator.writeNumber(date.getYear());
+            generator.writeNumber(date.getMonthValue());
+            generator.writeNumber(date.getDayOfMonth());
+            generator.writeEndArray();
+        } else {
+            generator.writeString(date.toString());
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package se.verran.springbootdemowithtests.dto;
+
+// Id and grade in tenths of one student, all that SchoolAggregateStore keeps per student
+public interface StudentGrade {
+    int getId();
+    Short getGradeTenths();
+}
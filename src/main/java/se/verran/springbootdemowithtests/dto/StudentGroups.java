@@ -0,0 +1,12 @@
+package se.verran.springbootdemowithtests.dto;
+
+import java.util.List;
+
+public record StudentGroups(int numberOfStudents,
+                            int numberOfGroups,
+                            List<Group> groups) {
+
+    // averageGrade is null when no student of the group has a grade
+    public record Group(int number, int size, Double averageGrade, int[] studentIds) {
+    }
+}
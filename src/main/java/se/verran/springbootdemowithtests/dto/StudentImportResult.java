@@ -0,0 +1,10 @@
+package se.verran.springbootdemowithtests.dto;
+
+import java.util.List;
+
+// Rows are numbered from 0 in the order they were sent
+public record StudentImportResult(int imported, List<Conflict> conflicts) {
+
+    public record Conflict(int row, String email, String reason) {
+    }
+}
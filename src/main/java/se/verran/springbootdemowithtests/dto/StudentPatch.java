@@ -0,0 +1,19 @@
+package se.verran.springbootdemowithtests.dto;
+
+import se.verran.springbootdemowithtests.entities.Student;
+
+import java.time.LocalDate;
+
+// Body of PATCH /updatestudent/{id}. Fields that are left out aren't changed, version is the one
+// the client read the student at.
+public record StudentPatch(String firstName, String lastName, LocalDate birthDate, String email,
+                           Double javaProgrammingGrade, Integer version) {
+
+    public StudentPatch {
+        email = Student.normalizeEmail(email);
+    }
+
+    public boolean hasChanges() {
+        return firstName != null || lastName != null || birthDate != null || email != null || javaProgrammingGrade != null;
+    }
+}
@@ -0,0 +1,16 @@
+package se.verran.springbootdemowithtests.dto;
+
+import se.verran.springbootdemowithtests.entities.Student;
+
+// Criteria of /students/search, the ones that are null aren't applied. Names match by prefix,
+// email exactly and grades from minGrade to maxGrade inclusive.
+public record StudentSearchQuery(String firstName, String lastName, String email, Double minGrade, Double maxGrade) {
+
+    public StudentSearchQuery {
+        email = Student.normalizeEmail(email);
+    }
+
+    public boolean isEmpty() {
+        return firstName == null && lastName == null && email == null && minGrade == null && maxGrade == null;
+    }
+}
@@ -0,0 +1,11 @@
+package se.verran.springbootdemowithtests.dto;
+
+import se.verran.springbootdemowithtests.entities.Grades;
+
+// The columns /students/search returns, selected directly instead of loading students
+public record StudentSummary(int id, String firstName, String lastName, String email, Double javaProgrammingGrade) {
+
+    public StudentSummary(int id, String firstName, String lastName, String email, Short javaProgrammingGradeTenths) {
+        this(id, firstName, lastName, email, Grades.toGrade(javaProgrammingGradeTenths));
+    }
+}
@@ -0,0 +1,54 @@
+package se.verran.springbootdemowithtests.entities;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+// Ages in whole years, the same as Period.between(birthDate, today).getYears(). today() reads the
+// clock but only builds a new date once a day, responses read it once, see StudentAgeWriter.
+public final class Ages {
+    public static final int MAX_AGE = 150;
+
+    private static volatile Today today = Today.now();
+
+    private Ages() {
+    }
+
+    public static LocalDate today() {
+        Today current = today;
+        if (System.currentTimeMillis() >= current.nextMidnightMillis()) {
+            current = Today.now();
+            today = current;
+        }
+        return current.date();
+    }
+
+    public static int age(LocalDate birthDate) {
+        return age(birthDate, today());
+    }
+
+    public static int age(LocalDate birthDate, LocalDate date) {
+        int age = date.getYear() - birthDate.getYear();
+        if (date.getMonthValue() < birthDate.getMonthValue()
+                || date.getMonthValue() == birthDate.getMonthValue() && date.getDayOfMonth() < birthDate.getDayOfMonth())
+            age--;
+        return age;
+    }
+
+    // The latest birth date of someone who is at least minAge on the date
+    public static LocalDate latestBirthDate(int minAge, LocalDate date) {
+        return date.minusYears(minAge);
+    }
+
+    // The earliest birth date of someone who is at most maxAge on the date
+    public static LocalDate earliestBirthDate(int maxAge, LocalDate date) {
+        return date.minusYears(maxAge + 1L).plusDays(1);
+    }
+
+    private record Today(LocalDate date, long nextMidnightMillis) {
+        static Today now() {
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDate date = LocalDate.now(zone);
+            return new Today(date, date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli());
+        }
+    }
+}
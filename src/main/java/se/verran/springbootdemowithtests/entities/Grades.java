@@ -0,0 +1,73 @@
+package se.verran.springbootdemowithtests.entities;
+
+// Grades are stored as tenths in a SMALLINT, 3.5 is 35. The valid range is 0.0 - 5.0.
+public final class Grades {
+    public static final int MAX_TENTHS = 50;
+    public static final int INVALID = -1;
+    private static final double BOUND_EPSILON = 1e-9;
+
+    private Grades() {
+    }
+
+    // "4", "3.5", "4.50" and ".5" are read as tenths. Anything else, a finer grade than tenths
+    // or one outside 0.0 - 5.0 gives INVALID. Reads the characters in place and allocates nothing.
+    public static int parseTenths(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        int whole = 0;
+        boolean hasDigits = false;
+        while (i < length && isDigit(text.charAt(i))) {
+            whole = whole * 10 + (text.charAt(i++) - '0');
+            if (whole > MAX_TENTHS / 10)
+                return INVALID;
+            hasDigits = true;
+        }
+        int tenths = whole * 10;
+        if (i < length) {
+            if (text.charAt(i++) != '.')
+                return INVALID;
+            if (i < length && isDigit(text.charAt(i))) {
+                tenths += text.charAt(i++) - '0';
+                hasDigits = true;
+            }
+            while (i < length) {
+                if (text.charAt(i++) != '0')
+                    return INVALID;
+            }
+        }
+        return hasDigits && tenths <= MAX_TENTHS ? tenths : INVALID;
+    }
+
+    // Rounded to the nearest tenth, range checks are left to the callers, see StudentService.checkGrade
+    public static Short toTenths(Double grade) {
+        if (grade == null)
+            return null;
+        long tenths = Math.round(grade * 10);
+        if (tenths < Short.MIN_VALUE || tenths > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Valid grades are 0.0 - 5.0");
+        return (short) tenths;
+    }
+
+    // Bounds of a range rounded inwards to whole tenths, so nothing outside the range matches:
+    // a lower bound of 3.44 is 3.5 and an upper bound of 3.46 is 3.4. The epsilon keeps a bound
+    // that is whole tenths where it is, 0.7 * 10 is 7.000000000000001.
+    public static short lowerBoundTenths(double grade) {
+        return (short) Math.ceil(grade * 10 - BOUND_EPSILON);
+    }
+
+    public static short upperBoundTenths(double grade) {
+        return (short) Math.floor(grade * 10 + BOUND_EPSILON);
+    }
+
+    public static Double toGrade(Short tenths) {
+        return tenths == null ? null : tenths / 10.0;
+    }
+
+    public static String format(int tenths) {
+        return tenths / 10 + "." + tenths % 10;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
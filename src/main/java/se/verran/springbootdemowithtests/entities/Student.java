@@ -1,14 +1,32 @@
 package se.verran.springbootdemowithtests.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonAppend;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.time.LocalDate;
-import java.time.Period;
+import java.util.Locale;
 
 @Entity
+@JsonAppend(props = @JsonAppend.Prop(value = StudentAgeWriter.class, name = "age", type = Integer.class))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "student")
+@Table(indexes = {@Index(name = "idx_student_grade_tenths", columnList = "javaProgrammingGradeTenths"),
+                @Index(name = "idx_student_birth_date", columnList = "birthDate"),
+                @Index(name = "idx_student_first_name", columnList = "firstName"),
+                @Index(name = "idx_student_last_name", columnList = "lastName")},
+        uniqueConstraints = @UniqueConstraint(name = Student.EMAIL_CONSTRAINT, columnNames = "email"))
 public class Student {
+    public static final String EMAIL_CONSTRAINT = "uk_student_email";
+
+    // A pooled sequence hands out ids 50 at a time, unlike IDENTITY it lets Hibernate batch inserts.
+    // On MySQL the sequence is the student_seq table, data-mysql.sql moves it past the ids that
+    // AUTO_INCREMENT handed out before it existed.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "student_seq")
+    @SequenceGenerator(name = "student_seq", sequenceName = "student_seq", allocationSize = 50)
     private int id;
     @Column(length = 50, nullable = false)
     private String firstName;
@@ -18,8 +36,13 @@ public class Student {
     private LocalDate birthDate;
     @Column(length = 50, nullable = false)
     private String email;
-    @Column(length = 1)
-    private Double javaProgrammingGrade;
+    // Tenths of a grade, see Grades. On MySQL schema-mysql.sql moves the grades of the double column
+    // this replaced over and drops it.
+    private Short javaProgrammingGradeTenths;
+    // Every write increments it, a write based on an older version is rejected. Existing MySQL rows
+    // get 0 when ddl-auto adds the column.
+    @Version
+    private int version;
 
     public Student() {
     }
@@ -28,7 +51,13 @@ public class Student {
         this.firstName = firstName;
         this.lastName = lastName;
         this.birthDate = birthDate;
-        this.email = email;
+        this.email = normalizeEmail(email);
+    }
+
+    // MySQL compares emails case-insensitively, so uk_student_email does. Emails are stored and
+    // looked up in lower case, so the checks in Java agree with it.
+    public static String normalizeEmail(String email) {
+        return email == null ? null : email.toLowerCase(Locale.ROOT);
     }
 
     public int getId() {
@@ -64,19 +93,37 @@ public class Student {
     }
 
     public void setEmail(String email) {
-        this.email = email;
+        this.email = normalizeEmail(email);
     }
+    // Serialized by StudentAgeWriter
+    @JsonIgnore
     public int getAge(){
-        LocalDate today = LocalDate.now();
-        Period agePeriod = Period.between(birthDate, today);
-        return agePeriod.getYears();
+        return Ages.age(birthDate);
     }
 
     public Double getJavaProgrammingGrade() {
-        return javaProgrammingGrade;
+        return Grades.toGrade(javaProgrammingGradeTenths);
     }
 
+    // Rounded to tenths
     public void setJavaProgrammingGrade(Double javaProgrammingGrade) {
-        this.javaProgrammingGrade = javaProgrammingGrade;
+        this.javaProgrammingGradeTenths = Grades.toTenths(javaProgrammingGrade);
+    }
+
+    @JsonIgnore
+    public Short getJavaProgrammingGradeTenths() {
+        return javaProgrammingGradeTenths;
+    }
+
+    public void setJavaProgrammingGradeTenths(Short javaProgrammingGradeTenths) {
+        this.javaProgrammingGradeTenths = javaProgrammingGradeTenths;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
     }
 }
@@ -0,0 +1,39 @@
+package se.verran.springbootdemowithtests.entities;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.introspect.AnnotatedClass;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.ser.VirtualBeanPropertyWriter;
+import com.fasterxml.jackson.databind.util.Annotations;
+
+import java.time.LocalDate;
+
+// Writes the age of a student as of the TODAY attribute of the ObjectWriter, so a response is
+// written with one date however many students it has. Without the attribute Ages.today() is used.
+public class StudentAgeWriter extends VirtualBeanPropertyWriter {
+    public static final String TODAY = "studentAgeToday";
+
+    public StudentAgeWriter() {
+    }
+
+    private StudentAgeWriter(BeanPropertyDefinition propertyDefinition, Annotations contextAnnotations, JavaType declaredType) {
+        super(propertyDefinition, contextAnnotations, declaredType);
+    }
+
+    @Override
+    protected Object value(Object bean, JsonGenerator generator, SerializerProvider provider) {
+        LocalDate birthDate = ((Student) bean).getBirthDate();
+        if (birthDate == null)
+            return null;
+        return Ages.age(birthDate, provider.getAttribute(TODAY) instanceof LocalDate today ? today : Ages.today());
+    }
+
+    @Override
+    public VirtualBeanPropertyWriter withConfig(MapperConfig<?> config, AnnotatedClass declaringClass,
+                                                BeanPropertyDefinition propertyDefinition, JavaType type) {
+        return new StudentAgeWriter(propertyDefinition, declaringClass.getAnnotations(), type);
+    }
+}
@@ -0,0 +1,326 @@
+package se.verran.springbootdemowithtests.repositories;
+
+import io.r2dbc.spi.Readable;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Pageable;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.verran.springbootdemowithtests.dto.GradeAggregates;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.dto.StudentPatch;
+import se.verran.springbootdemowithtests.dto.StudentSearchQuery;
+import se.verran.springbootdemowithtests.dto.StudentSummary;
+import se.verran.springbootdemowithtests.entities.Grades;
+import se.verran.springbootdemowithtests.entities.Student;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// The student table through R2DBC for the reactive profile, the same statements as StudentRepository
+// and StudentUpdatesImpl written as SQL. No query holds a thread while it waits for the database.
+// Inserts take their ids from student_seq the way Hibernate's pooled optimizer does, so students
+// added here and by StudentImportService never collide.
+@Repository
+@Profile("reactive")
+public class ReactiveStudentRepository {
+    private static final String SELECT_STUDENT_DTO = "select id, first_name, last_name, birth_date, email, java_programming_grade_tenths, version from student ";
+    private static final String UPDATE_GRADE = "update student set java_programming_grade_tenths = :gradeTenths, version = version + 1 where id = :id";
+    // Matches allocationSize of the sequence generator of Student
+    private static final int ALLOCATION_SIZE = 50;
+    private static final char ESCAPE = '!';
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final boolean hasSequences;
+    private final IdBlock ids = new IdBlock();
+
+    public ReactiveStudentRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+        // Not a bean, a second transaction manager in the context would compete with the JPA one
+        this.transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(databaseClient.getConnectionFactory()));
+        // H2 has a real sequence, on MySQL Hibernate emulates it with a table
+        this.hasSequences = "H2".equals(databaseClient.getConnectionFactory().getMetadata().getName());
+    }
+
+    public Mono<StudentDto> findDtoById(int id) {
+        return databaseClient.sql(SELECT_STUDENT_DTO + "where id = :id")
+                .bind("id", id)
+                .map(ReactiveStudentRepository::toDto)
+                .one();
+    }
+
+    // Rows are emitted as the driver reads them, a slow client slows down the query instead of filling the heap
+    public Flux<StudentDto> findAllDtos() {
+        return databaseClient.sql(SELECT_STUDENT_DTO + "order by id")
+                .map(ReactiveStudentRepository::toDto)
+                .all();
+    }
+
+    // Keyset pagination like StudentRepository.findDtosByIdGreaterThan
+    public Flux<StudentDto> findDtosByIdGreaterThan(int id, int limit) {
+        return databaseClient.sql(SELECT_STUDENT_DTO + "where id > :id order by id limit :limit")
+                .bind("id", id)
+                .bind("limit", limit)
+                .map(ReactiveStudentRepository::toDto)
+                .all();
+    }
+
+    public Flux<StudentDto> findDtosByBirthDateBetween(LocalDate from, LocalDate to, Pageable pageable) {
+        return databaseClient.sql(SELECT_STUDENT_DTO + "where birth_date between :from and :to order by birth_date desc, id limit :limit offset :offset")
+                .bind("from", from)
+                .bind("to", to)
+                .bind("limit", pageable.getPageSize())
+                .bind("offset", pageable.getOffset())
+                .map(ReactiveStudentRepository::toDto)
+                .all();
+    }
+
+    public Flux<StudentDto> findDtosByIdIn(Collection<Integer> ids) {
+        if (ids.isEmpty())
+            return Flux.empty();
+        return databaseClient.sql(SELECT_STUDENT_DTO + "where id in (:ids)")
+                .bind("ids", ids)
+                .map(ReactiveStudentRepository::toDto)
+                .all();
+    }
+
+    public Mono<Boolean> existsById(int id) {
+        return databaseClient.sql("select 1 from student where id = :id")
+                .bind("id", id)
+                .map(row -> true)
+                .first()
+                .defaultIfEmpty(false);
+    }
+
+    // The criteria of StudentSearchImpl, with '!' as the LIKE escape since a backslash needs
+    // escaping of its own in a MySQL string literal
+    public Flux<StudentSummary> search(StudentSearchQuery query, int afterId, int limit) {
+        StringBuilder sql = new StringBuilder("select id, first_name, last_name, email, java_programming_grade_tenths from student where 1 = 1");
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        if (afterId > 0) {
+            sql.append(" and id > :afterId");
+            parameters.put("afterId", afterId);
+        }
+        if (query.firstName() != null) {
+            sql.append(" and first_name like :firstName escape '").append(ESCAPE).append('\'');
+            parameters.put("firstName", StudentSearchImpl.prefixPattern(query.firstName(), ESCAPE));
+        }
+        if (query.lastName() != null) {
+            sql.append(" and last_name like :lastName escape '").append(ESCAPE).append('\'');
+            parameters.put("lastName", StudentSearchImpl.prefixPattern(query.lastName(), ESCAPE));
+        }
+        if (query.email() != null) {
+            sql.append(" and email = :email");
+            parameters.put("email", query.email());
+        }
+        if (query.minGrade() != null) {
+            sql.append(" and java_programming_grade_tenths >= :minGrade");
+            parameters.put("minGrade", Grades.lowerBoundTenths(query.minGrade()));
+        }
+        if (query.maxGrade() != null) {
+            sql.append(" and java_programming_grade_tenths <= :maxGrade");
+            parameters.put("maxGrade", Grades.upperBoundTenths(query.maxGrade()));
+        }
+        sql.append(" order by id limit :limit");
+        parameters.put("limit", limit);
+        return databaseClient.sql(sql.toString())
+                .bindValues(parameters)
+                .map(row -> new StudentSummary(row.get("id", Integer.class), row.get("first_name", String.class),
+                        row.get("last_name", String.class), row.get("email", String.class),
+                        row.get("java_programming_grade_tenths", Short.class)))
+                .all();
+    }
+
+    // StudentRepository.aggregateGrades() as SQL
+    public Mono<GradeAggregates> aggregateGrades() {
+        return databaseClient.sql("""
+                        select count(*) as number_of_students,
+                               count(java_programming_grade_tenths) as number_of_graded_students,
+                               avg(java_programming_grade_tenths) / 10.0 as average,
+                               min(java_programming_grade_tenths) / 10.0 as min_grade,
+                               max(java_programming_grade_tenths) / 10.0 as max_grade,
+                               sum(java_programming_grade_tenths * java_programming_grade_tenths) / 100.0 as sum_of_squares,
+                               coalesce(sum(case when java_programming_grade_tenths < 10 then 1 else 0 end), 0) as grades_from0,
+                               coalesce(sum(case when java_programming_grade_tenths >= 10 and java_programming_grade_tenths < 20 then 1 else 0 end), 0) as grades_from1,
+                               coalesce(sum(case when java_programming_grade_tenths >= 20 and java_programming_grade_tenths < 30 then 1 else 0 end), 0) as grades_from2,
+                               coalesce(sum(case when java_programming_grade_tenths >= 30 and java_programming_grade_tenths < 40 then 1 else 0 end), 0) as grades_from3,
+                               coalesce(sum(case when java_programming_grade_tenths >= 40 then 1 else 0 end), 0) as grades_from4
+                        from student
+                        """)
+                .fetch()
+                .one()
+                .map(ReactiveStudentRepository::toGradeAggregates);
+    }
+
+    // A new student with the next id and version 0
+    public Mono<Student> insert(Student student) {
+        return nextId().flatMap(id -> {
+            GenericExecuteSpec insert = databaseClient.sql("""
+                            insert into student (id, first_name, last_name, birth_date, email, java_programming_grade_tenths, version)
+                            values (:id, :firstName, :lastName, :birthDate, :email, :gradeTenths, 0)
+                            """)
+                    .bind("id", id);
+            insert = bindStudent(insert, student);
+            return insert.fetch().rowsUpdated().map(rows -> {
+                student.setId(id);
+                student.setVersion(0);
+                return student;
+            });
+        });
+    }
+
+    // Every column, only if the student is still at the version it was read at. Returns the updated rows.
+    public Mono<Long> update(Student student) {
+        GenericExecuteSpec update = databaseClient.sql("""
+                        update student set first_name = :firstName, last_name = :lastName, birth_date = :birthDate,
+                               email = :email, java_programming_grade_tenths = :gradeTenths, version = version + 1
+                        where id = :id and version = :version
+                        """)
+                .bind("id", student.getId())
+                .bind("version", student.getVersion());
+        return bindStudent(update, student).fetch().rowsUpdated();
+    }
+
+    public Mono<Long> updateGradeTenths(int studentId, short gradeTenths) {
+        return databaseClient.sql(UPDATE_GRADE)
+                .bind("gradeTenths", gradeTenths)
+                .bind("id", studentId)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    // StudentUpdatesImpl.patchStudent, only the fields in the patch are written
+    public Mono<Long> patchStudent(int studentId, int expectedVersion, StudentPatch patch) {
+        StringBuilder sql = new StringBuilder("update student set version = version + 1");
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        if (patch.firstName() != null) {
+            sql.append(", first_name = :firstName");
+            parameters.put("firstName", patch.firstName());
+        }
+        if (patch.lastName() != null) {
+            sql.append(", last_name = :lastName");
+            parameters.put("lastName", patch.lastName());
+        }
+        if (patch.birthDate() != null) {
+            sql.append(", birth_date = :birthDate");
+            parameters.put("birthDate", patch.birthDate());
+        }
+        if (patch.email() != null) {
+            sql.append(", email = :email");
+            parameters.put("email", patch.email());
+        }
+        if (patch.javaProgrammingGrade() != null) {
+            sql.append(", java_programming_grade_tenths = :gradeTenths");
+            parameters.put("gradeTenths", Grades.toTenths(patch.javaProgrammingGrade()));
+        }
+        sql.append(" where id = :id and version = :version");
+        parameters.put("id", studentId);
+        parameters.put("version", expectedVersion);
+        return databaseClient.sql(sql.toString())
+                .bindValues(parameters)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Long> deleteById(int id) {
+        return databaseClient.sql("delete from student where id = :id")
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private static GenericExecuteSpec bindStudent(GenericExecuteSpec spec, Student student) {
+        spec = bindNullable(spec, "firstName", student.getFirstName(), String.class);
+        spec = bindNullable(spec, "lastName", student.getLastName(), String.class);
+        spec = bindNullable(spec, "birthDate", student.getBirthDate(), LocalDate.class);
+        spec = bindNullable(spec, "email", student.getEmail(), String.class);
+        return bindNullable(spec, "gradeTenths", student.getJavaProgrammingGradeTenths(), Short.class);
+    }
+
+    private static GenericExecuteSpec bindNullable(GenericExecuteSpec spec, String name, Object value, Class<?> type) {
+        return value == null ? spec.bindNull(name, type) : spec.bind(name, value);
+    }
+
+    private Mono<Integer> nextId() {
+        return Mono.defer(() -> {
+            int id = ids.take();
+            return id > 0 ? Mono.just(id) : nextSequenceValue().map(ids::refill);
+        });
+    }
+
+    // The same statements Hibernate runs for student_seq. The table row is locked for the update,
+    // which needs a transaction of its own.
+    private Mono<Long> nextSequenceValue() {
+        if (hasSequences)
+            return databaseClient.sql("select next value for student_seq")
+                    .map(row -> row.get(0, Long.class))
+                    .one();
+        return databaseClient.sql("select next_val from student_seq for update")
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .flatMap(value -> databaseClient.sql("update student_seq set next_val = :next where next_val = :value")
+                        .bind("next", value + ALLOCATION_SIZE)
+                        .bind("value", value)
+                        .fetch()
+                        .rowsUpdated()
+                        .thenReturn(value))
+                .as(transactionalOperator::transactional);
+    }
+
+    private static StudentDto toDto(Readable row) {
+        return new StudentDto(row.get("id", Integer.class), row.get("first_name", String.class), row.get("last_name", String.class),
+                row.get("birth_date", LocalDate.class), row.get("email", String.class),
+                row.get("java_programming_grade_tenths", Short.class), row.get("version", Integer.class));
+    }
+
+    // The drivers return the aggregates as different number types, the map is case insensitive
+    private static GradeAggregates toGradeAggregates(Map<String, Object> row) {
+        return new GradeAggregates() {
+            public long getNumberOfStudents() { return count("number_of_students"); }
+            public long getNumberOfGradedStudents() { return count("number_of_graded_students"); }
+            public Double getAverage() { return grade("average"); }
+            public Double getMin() { return grade("min_grade"); }
+            public Double getMax() { return grade("max_grade"); }
+            public Double getSumOfSquares() { return grade("sum_of_squares"); }
+            public long getGradesFrom0() { return count("grades_from0"); }
+            public long getGradesFrom1() { return count("grades_from1"); }
+            public long getGradesFrom2() { return count("grades_from2"); }
+            public long getGradesFrom3() { return count("grades_from3"); }
+            public long getGradesFrom4() { return count("grades_from4"); }
+
+            private long count(String column) {
+                return ((Number) row.get(column)).longValue();
+            }
+
+            private Double grade(String column) {
+                return row.get(column) instanceof Number number ? number.doubleValue() : null;
+            }
+        };
+    }
+
+    // Hibernate's pooled optimizer reads a sequence value v as the block v - 49 up to v, and the
+    // first value, 1, as the block of 1 alone. The same blocks are taken here.
+    private static final class IdBlock {
+        private int next;
+        private int last = -1;
+
+        // 0 when the block is used up
+        synchronized int take() {
+            return next <= last ? next++ : 0;
+        }
+
+        synchronized int refill(long sequenceValue) {
+            int first = (int) Math.max(1, sequenceValue - ALLOCATION_SIZE + 1);
+            next = first + 1;
+            last = (int) sequenceValue;
+            return first;
+        }
+    }
+}
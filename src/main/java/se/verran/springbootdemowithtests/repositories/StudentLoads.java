@@ -0,0 +1,14 @@
+package se.verran.springbootdemowithtests.repositories;
+
+import se.verran.springbootdemowithtests.entities.Student;
+
+import java.util.Collection;
+import java.util.List;
+
+// Students by id in one round trip, implemented in StudentLoadsImpl
+public interface StudentLoads {
+
+    // The students that exist, in no particular order. Students in the second-level cache aren't
+    // queried, the others are read with one WHERE id IN (...).
+    List<Student> loadAllById(Collection<Integer> ids);
+}
@@ -0,0 +1,34 @@
+package se.verran.springbootdemowithtests.repositories;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+import se.verran.springbootdemowithtests.entities.Student;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Hibernate's multi-load looks in the second-level cache first when it is given the cache mode,
+// like findById does, and only queries the ids it didn't find. findAllById would be a query that
+// skips the cache. The session of the shared EntityManager only stays open within a transaction.
+class StudentLoadsImpl implements StudentLoads {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Student> loadAllById(Collection<Integer> ids) {
+        if (ids.isEmpty())
+            return List.of();
+        return entityManager.unwrap(Session.class)
+                .byMultipleIds(Student.class)
+                .with(CacheMode.NORMAL)
+                .withBatchSize(ids.size())
+                .enableOrderedReturn(false)
+                .multiLoad(new ArrayList<>(ids));
+    }
+}
@@ -1,11 +1,106 @@
 package se.verran.springbootdemowithtests.repositories;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import se.verran.springbootdemowithtests.dto.GradeAggregates;
+import se.verran.springbootdemowithtests.dto.StudentAnalyticsRow;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.dto.StudentGrade;
 import se.verran.springbootdemowithtests.entities.Student;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
 @Repository
-public interface StudentRepository extends JpaRepository<Student, Integer> {
+public interface StudentRepository extends JpaRepository<Student, Integer>, StudentUpdates, StudentSearch, StudentLoads {
+
+    // The read endpoints select StudentDto, the rows are never turned into managed entities
+    String SELECT_STUDENT_DTO = """
+            select new se.verran.springbootdemowithtests.dto.StudentDto(
+                s.id, s.firstName, s.lastName, s.birthDate, s.email, s.javaProgrammingGradeTenths, s.version)
+            from Student s
+            """;
+
+    // Ids of the result go to the query cache, the students themselves come from the entity cache
+    @Override
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<Student> findAll();
 
     // A "self-made" method, either query method or a native query, has to be tested
     boolean existsStudentByEmail(String email);
+
+    @Query("select s.email from Student s where s.email in :emails")
+    Set<String> findExistingEmails(Collection<String> emails);
+
+    // Range scan of idx_student_birth_date, see Ages for turning ages into birth dates. The id keeps
+    // the order of students born the same day, and so the pages, stable.
+    @Query(SELECT_STUDENT_DTO + "where s.birthDate between :from and :to order by s.birthDate desc, s.id")
+    List<StudentDto> findDtosByBirthDateBetween(LocalDate from, LocalDate to, Pageable pageable);
+
+    @Query(SELECT_STUDENT_DTO + "order by s.id")
+    List<StudentDto> findAllDtos();
+
+    @Query(SELECT_STUDENT_DTO + "where s.id in :ids")
+    List<StudentDto> findDtosByIdIn(Collection<Integer> ids);
+
+    @Query("select s.id from Student s where s.id in :ids")
+    Set<Integer> findExistingIds(Collection<Integer> ids);
+
+    // Every grade statistic in one pass over the table, NULL grades are ignored by the aggregates.
+    // Grades are stored in tenths and scaled back here.
+    @Query("""
+            select count(s) as numberOfStudents,
+                   count(s.javaProgrammingGradeTenths) as numberOfGradedStudents,
+                   avg(s.javaProgrammingGradeTenths) / 10.0 as average,
+                   min(s.javaProgrammingGradeTenths) / 10.0 as min,
+                   max(s.javaProgrammingGradeTenths) / 10.0 as max,
+                   sum(s.javaProgrammingGradeTenths * s.javaProgrammingGradeTenths) / 100.0 as sumOfSquares,
+                   coalesce(sum(case when s.javaProgrammingGradeTenths < 10 then 1 else 0 end), 0) as gradesFrom0,
+                   coalesce(sum(case when s.javaProgrammingGradeTenths >= 10 and s.javaProgrammingGradeTenths < 20 then 1 else 0 end), 0) as gradesFrom1,
+                   coalesce(sum(case when s.javaProgrammingGradeTenths >= 20 and s.javaProgrammingGradeTenths < 30 then 1 else 0 end), 0) as gradesFrom2,
+                   coalesce(sum(case when s.javaProgrammingGradeTenths >= 30 and s.javaProgrammingGradeTenths < 40 then 1 else 0 end), 0) as gradesFrom3,
+                   coalesce(sum(case when s.javaProgrammingGradeTenths >= 40 then 1 else 0 end), 0) as gradesFrom4
+            from Student s
+            """)
+    GradeAggregates aggregateGrades();
+
+    // ORDER BY ... LIMIT, served by idx_student_grade_tenths. Students without a grade come last
+    List<Student> findByOrderByJavaProgrammingGradeTenthsDesc(Limit limit);
+
+    // Keyset pagination, WHERE id > :id ORDER BY id walks the primary key instead of skipping OFFSET rows
+    @Query(SELECT_STUDENT_DTO + "where s.id > :id order by s.id")
+    List<StudentDto> findDtosByIdGreaterThan(int id, Limit limit);
+
+    // Rows are fetched from the driver in chunks of the fetch size, has to be consumed inside a transaction
+    @Query(SELECT_STUDENT_DTO + "order by s.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<StudentDto> streamAllDtos();
+
+    // Only the two columns the aggregate store needs, streamed like streamAllDtos
+    @Query("select s.id as id, s.javaProgrammingGradeTenths as gradeTenths from Student s")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<StudentGrade> streamGrades();
+
+    // The columns of the school analytics snapshot, streamed like streamAllDtos
+    @Query("select s.id as id, s.javaProgrammingGradeTenths as gradeTenths, s.birthDate as birthDate from Student s")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<StudentAnalyticsRow> streamAnalyticsRows();
 }
@@ -0,0 +1,13 @@
+package se.verran.springbootdemowithtests.repositories;
+
+import se.verran.springbootdemowithtests.dto.StudentSearchQuery;
+import se.verran.springbootdemowithtests.dto.StudentSummary;
+
+import java.util.List;
+
+// Search with only the criteria that are given, implemented in StudentSearchImpl
+public interface StudentSearch {
+
+    // At most limit students with an id above afterId, ordered by id
+    List<StudentSummary> search(StudentSearchQuery query, int afterId, int limit);
+}
@@ -0,0 +1,70 @@
+package se.verran.springbootdemowithtests.repositories;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import se.verran.springbootdemowithtests.dto.StudentSearchQuery;
+import se.verran.springbootdemowithtests.dto.StudentSummary;
+import se.verran.springbootdemowithtests.entities.Grades;
+import se.verran.springbootdemowithtests.entities.Student;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Every criterion maps to a column with an index: a name prefix is a LIKE 'prefix%' range on
+// idx_student_first_name or idx_student_last_name, the email is a lookup in uk_student_email and
+// grades a range on idx_student_grade_tenths. Only the columns of StudentSummary are selected.
+class StudentSearchImpl implements StudentSearch {
+    private static final char ESCAPE = '\\';
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<StudentSummary> search(StudentSearchQuery query, int afterId, int limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<StudentSummary> criteria = builder.createQuery(StudentSummary.class);
+        Root<Student> student = criteria.from(Student.class);
+
+        List<Predicate> predicates = new ArrayList<>();
+        // Left out on the first page, a range on the primary key would compete with the indexes below
+        if (afterId > 0)
+            predicates.add(builder.greaterThan(student.get("id"), afterId));
+        if (query.firstName() != null)
+            predicates.add(builder.like(student.get("firstName"), prefixPattern(query.firstName()), ESCAPE));
+        if (query.lastName() != null)
+            predicates.add(builder.like(student.get("lastName"), prefixPattern(query.lastName()), ESCAPE));
+        if (query.email() != null)
+            predicates.add(builder.equal(student.get("email"), query.email()));
+        if (query.minGrade() != null)
+            predicates.add(builder.greaterThanOrEqualTo(student.get("javaProgrammingGradeTenths"), Grades.lowerBoundTenths(query.minGrade())));
+        if (query.maxGrade() != null)
+            predicates.add(builder.lessThanOrEqualTo(student.get("javaProgrammingGradeTenths"), Grades.upperBoundTenths(query.maxGrade())));
+
+        criteria.select(builder.construct(StudentSummary.class,
+                        student.get("id"), student.get("firstName"), student.get("lastName"),
+                        student.get("email"), student.get("javaProgrammingGradeTenths")))
+                .where(predicates.toArray(Predicate[]::new))
+                .orderBy(builder.asc(student.get("id")));
+        return entityManager.createQuery(criteria).setMaxResults(limit).getResultList();
+    }
+
+    private static String prefixPattern(String prefix) {
+        return prefixPattern(prefix, ESCAPE);
+    }
+
+    // A prefix without wildcards of its own, so "a_b" doesn't match "axb"
+    static String prefixPattern(String prefix, char escape) {
+        StringBuilder pattern = new StringBuilder(prefix.length() + 1);
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (c == '%' || c == '_' || c == escape)
+                pattern.append(escape);
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
+}
@@ -0,0 +1,19 @@
+package se.verran.springbootdemowithtests.repositories;
+
+import se.verran.springbootdemowithtests.dto.StudentPatch;
+
+// Writes that don't go through the entity, implemented in StudentUpdatesImpl. All of them
+// increment the version.
+public interface StudentUpdates {
+
+    // Returns the number of updated rows, 0 when there is no student with the id
+    int updateGradeTenths(int studentId, short gradeTenths);
+
+    // One JDBC batch, returns the update count of every row. A driver that rewrites batches
+    // may answer Statement.SUCCESS_NO_INFO instead of a count.
+    int[] batchUpdateGradeTenths(int[] studentIds, short[] gradeTenths);
+
+    // Writes the fields of the patch that aren't null, only if the student still has expectedVersion.
+    // Returns 0 when there is no student with the id or its version is another one.
+    int patchStudent(int studentId, int expectedVersion, StudentPatch patch);
+}
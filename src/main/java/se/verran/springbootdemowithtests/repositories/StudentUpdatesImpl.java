@@ -0,0 +1,134 @@
+package se.verran.springbootdemowithtests.repositories;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import se.verran.springbootdemowithtests.dto.StudentPatch;
+import se.verran.springbootdemowithtests.entities.Grades;
+import se.verran.springbootdemowithtests.entities.Student;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Plain UPDATE statements, the students aren't loaded and the columns that didn't change aren't written back.
+// A JPQL bulk update would evict every student from the second-level cache, this locks only the
+// cache entries of the students it updates, the way Hibernate does around its own updates. Until
+// the transaction has completed no load can put them into the cache, and afterwards only a load
+// that began after it or read a newer version can. A load that read the old row before the
+// update committed can't put it back into the cache when it is done.
+class StudentUpdatesImpl implements StudentUpdates {
+    private static final String UPDATE_GRADE = "update student set java_programming_grade_tenths = ?, version = version + 1 where id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    StudentUpdatesImpl(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public int updateGradeTenths(int studentId, short gradeTenths) {
+        return withCacheLocked(new int[]{studentId}, () -> jdbcTemplate.update(UPDATE_GRADE, gradeTenths, studentId));
+    }
+
+    @Override
+    public int[] batchUpdateGradeTenths(int[] studentIds, short[] gradeTenths) {
+        return withCacheLocked(studentIds, () -> jdbcTemplate.batchUpdate(UPDATE_GRADE, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int i) throws SQLException {
+                statement.setShort(1, gradeTenths[i]);
+                statement.setInt(2, studentIds[i]);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return studentIds.length;
+            }
+        }));
+    }
+
+    @Override
+    public int patchStudent(int studentId, int expectedVersion, StudentPatch patch) {
+        StringBuilder sql = new StringBuilder("update student set version = version + 1");
+        List<Object> args = new ArrayList<>();
+        if (patch.firstName() != null) {
+            sql.append(", first_name = ?");
+            args.add(patch.firstName());
+        }
+        if (patch.lastName() != null) {
+            sql.append(", last_name = ?");
+            args.add(patch.lastName());
+        }
+        if (patch.birthDate() != null) {
+            sql.append(", birth_date = ?");
+            args.add(patch.birthDate());
+        }
+        if (patch.email() != null) {
+            sql.append(", email = ?");
+            args.add(patch.email());
+        }
+        if (patch.javaProgrammingGrade() != null) {
+            sql.append(", java_programming_grade_tenths = ?");
+            args.add(Grades.toTenths(patch.javaProgrammingGrade()));
+        }
+        sql.append(" where id = ? and version = ?");
+        args.add(studentId);
+        args.add(expectedVersion);
+        return withCacheLocked(new int[]{studentId}, () -> jdbcTemplate.update(sql.toString(), args.toArray()));
+    }
+
+    // Inside a transaction the entries are unlocked once it has completed, committed or not, and
+    // without one right after the statement
+    private <T> T withCacheLocked(int[] studentIds, Supplier<T> update) {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        EntityPersister persister = sessionFactory.getMappingMetamodel().getEntityDescriptor(Student.class);
+        EntityDataAccess cacheAccess = persister.getCacheAccessStrategy();
+        if (cacheAccess == null)
+            return update.get();
+        EntityManager entityManager = TransactionSynchronizationManager.isSynchronizationActive()
+                ? EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory) : null;
+        SharedSessionContractImplementor session = entityManager != null
+                ? entityManager.unwrap(SharedSessionContractImplementor.class) : sessionFactory.openTemporarySession();
+        Object[] keys = new Object[studentIds.length];
+        SoftLock[] locks = new SoftLock[studentIds.length];
+        for (int i = 0; i < studentIds.length; i++) {
+            keys[i] = cacheAccess.generateCacheKey(studentIds[i], persister, sessionFactory, null);
+            locks[i] = cacheAccess.lockItem(session, keys[i], null);
+        }
+        if (entityManager != null) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    unlock(cacheAccess, session, keys, locks);
+                }
+            });
+            return update.get();
+        }
+        try {
+            return update.get();
+        } finally {
+            unlock(cacheAccess, session, keys, locks);
+            session.close();
+        }
+    }
+
+    private static void unlock(EntityDataAccess cacheAccess, SharedSessionContractImplementor session, Object[] keys, SoftLock[] locks) {
+        for (int i = 0; i < keys.length; i++)
+            cacheAccess.unlockItem(session, keys[i], locks[i]);
+    }
+}
@@ -0,0 +1,152 @@
+package se.verran.springbootdemowithtests.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.verran.springbootdemowithtests.config.CacheConfig;
+import se.verran.springbootdemowithtests.dto.GradeBatchResult;
+import se.verran.springbootdemowithtests.dto.GradeBatchResult.Result;
+import se.verran.springbootdemowithtests.dto.GradeBatchResult.Status;
+import se.verran.springbootdemowithtests.dto.GradeUpdate;
+import se.verran.springbootdemowithtests.entities.Grades;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+// Reads and validates every grade first, so a row that can't be read fails the request before
+// anything is written. Then sets them in chunks, each chunk in its own transaction and one JDBC
+// batch. A failing chunk doesn't roll back the chunks before it. The grade statistics are evicted
+// after every committed chunk.
+@Service
+public class GradeBatchService {
+
+    private final StudentRepository studentRepository;
+    private final SchoolAggregateStore aggregateStore;
+    private final StudentTableVersion tableVersion;
+    private final GradeWriteBehind gradeWriteBehind;
+    private final Cache gradeAggregates;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    @Autowired
+    public GradeBatchService(StudentRepository studentRepository,
+                             SchoolAggregateStore aggregateStore,
+                             StudentTableVersion tableVersion,
+                             GradeWriteBehind gradeWriteBehind,
+                             CacheManager cacheManager,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${student.grades.chunk-size:1000}") int chunkSize) {
+        this.studentRepository = studentRepository;
+        this.aggregateStore = aggregateStore;
+        this.tableVersion = tableVersion;
+        this.gradeWriteBehind = gradeWriteBehind;
+        this.gradeAggregates = cacheManager.getCache(CacheConfig.GRADE_AGGREGATES);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+    }
+
+    // updated and notFound count students, a student sent twice is counted once. The last of its
+    // rows is the grade it gets.
+    public GradeBatchResult setGrades(Iterator<GradeUpdate> gradeUpdates) {
+        List<Result> results = new ArrayList<>();
+        int[] ids = new int[chunkSize];
+        short[] gradeTenths = new short[chunkSize];
+        int[] resultIndexes = new int[chunkSize];
+        int size = 0;
+        while (gradeUpdates.hasNext()) {
+            GradeUpdate gradeUpdate = gradeUpdates.next();
+            int tenths = gradeUpdate.grade() == null ? Grades.INVALID : Grades.parseTenths(gradeUpdate.grade());
+            if (tenths == Grades.INVALID) {
+                results.add(new Result(gradeUpdate.studentId(), Status.INVALID_GRADE));
+                continue;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                gradeTenths = Arrays.copyOf(gradeTenths, size * 2);
+                resultIndexes = Arrays.copyOf(resultIndexes, size * 2);
+            }
+            // Filled in when the chunk has been written
+            results.add(null);
+            ids[size] = gradeUpdate.studentId();
+            gradeTenths[size] = (short) tenths;
+            resultIndexes[size++] = results.size() - 1;
+        }
+
+        // Grades pending in GradeWriteBehind are older than these and mustn't overwrite them
+        gradeWriteBehind.flush();
+        boolean[] updated = new boolean[size];
+        for (int from = 0; from < size; from += chunkSize)
+            setChunkInTransaction(ids, gradeTenths, from, Math.min(from + chunkSize, size), updated);
+
+        int updatedRows = 0;
+        for (int i = 0; i < size; i++) {
+            results.set(resultIndexes[i], new Result(ids[i], updated[i] ? Status.UPDATED : Status.NOT_FOUND));
+            if (updated[i])
+                updatedRows++;
+        }
+        int[] updatedIds = new int[updatedRows];
+        int[] notFoundIds = new int[size - updatedRows];
+        for (int i = 0, u = 0, n = 0; i < size; i++) {
+            if (updated[i])
+                updatedIds[u++] = ids[i];
+            else
+                notFoundIds[n++] = ids[i];
+        }
+        return new GradeBatchResult(countDistinct(updatedIds), countDistinct(notFoundIds), results.size() - size, results);
+    }
+
+    private void setChunkInTransaction(int[] ids, short[] gradeTenths, int from, int to, boolean[] updated) {
+        int[] chunkIds = Arrays.copyOfRange(ids, from, to);
+        short[] chunkGradeTenths = Arrays.copyOfRange(gradeTenths, from, to);
+        boolean[] chunkUpdated = transactionTemplate.execute(status -> setChunk(chunkIds, chunkGradeTenths));
+        // Committed, in batch order so the last grade of a student sent twice wins here as well
+        for (int i = 0; i < chunkIds.length; i++) {
+            updated[from + i] = chunkUpdated[i];
+            if (chunkUpdated[i])
+                aggregateStore.gradeChanged(chunkIds[i], chunkGradeTenths[i]);
+        }
+        gradeAggregates.clear();
+        tableVersion.bump();
+    }
+
+    private static int countDistinct(int[] ids) {
+        Arrays.sort(ids);
+        int count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1])
+                count++;
+        }
+        return count;
+    }
+
+    // The update counts tell which students exist, so a chunk is a single round trip. Only a driver
+    // that answers SUCCESS_NO_INFO, like Connector/J rewriting the batch, costs a lookup of the ids.
+    private boolean[] setChunk(int[] ids, short[] gradeTenths) {
+        int[] updatedRows = studentRepository.batchUpdateGradeTenths(ids, gradeTenths);
+        boolean[] updated = new boolean[ids.length];
+        List<Integer> unknownIds = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (updatedRows[i] == Statement.SUCCESS_NO_INFO)
+                unknownIds.add(ids[i]);
+            else
+                updated[i] = updatedRows[i] > 0;
+        }
+        if (!unknownIds.isEmpty()) {
+            Set<Integer> existingIds = studentRepository.findExistingIds(unknownIds);
+            for (int i = 0; i < ids.length; i++) {
+                if (updatedRows[i] == Statement.SUCCESS_NO_INFO)
+                    updated[i] = existingIds.contains(ids[i]);
+            }
+        }
+        return updated;
+    }
+}
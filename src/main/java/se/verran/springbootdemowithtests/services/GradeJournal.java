@@ -0,0 +1,155 @@
+package se.verran.springbootdemowithtests.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+// Append-only journal of grade updates in memory-mapped segment files of a fixed size. A record is
+// the student id, the grade in tenths and a checksum of both, 8 bytes. The id is written last and
+// is never 0, so a record a crash cut short reads as the end of its segment, and the checksum
+// catches a record whose page only partly reached the disk before a power loss. A full segment is
+// sealed and a new one started, sealed segments are deleted once their grades are in the database.
+// Not thread-safe, GradeWriteBehind appends under its own lock.
+class GradeJournal implements Closeable {
+    static final int RECORD_BYTES = 8;
+    private static final String PREFIX = "grades-";
+    private static final String SUFFIX = ".journal";
+
+    // ALWAYS forces every record to the disk before the update is acknowledged, PERIODIC forces
+    // the journal at every flush, NEVER leaves it to the operating system. A record that is only
+    // mapped survives a crash of the process, not of the machine.
+    enum FsyncPolicy { ALWAYS, PERIODIC, NEVER }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    // Oldest first, the grades in them may not have been written yet
+    private final List<Path> sealedSegments = new ArrayList<>();
+    private long nextSequence;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+
+    GradeJournal(Path directory, int segmentBytes, FsyncPolicy fsyncPolicy) {
+        if (segmentBytes < RECORD_BYTES)
+            throw new IllegalArgumentException("A journal segment has to hold at least one record");
+        this.directory = directory;
+        this.segmentBytes = segmentBytes - segmentBytes % RECORD_BYTES;
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    // Hands every record left in the directory to the consumer, oldest first, and starts a new
+    // segment after them. The old segments count as sealed.
+    void open(BiConsumer<Integer, Short> consumer) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> leftOver;
+        try (Stream<Path> files = Files.list(directory)) {
+            leftOver = files.filter(GradeJournal::isSegment).sorted().toList();
+        }
+        for (Path path : leftOver) {
+            replay(path, consumer);
+            sealedSegments.add(path);
+            nextSequence = Math.max(nextSequence, sequence(path) + 1);
+        }
+        startSegment();
+    }
+
+    boolean hasSealedSegments() {
+        return !sealedSegments.isEmpty();
+    }
+
+    void append(int studentId, short gradeTenths) throws IOException {
+        if (studentId == 0)
+            throw new IllegalArgumentException("0 marks the end of a segment");
+        if (!segment.hasRemaining()) {
+            if (fsyncPolicy != FsyncPolicy.NEVER)
+                segment.force();
+            seal();
+        }
+        int position = segment.position();
+        segment.putShort(position + 4, gradeTenths);
+        segment.putShort(position + 6, checksum(studentId, gradeTenths));
+        segment.putInt(position, studentId);
+        segment.position(position + RECORD_BYTES);
+        if (fsyncPolicy == FsyncPolicy.ALWAYS)
+            segment.force(position, RECORD_BYTES);
+    }
+
+    // Called at every flush
+    void forceIfPeriodic() {
+        if (fsyncPolicy == FsyncPolicy.PERIODIC)
+            segment.force();
+    }
+
+    // Seals the current segment and starts a new one. Returns the number of sealed segments, the
+    // ones deleteSealed can delete when the grades appended so far have been written.
+    int seal() throws IOException {
+        channel.close();
+        sealedSegments.add(segmentPath(nextSequence - 1));
+        startSegment();
+        return sealedSegments.size();
+    }
+
+    // Deletes the oldest sealed segments
+    void deleteSealed(int count) throws IOException {
+        for (int i = 0; i < count; i++)
+            Files.deleteIfExists(sealedSegments.remove(0));
+    }
+
+    // An empty segment isn't left behind
+    @Override
+    public void close() throws IOException {
+        if (fsyncPolicy != FsyncPolicy.NEVER)
+            segment.force();
+        channel.close();
+        if (segment.position() == 0)
+            Files.deleteIfExists(segmentPath(nextSequence - 1));
+    }
+
+    private void startSegment() throws IOException {
+        channel = FileChannel.open(segmentPath(nextSequence++),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Mapping past the end of the file grows it with zeros, which read as the end of the segment
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    }
+
+    private static void replay(Path path, BiConsumer<Integer, Short> consumer) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer records = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+            while (records.remaining() >= RECORD_BYTES) {
+                int studentId = records.getInt();
+                short gradeTenths = records.getShort();
+                short checksum = records.getShort();
+                if (studentId == 0 || checksum != checksum(studentId, gradeTenths))
+                    return;
+                consumer.accept(studentId, gradeTenths);
+            }
+        }
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%s%019d%s", PREFIX, sequence, SUFFIX));
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    private static long sequence(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static short checksum(int studentId, short gradeTenths) {
+        return (short) ((studentId * 31 + gradeTenths) ^ 0x5A5A);
+    }
+}
@@ -0,0 +1,177 @@
+package se.verran.springbootdemowithtests.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Write-behind of setGradeForStudentById, turned on by student.grades.write-behind.enabled. A grade
+// is acknowledged once it is in the GradeJournal and kept per student until the scheduled flush
+// writes every pending grade in one JDBC batch, so a burst of updates of one student is a single
+// UPDATE. StudentService shows the pending grades in what it reads and flushes before reads that
+// filter or aggregate grades in SQL, and before other writes of a student with a pending grade.
+// A journal left behind by a crash is replayed at startup, also when write-behind has been turned
+// off since, and written by the first flush. The aggregate store follows a grade once the flush
+// that wrote it has committed. The table version is bumped both when StudentService acknowledges
+// the grade, which the reads already show, and after the flush.
+//
+// The pending grades and the journal belong to this instance. The flush is an UPDATE by id without
+// a version check, so with more than one instance a grade acknowledged here overwrites any grade
+// another instance writes for the student before this flush. Turn it on for a single instance only.
+@Component
+public class GradeWriteBehind implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(GradeWriteBehind.class);
+
+    private final StudentRepository studentRepository;
+    private final SchoolAggregateStore aggregateStore;
+    private final StudentTableVersion tableVersion;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    // null when write-behind is off and no journal was left behind
+    private final GradeJournal journal;
+    // Grades are added under this and read without it. A flush moves them to flushing, where reads
+    // still find them until they are committed.
+    private volatile Map<Integer, Short> pending = new ConcurrentHashMap<>();
+    private volatile Map<Integer, Short> flushing = Map.of();
+    private final Object flushLock = new Object();
+
+    @Autowired
+    public GradeWriteBehind(StudentRepository studentRepository, SchoolAggregateStore aggregateStore,
+                            StudentTableVersion tableVersion, PlatformTransactionManager transactionManager,
+                            @Value("${student.grades.write-behind.enabled:false}") boolean enabled,
+                            @Value("${student.grades.write-behind.journal-dir:grade-journal}") Path journalDirectory,
+                            @Value("${student.grades.write-behind.fsync:PERIODIC}") GradeJournal.FsyncPolicy fsyncPolicy,
+                            @Value("${student.grades.write-behind.segment-bytes:1048576}") int segmentBytes) {
+        this.studentRepository = studentRepository;
+        this.aggregateStore = aggregateStore;
+        this.tableVersion = tableVersion;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        if (!enabled && !Files.isDirectory(journalDirectory)) {
+            this.journal = null;
+            return;
+        }
+        this.journal = new GradeJournal(journalDirectory, segmentBytes, fsyncPolicy);
+        try {
+            journal.open(pending::put);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the grade journal in " + journalDirectory, e);
+        }
+        if (!pending.isEmpty())
+            log.info("Replayed {} pending grades from the grade journal in {}", pending.size(), journalDirectory);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Returns once the grade is in the journal
+    public void setGrade(int studentId, short gradeTenths) {
+        if (!enabled)
+            throw new IllegalStateException("Write-behind of grades is turned off");
+        synchronized (this) {
+            try {
+                journal.append(studentId, gradeTenths);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not append to the grade journal", e);
+            }
+            pending.put(studentId, gradeTenths);
+        }
+    }
+
+    // The grade that hasn't been written yet, null when there is none
+    public Short getPendingGradeTenths(int studentId) {
+        // pending before flushing, a flush fills flushing before it empties pending
+        Short gradeTenths = pending.get(studentId);
+        return gradeTenths != null ? gradeTenths : flushing.get(studentId);
+    }
+
+    public boolean hasPendingGrades() {
+        return !pending.isEmpty() || !flushing.isEmpty();
+    }
+
+    // Writes every pending grade in one transaction. When that fails they stay pending for the next
+    // flush, a grade set in the meantime wins. The journal segments are deleted after the commit.
+    @Scheduled(fixedDelayString = "${student.grades.write-behind.flush-interval:PT0.5S}")
+    public void flush() {
+        if (journal == null)
+            return;
+        synchronized (flushLock) {
+            Map<Integer, Short> grades;
+            int sealedSegments;
+            synchronized (this) {
+                journal.forceIfPeriodic();
+                if (pending.isEmpty() && !journal.hasSealedSegments())
+                    return;
+                sealedSegments = seal();
+                grades = pending;
+                flushing = grades;
+                pending = new ConcurrentHashMap<>();
+            }
+            int[] ids = new int[grades.size()];
+            short[] gradeTenths = new short[grades.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Short> grade : grades.entrySet()) {
+                ids[i] = grade.getKey();
+                gradeTenths[i++] = grade.getValue();
+            }
+            try {
+                if (ids.length > 0)
+                    transactionTemplate.executeWithoutResult(status -> studentRepository.batchUpdateGradeTenths(ids, gradeTenths));
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    grades.forEach(pending::putIfAbsent);
+                    flushing = Map.of();
+                }
+                log.warn("Could not write {} pending grades, they are written by the next flush", grades.size(), e);
+                return;
+            }
+            synchronized (this) {
+                flushing = Map.of();
+                try {
+                    journal.deleteSealed(sealedSegments);
+                } catch (IOException e) {
+                    // Replaying them again only writes the same grades once more
+                    log.warn("Could not delete written grade journal segments", e);
+                }
+            }
+            // Committed now, which also repairs a reconciliation that read the rows before the flush
+            for (int j = 0; j < ids.length; j++)
+                aggregateStore.gradeChanged(ids[j], gradeTenths[j]);
+            if (ids.length > 0)
+                tableVersion.bump();
+        }
+    }
+
+    private int seal() {
+        try {
+            return journal.seal();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start a new grade journal segment", e);
+        }
+    }
+
+    // What can't be written now stays in the journal for the next start
+    @Override
+    public void destroy() throws IOException {
+        if (journal == null)
+            return;
+        flush();
+        synchronized (this) {
+            journal.close();
+        }
+    }
+}
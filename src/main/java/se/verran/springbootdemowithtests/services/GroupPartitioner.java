@@ -0,0 +1,52 @@
+package se.verran.springbootdemowithtests.services;
+
+import se.verran.springbootdemowithtests.dto.StudentGroups;
+import se.verran.springbootdemowithtests.dto.StudentGroups.Group;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Splits students ranked by grade into groups balanced by grade with a snake draft: the groups
+// pick in the order 1..k, then k..1, then 1..k again, so every group gets one of each k
+// consecutive ranks and the group sizes differ by at most one. Group g picks at fixed ranks, so
+// the groups are independent of each other and large cohorts fill them in parallel.
+public final class GroupPartitioner {
+
+    static final int PARALLEL_THRESHOLD = 100_000;
+
+    private GroupPartitioner() {
+    }
+
+    public static StudentGroups partition(RankedStudents students, int numberOfGroups) {
+        if(numberOfGroups < 1 || numberOfGroups > students.size())
+            throw new IllegalArgumentException("Not able to divide " + students.size() + " students into " + numberOfGroups + " groups");
+        Group[] groups = new Group[numberOfGroups];
+        IntStream groupIndexes = IntStream.range(0, numberOfGroups);
+        if(students.size() >= PARALLEL_THRESHOLD)
+            groupIndexes = groupIndexes.parallel();
+        groupIndexes.forEach(group -> groups[group] = draft(students, numberOfGroups, group));
+        return new StudentGroups(students.size(), numberOfGroups, Arrays.asList(groups));
+    }
+
+    // Even rounds pick from the front, odd rounds from the back
+    private static Group draft(RankedStudents students, int numberOfGroups, int group) {
+        int numberOfStudents = students.size();
+        int fullRounds = numberOfStudents / numberOfGroups;
+        int lastRound = numberOfStudents % numberOfGroups;
+        int pick = fullRounds % 2 == 0 ? group : numberOfGroups - 1 - group;
+        int[] studentIds = new int[fullRounds + (pick < lastRound ? 1 : 0)];
+        long gradeTenthsSum = 0;
+        int numberOfGraded = 0;
+        for (int round = 0; round < studentIds.length; round++) {
+            int rank = round * numberOfGroups + (round % 2 == 0 ? group : numberOfGroups - 1 - group);
+            studentIds[round] = students.ids()[rank];
+            short gradeTenths = students.gradeTenths()[rank];
+            if(gradeTenths >= 0) {
+                gradeTenthsSum += gradeTenths;
+                numberOfGraded++;
+            }
+        }
+        Double averageGrade = numberOfGraded == 0 ? null : gradeTenthsSum / 10.0 / numberOfGraded;
+        return new Group(group + 1, studentIds.length, averageGrade, studentIds);
+    }
+}
@@ -0,0 +1,10 @@
+package se.verran.springbootdemowithtests.services;
+
+// Student ids ordered by grade, highest first, and their grades in tenths at the same index.
+// A negative grade means the student has none.
+public record RankedStudents(int[] ids, short[] gradeTenths) {
+
+    public int size() {
+        return ids.length;
+    }
+}
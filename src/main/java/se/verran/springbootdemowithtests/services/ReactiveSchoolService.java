@@ -0,0 +1,71 @@
+package se.verran.springbootdemowithtests.services;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.verran.springbootdemowithtests.dto.GradeStatistics;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.dto.StudentGroups;
+
+// SchoolService of the reactive profile. Counts, groups and the average come from the aggregate
+// store without any I/O and are answered by SchoolService itself, the rest reads through
+// ReactiveStudentService.
+@Service
+@Profile("reactive")
+public class ReactiveSchoolService {
+
+    private final SchoolService schoolService;
+    private final ReactiveStudentService studentService;
+    private final SchoolAggregateStore aggregateStore;
+
+    public ReactiveSchoolService(SchoolService schoolService, ReactiveStudentService studentService, SchoolAggregateStore aggregateStore) {
+        this.schoolService = schoolService;
+        this.studentService = studentService;
+        this.aggregateStore = aggregateStore;
+    }
+
+    public Mono<Integer> countStudents() {
+        return Mono.fromSupplier(aggregateStore::getNumberOfStudents);
+    }
+
+    public Mono<String> numberOfStudentsPerGroupWhenDivideIntoNumberOfGroups(int numberOfGroups) {
+        return Mono.fromSupplier(() -> schoolService.numberOfStudentsPerGroupWhenDivideIntoNumberOfGroups(numberOfGroups));
+    }
+
+    public Mono<String> numberOfGroupsWhenDividedIntoGroupsOf(int studentsPerGroup) {
+        return Mono.fromSupplier(() -> schoolService.numberOfGroupsWhenDividedIntoGroupsOf(studentsPerGroup));
+    }
+
+    public Mono<StudentGroups> divideIntoGroupsOf(int studentsPerGroup) {
+        return Mono.fromSupplier(() -> schoolService.divideIntoGroupsOf(studentsPerGroup));
+    }
+
+    public Mono<StudentGroups> divideIntoNumberOfGroups(int numberOfGroups) {
+        return Mono.fromSupplier(() -> schoolService.divideIntoNumberOfGroups(numberOfGroups));
+    }
+
+    public Mono<String> calculateAverageGrade() {
+        return Mono.fromSupplier(schoolService::calculateAverageGrade);
+    }
+
+    // One aggregate query, not cached like StudentService.getGradeAggregates()
+    public Mono<GradeStatistics> getGradeStatistics() {
+        return studentService.getGradeAggregates().map(SchoolService::toGradeStatistics);
+    }
+
+    // The ids come from the sorted grade index of the aggregate store, only those students are read
+    public Flux<StudentDto> getTopScoringStudents(int percent) {
+        if (percent < 1 || percent > 100)
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Percent should be between 1 and 100"));
+        return Flux.defer(() -> {
+            int numberOfStudents = aggregateStore.getNumberOfStudents();
+            if (numberOfStudents == 0)
+                return Flux.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "No students found"));
+            int numberOfTopStudents = (int) Math.ceil(numberOfStudents * percent / 100.0);
+            return studentService.getStudentsByIds(aggregateStore.getTopStudentIds(numberOfTopStudents));
+        });
+    }
+}
@@ -0,0 +1,169 @@
+package se.verran.springbootdemowithtests.services;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.verran.springbootdemowithtests.dto.GradeAggregates;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.dto.StudentPatch;
+import se.verran.springbootdemowithtests.dto.StudentSearchQuery;
+import se.verran.springbootdemowithtests.dto.StudentSummary;
+import se.verran.springbootdemowithtests.entities.Ages;
+import se.verran.springbootdemowithtests.entities.Grades;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.repositories.ReactiveStudentRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Objects;
+
+// StudentService of the reactive profile, the same rules and errors on ReactiveStudentRepository.
+// Writes update the aggregate store and the table version once the statement has completed.
+@Service
+@Profile("reactive")
+public class ReactiveStudentService {
+
+    private final ReactiveStudentRepository studentRepository;
+    private final SchoolAggregateStore aggregateStore;
+    private final StudentTableVersion tableVersion;
+
+    public ReactiveStudentService(ReactiveStudentRepository studentRepository, SchoolAggregateStore aggregateStore, StudentTableVersion tableVersion) {
+        this.studentRepository = studentRepository;
+        this.aggregateStore = aggregateStore;
+        this.tableVersion = tableVersion;
+    }
+
+    public Mono<Student> addStudent(Student student) {
+        try {
+            StudentService.checkGrade(student);
+        } catch (ResponseStatusException e) {
+            return Mono.error(e);
+        }
+        return studentRepository.insert(student)
+                .onErrorMap(DataIntegrityViolationException.class, e -> StudentService.isEmailConflict(e)
+                        ? new ResponseStatusException(HttpStatus.CONFLICT, "Email " + student.getEmail() + " already exists")
+                        : e)
+                .doOnNext(savedStudent -> {
+                    aggregateStore.studentSaved(savedStudent);
+                    tableVersion.bump();
+                });
+    }
+
+    public Flux<StudentDto> getAllStudents() {
+        return studentRepository.findAllDtos();
+    }
+
+    public Flux<StudentDto> getStudentsByAge(int minAge, int maxAge, Pageable pageable) {
+        LocalDate today = Ages.today();
+        return studentRepository.findDtosByBirthDateBetween(Ages.earliestBirthDate(maxAge, today), Ages.latestBirthDate(minAge, today), pageable);
+    }
+
+    public Flux<StudentSummary> searchStudents(StudentSearchQuery query, int afterId, int limit) {
+        return studentRepository.search(query, afterId, limit);
+    }
+
+    public Flux<StudentDto> getStudentsAfter(int afterId, int limit) {
+        return studentRepository.findDtosByIdGreaterThan(afterId, limit);
+    }
+
+    public Mono<StudentDto> getStudentById(int id) {
+        return studentRepository.findDtoById(id)
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Could not find student by id " + id)));
+    }
+
+    // One query by primary key, emitted in the order of the ids. Ids of students deleted in the
+    // meantime are skipped.
+    public Flux<StudentDto> getStudentsByIds(List<Integer> ids) {
+        return studentRepository.findDtosByIdIn(ids)
+                .collectMap(StudentDto::id)
+                .flatMapIterable(studentsById -> ids.stream()
+                        .map(studentsById::get)
+                        .filter(Objects::nonNull)
+                        .toList());
+    }
+
+    public Mono<GradeAggregates> getGradeAggregates() {
+        return studentRepository.aggregateGrades();
+    }
+
+    // One DELETE, no rows deleted means there was no such student
+    public Mono<Void> deleteStudent(int id) {
+        return studentRepository.deleteById(id)
+                .flatMap(deletedRows -> {
+                    if (deletedRows == 0)
+                        return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Could not find and delete student by id " + id));
+                    aggregateStore.studentDeleted(id);
+                    tableVersion.bump();
+                    return Mono.empty();
+                });
+    }
+
+    // Only a failed update pays for telling a missing student from a newer version
+    public Mono<Student> updateStudent(Student student) {
+        try {
+            StudentService.checkGrade(student);
+        } catch (ResponseStatusException e) {
+            return Mono.error(e);
+        }
+        return studentRepository.update(student)
+                .onErrorMap(DataIntegrityViolationException.class, e -> StudentService.isEmailConflict(e)
+                        ? new ResponseStatusException(HttpStatus.CONFLICT, "Email " + student.getEmail() + " already exists")
+                        : e)
+                .flatMap(updatedRows -> {
+                    if (updatedRows == 0)
+                        return notUpdated(student.getId(), student.getVersion());
+                    student.setVersion(student.getVersion() + 1);
+                    aggregateStore.studentSaved(student);
+                    tableVersion.bump();
+                    return Mono.just(student);
+                });
+    }
+
+    // One conditional UPDATE of the given fields, the student isn't read first. Emits the new version.
+    public Mono<Integer> patchStudent(int id, StudentPatch patch) {
+        try {
+            StudentService.checkPatch(patch);
+        } catch (ResponseStatusException e) {
+            return Mono.error(e);
+        }
+        return studentRepository.patchStudent(id, patch.version(), patch)
+                .onErrorMap(DataIntegrityViolationException.class, e -> StudentService.isEmailConflict(e)
+                        ? new ResponseStatusException(HttpStatus.CONFLICT, "Email " + patch.email() + " already exists")
+                        : e)
+                .flatMap(updatedRows -> {
+                    if (updatedRows == 0)
+                        return notUpdated(id, patch.version());
+                    if (patch.javaProgrammingGrade() != null)
+                        aggregateStore.gradeChanged(id, Grades.toTenths(patch.javaProgrammingGrade()));
+                    tableVersion.bump();
+                    return Mono.just(patch.version() + 1);
+                });
+    }
+
+    // One UPDATE, the student is never loaded. Emits the grade that was stored.
+    public Mono<Double> setGradeForStudentById(int studentId, String gradeAsString) {
+        int gradeTenths = Grades.parseTenths(gradeAsString);
+        if (gradeTenths == Grades.INVALID)
+            return Mono.error(new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, "Valid grades are 0.0 - 5.0"));
+        return studentRepository.updateGradeTenths(studentId, (short) gradeTenths)
+                .flatMap(updatedRows -> {
+                    if (updatedRows == 0)
+                        return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Could not find and update grades for student by id " + studentId));
+                    aggregateStore.gradeChanged(studentId, (short) gradeTenths);
+                    tableVersion.bump();
+                    return Mono.just(gradeTenths / 10.0);
+                });
+    }
+
+    private <T> Mono<T> notUpdated(int id, int version) {
+        return studentRepository.existsById(id)
+                .flatMap(exists -> Mono.error(exists
+                        ? new ResponseStatusException(HttpStatus.CONFLICT, "Student by id " + id + " was changed after version " + version)
+                        : new ResponseStatusException(HttpStatus.NOT_FOUND, "Could not find and update student by id " + id)));
+    }
+}
@@ -0,0 +1,209 @@
+package se.verran.springbootdemowithtests.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import se.verran.springbootdemowithtests.dto.StudentGrade;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+// Student count, grade sum and a sorted grade index kept in memory, so the school
+// endpoints don't have to read the table. Seeded once at startup, before the web server
+// accepts requests (SchedulingConfig), and updated by every write after it has been
+// committed. Writers of different students never wait for each other, updates of the same
+// student are serialized by ConcurrentHashMap.compute.
+// A reader may see a write half applied, e.g. the count before the grade sum.
+//
+// A scheduled reconciliation compares the store with the database and repairs drift,
+// e.g. two updates of the same student applied in the opposite order of their commits.
+//
+// The store lives in this JVM and only sees the writes made through it. With several instances
+// each one misses the writes of the others until its next reconciliation, so for up to
+// school.aggregates.reconcile-interval (10 minutes by default) they can answer differently.
+@Component
+public class SchoolAggregateStore {
+    private static final Logger log = LoggerFactory.getLogger(SchoolAggregateStore.class);
+    // Stands in for a missing grade, ConcurrentHashMap doesn't accept null values. Far outside the
+    // grades StudentService accepts, so no grade can be taken for a missing one.
+    private static final Short UNGRADED = Short.MIN_VALUE;
+
+    private final StudentRepository studentRepository;
+
+    private final ConcurrentHashMap<Integer, Short> gradesById = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<GradeEntry> gradeIndex = new ConcurrentSkipListSet<>();
+    private final LongAdder numberOfStudents = new LongAdder();
+    private final LongAdder numberOfGradedStudents = new LongAdder();
+    // In tenths, so the sum stays exact however many grades are added and removed
+    private final LongAdder gradeTenthsSum = new LongAdder();
+
+    // Ids written while a reconciliation runs, the database snapshot it reads may be older than them
+    private volatile Set<Integer> writtenDuringReconciliation;
+
+    @Autowired
+    public SchoolAggregateStore(StudentRepository studentRepository) {
+        this.studentRepository = studentRepository;
+    }
+
+    public int getNumberOfStudents() {
+        return Math.toIntExact(numberOfStudents.sum());
+    }
+
+    public long getNumberOfGradedStudents() {
+        return numberOfGradedStudents.sum();
+    }
+
+    // null when no student has a grade
+    public Double getAverageGrade() {
+        long graded = numberOfGradedStudents.sum();
+        return graded == 0 ? null : gradeTenthsSum.sum() / 10.0 / graded;
+    }
+
+    // As of the last committed write, or the seeding at startup
+    public boolean contains(int studentId) {
+        return gradesById.containsKey(studentId);
+    }
+
+    // Highest grade first, students without a grade last, O(k) walk of the index
+    public List<Integer> getTopStudentIds(int numberOfStudents) {
+        List<Integer> ids = new ArrayList<>(numberOfStudents);
+        for (GradeEntry entry : gradeIndex) {
+            if (ids.size() == numberOfStudents)
+                break;
+            ids.add(entry.id());
+        }
+        return ids;
+    }
+
+    // Every student in index order. The walk is weakly consistent, a student whose grade changes
+    // during it can be passed twice and keeps the first position.
+    public RankedStudents getStudentsByGrade() {
+        int[] ids = new int[getNumberOfStudents() + 16];
+        short[] gradeTenths = new short[ids.length];
+        BitSet seen = new BitSet();
+        int count = 0;
+        for (GradeEntry entry : gradeIndex) {
+            if (seen.get(entry.id()))
+                continue;
+            seen.set(entry.id());
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                gradeTenths = Arrays.copyOf(gradeTenths, count * 2);
+            }
+            ids[count] = entry.id();
+            gradeTenths[count++] = entry.gradeTenths();
+        }
+        return new RankedStudents(Arrays.copyOf(ids, count), Arrays.copyOf(gradeTenths, count));
+    }
+
+    // Called after the insert or update has been committed
+    public void studentSaved(Student student) {
+        markWritten(student.getId());
+        Short gradeTenths = student.getJavaProgrammingGradeTenths() == null ? UNGRADED : student.getJavaProgrammingGradeTenths();
+        gradesById.compute(student.getId(), (id, current) -> replace(id, current, gradeTenths));
+    }
+
+    // Called after a grade update has been committed. A student the store doesn't know is left
+    // out, it may have been deleted in the meantime.
+    public void gradeChanged(int studentId, short gradeTenths) {
+        markWritten(studentId);
+        gradesById.computeIfPresent(studentId, (id, current) -> replace(id, current, gradeTenths));
+    }
+
+    // Called after the delete has been committed
+    public void studentDeleted(int studentId) {
+        markWritten(studentId);
+        gradesById.compute(studentId, (id, current) -> replace(id, current, null));
+    }
+
+    // Seeding is the first reconciliation, every student is missing from the empty store
+    @Scheduled(initialDelayString = "${school.aggregates.reconcile-interval:PT10M}",
+            fixedDelayString = "${school.aggregates.reconcile-interval:PT10M}")
+    @Transactional(readOnly = true)
+    public synchronized void reconcile() {
+        Set<Integer> written = ConcurrentHashMap.newKeySet();
+        writtenDuringReconciliation = written;
+        try {
+            AtomicInteger repaired = new AtomicInteger();
+            BitSet idsInDatabase = new BitSet();
+            try (Stream<StudentGrade> rows = studentRepository.streamGrades()) {
+                rows.forEach(row -> {
+                    idsInDatabase.set(row.getId());
+                    Short gradeTenths = row.getGradeTenths() == null ? UNGRADED : row.getGradeTenths();
+                    if (!gradeTenths.equals(gradesById.get(row.getId())) && repair(row.getId(), gradeTenths, written))
+                        repaired.incrementAndGet();
+                });
+            }
+            for (Integer id : gradesById.keySet()) {
+                if (!idsInDatabase.get(id) && repair(id, null, written))
+                    repaired.incrementAndGet();
+            }
+            if (repaired.get() > 0)
+                log.info("Reconciliation repaired {} students in the school aggregates", repaired.get());
+        } finally {
+            writtenDuringReconciliation = null;
+        }
+    }
+
+    private void markWritten(int studentId) {
+        Set<Integer> written = writtenDuringReconciliation;
+        if (written != null)
+            written.add(studentId);
+    }
+
+    // A student written since the reconciliation started is newer than what the database snapshot says
+    private boolean repair(int studentId, Short gradeTenths, Set<Integer> written) {
+        boolean[] repaired = new boolean[1];
+        gradesById.compute(studentId, (id, current) -> {
+            if (written.contains(id))
+                return current;
+            repaired[0] = true;
+            return replace(id, current, gradeTenths);
+        });
+        return repaired[0];
+    }
+
+    // Runs inside compute, so it is never interleaved with another change of the same student.
+    // A null grade removes the student.
+    private Short replace(int id, Short current, Short gradeTenths) {
+        if (current != null) {
+            numberOfStudents.decrement();
+            if (!current.equals(UNGRADED)) {
+                numberOfGradedStudents.decrement();
+                gradeTenthsSum.add(-current);
+            }
+            gradeIndex.remove(new GradeEntry(current, id));
+        }
+        if (gradeTenths != null) {
+            numberOfStudents.increment();
+            if (!gradeTenths.equals(UNGRADED)) {
+                numberOfGradedStudents.increment();
+                gradeTenthsSum.add(gradeTenths);
+            }
+            gradeIndex.add(new GradeEntry(gradeTenths, id));
+        }
+        return gradeTenths;
+    }
+
+    // Highest grade first, the ungraded students (UNGRADED) last, ties by id
+    private record GradeEntry(short gradeTenths, int id) implements Comparable<GradeEntry> {
+        @Override
+        public int compareTo(GradeEntry other) {
+            int byGrade = Short.compare(other.gradeTenths, gradeTenths);
+            return byGrade != 0 ? byGrade : Integer.compare(id, other.id);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package se.verran.springbootdemowithtests.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.verran.springbootdemowithtests.config.AnalyticsConfig;
+import se.verran.springbootdemowithtests.dto.BirthYearCohort;
+import se.verran.springbootdemowithtests.dto.GradeDistribution;
+import se.verran.springbootdemowithtests.dto.GradePercentiles;
+import se.verran.springbootdemowithtests.dto.StudentAnalyticsRow;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+// Percentiles, birth year cohorts and the grade distribution of the whole school. They are
+// computed in parallel from a columnar snapshot of the table, which is read again when it is
+// older than school.analytics.snapshot-max-age. Requests in between share the snapshot and its
+// results, so writes show up in the analytics after at most that long.
+@Service
+public class SchoolAnalyticsService {
+
+    private final StudentRepository studentRepository;
+    private final ForkJoinPool analyticsPool;
+    private final TransactionTemplate transactionTemplate;
+    private final long snapshotMaxAgeNanos;
+
+    private volatile AnalyzedSnapshot analyzedSnapshot;
+
+    @Autowired
+    public SchoolAnalyticsService(StudentRepository studentRepository,
+                                  @Qualifier(AnalyticsConfig.ANALYTICS_POOL) ForkJoinPool analyticsPool,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${school.analytics.snapshot-max-age:PT1M}") Duration snapshotMaxAge) {
+        this.studentRepository = studentRepository;
+        this.analyticsPool = analyticsPool;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.snapshotMaxAgeNanos = snapshotMaxAge.toNanos();
+    }
+
+    public GradePercentiles getGradePercentiles() {
+        return getAnalytics().getGradePercentiles();
+    }
+
+    public List<BirthYearCohort> getBirthYearCohorts() {
+        return getAnalytics().getBirthYearCohorts();
+    }
+
+    public GradeDistribution getGradeDistribution() {
+        return getAnalytics().getGradeDistribution();
+    }
+
+    // One thread reads the table when the snapshot is too old, the others wait for it
+    private SnapshotAnalytics getAnalytics() {
+        AnalyzedSnapshot current = analyzedSnapshot;
+        if (current != null && !current.isOlderThan(snapshotMaxAgeNanos))
+            return current.analytics();
+        synchronized (this) {
+            current = analyzedSnapshot;
+            if (current == null || current.isOlderThan(snapshotMaxAgeNanos)) {
+                StudentSnapshot snapshot = transactionTemplate.execute(status -> {
+                    try (Stream<StudentAnalyticsRow> rows = studentRepository.streamAnalyticsRows()) {
+                        return StudentSnapshot.of(rows);
+                    }
+                });
+                current = new AnalyzedSnapshot(SnapshotAnalytics.compute(snapshot, analyticsPool), System.nanoTime());
+                analyzedSnapshot = current;
+            }
+            return current.analytics();
+        }
+    }
+
+    private record AnalyzedSnapshot(SnapshotAnalytics analytics, long createdNanos) {
+        boolean isOlderThan(long maxAgeNanos) {
+            return System.nanoTime() - createdNanos > maxAgeNanos;
+        }
+    }
+}
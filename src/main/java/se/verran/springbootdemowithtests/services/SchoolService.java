@@ -1,26 +1,34 @@
 package se.verran.springbootdemowithtests.services;
 
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
-import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.dto.GradeAggregates;
+import se.verran.springbootdemowithtests.dto.GradeStatistics;
+import se.verran.springbootdemowithtests.dto.GradeStatistics.GradeBucket;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.dto.StudentGroups;
 
 import java.util.List;
 
 @Service
+@Timed(value = "service.calls", histogram = true)
 public class SchoolService {
 
 
     private final StudentService studentService;
+    private final SchoolAggregateStore aggregateStore;
     @Autowired
-    public SchoolService(StudentService studentService) {
+    public SchoolService(StudentService studentService, SchoolAggregateStore aggregateStore) {
         this.studentService = studentService;
+        this.aggregateStore = aggregateStore;
     }
 
     // How many groups I would like, don't know how many students
     public String numberOfStudentsPerGroupWhenDivideIntoNumberOfGroups(int numberOfGroups) {
-        int numberOfStudents = studentService.getAllStudents().size();
+        int numberOfStudents = studentService.countStudents();
         if(numberOfGroups < 2)
             return "There should be at least two groups";
         if(numberOfGroups > numberOfStudents)
@@ -36,7 +44,7 @@ public class SchoolService {
     }
     // How many students per group I would like, don't know how many students and how many groups I end up with
     public String numberOfGroupsWhenDividedIntoGroupsOf(int studentsPerGroup){
-        int numberOfStudents = studentService.getAllStudents().size();
+        int numberOfStudents = studentService.countStudents();
         if(studentsPerGroup < 2)
             return "Size of group should be at least 2";
         if(numberOfStudents < studentsPerGroup || numberOfStudents / studentsPerGroup < 2)
@@ -49,26 +57,79 @@ public class SchoolService {
                 (remainder == 0 ? "":String.format(", there will be %s student" + (remainder == 1 ? "" : "s") + " hanging", remainder)));
     }
 
+    // The groups of /groups, balanced by grade. The students that don't make a group of their
+    // own are spread over the others, so a group can get more than studentsPerGroup.
+    public StudentGroups divideIntoGroupsOf(int studentsPerGroup) {
+        if(studentsPerGroup < 2)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Size of group should be at least 2");
+        RankedStudents students = aggregateStore.getStudentsByGrade();
+        int numberOfGroups = students.size() / studentsPerGroup;
+        if(numberOfGroups < 2)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("Not able to manage groups of %s with only %s students", studentsPerGroup, students.size()));
+        return GroupPartitioner.partition(students, numberOfGroups);
+    }
+
+    public StudentGroups divideIntoNumberOfGroups(int numberOfGroups) {
+        if(numberOfGroups < 2)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "There should be at least two groups");
+        RankedStudents students = aggregateStore.getStudentsByGrade();
+        if(numberOfGroups > students.size())
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("Not able to divide %s students into %s groups", students.size(), numberOfGroups));
+        if(students.size() / numberOfGroups < 2)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, String.format("Not able to manage %s groups with %s students", numberOfGroups, students.size()));
+        return GroupPartitioner.partition(students, numberOfGroups);
+    }
+
+    // Students without a grade are left out of the average
     public String calculateAverageGrade() {
-        List<Student> studentList = studentService.getAllStudents();
-        if(studentList.isEmpty())
+        if(aggregateStore.getNumberOfStudents() == 0)
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No students found");
-        double totalSum = 0.0;
-        for (Student student: studentList)
-            totalSum += student.getJavaProgrammingGrade();
-        double average = totalSum / studentList.size();
+        Double average = aggregateStore.getAverageGrade();
+        if(average == null)
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No graded students found");
         return String.format("Average grade is %.1f", average);
     }
 
-    public List<Student> getTopScoringStudents() {
-        List<Student> studentList = studentService.getAllStudents();
-        if(studentList.isEmpty())
+    public GradeStatistics getGradeStatistics() {
+        return toGradeStatistics(studentService.getGradeAggregates());
+    }
+
+    // Shared with ReactiveSchoolService
+    static GradeStatistics toGradeStatistics(GradeAggregates aggregates) {
+        long numberOfGradedStudents = aggregates.getNumberOfGradedStudents();
+        Double standardDeviation = null;
+        if(numberOfGradedStudents > 0) {
+            double average = aggregates.getAverage();
+            double variance = aggregates.getSumOfSquares() / numberOfGradedStudents - average * average;
+            standardDeviation = Math.sqrt(Math.max(variance, 0.0));
+        }
+        List<GradeBucket> histogram = List.of(
+                new GradeBucket(0, 1, aggregates.getGradesFrom0()),
+                new GradeBucket(1, 2, aggregates.getGradesFrom1()),
+                new GradeBucket(2, 3, aggregates.getGradesFrom2()),
+                new GradeBucket(3, 4, aggregates.getGradesFrom3()),
+                new GradeBucket(4, 5, aggregates.getGradesFrom4()));
+        return new GradeStatistics(aggregates.getNumberOfStudents(),
+                numberOfGradedStudents,
+                aggregates.getAverage(),
+                aggregates.getMin(),
+                aggregates.getMax(),
+                standardDeviation,
+                histogram);
+    }
+
+    public List<StudentDto> getTopScoringStudents() {
+        return getTopScoringStudents(20);
+    }
+
+    // The ids come from the sorted grade index of the aggregate store, only those students are loaded
+    public List<StudentDto> getTopScoringStudents(int percent) {
+        if(percent < 1 || percent > 100)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Percent should be between 1 and 100");
+        int numberOfStudents = studentService.countStudents();
+        if(numberOfStudents == 0)
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No students found");
-        List<Student> sortedStudentList = studentList
-                .stream()
-                .sorted((student1, student2)->Double.compare(student2.getJavaProgrammingGrade(), student1.getJavaProgrammingGrade()))
-                .toList();
-        int numberOfTopStudents = (int)Math.ceil(sortedStudentList.size()*0.2);
-        return sortedStudentList.subList(0, numberOfTopStudents);
+        int numberOfTopStudents = (int)Math.ceil(numberOfStudents * percent / 100.0);
+        return studentService.getStudentsByIds(aggregateStore.getTopStudentIds(numberOfTopStudents));
     }
 }
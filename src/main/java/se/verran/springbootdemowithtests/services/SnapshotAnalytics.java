@@ -0,0 +1,140 @@
+package se.verran.springbootdemowithtests.services;
+
+import se.verran.springbootdemowithtests.dto.BirthYearCohort;
+import se.verran.springbootdemowithtests.dto.GradeDistribution;
+import se.verran.springbootdemowithtests.dto.GradeDistribution.GradeCount;
+import se.verran.springbootdemowithtests.dto.GradePercentiles;
+import se.verran.springbootdemowithtests.entities.Grades;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Grade histogram and per birth year sums of a StudentSnapshot, counted by fork/join tasks.
+// Every leaf counts its range of the snapshot into counters of its own, which are added up
+// when the tasks are joined, so the threads share nothing but the read-only snapshot.
+// Grades are whole tenths, so the percentiles come straight from the histogram without a sort.
+public final class SnapshotAnalytics {
+
+    static final int LEAF_SIZE = 1 << 14;
+
+    private final int firstBirthYear;
+    private final long[] studentsByGradeTenths = new long[Grades.MAX_TENTHS + 1];
+    private long numberOfUngradedStudents;
+    private final long[] studentsByBirthYear;
+    private final long[] gradedStudentsByBirthYear;
+    private final long[] gradeTenthsSumByBirthYear;
+
+    private SnapshotAnalytics(StudentSnapshot snapshot) {
+        firstBirthYear = snapshot.firstBirthYear();
+        studentsByBirthYear = new long[snapshot.numberOfBirthYears()];
+        gradedStudentsByBirthYear = new long[studentsByBirthYear.length];
+        gradeTenthsSumByBirthYear = new long[studentsByBirthYear.length];
+    }
+
+    public static SnapshotAnalytics compute(StudentSnapshot snapshot, ForkJoinPool pool) {
+        return pool.invoke(new CountTask(snapshot, 0, snapshot.size()));
+    }
+
+    public GradePercentiles getGradePercentiles() {
+        return new GradePercentiles(numberOfGradedStudents(), percentile(10), percentile(50), percentile(90));
+    }
+
+    // The lowest grade that at least percent of the graded students have or are below,
+    // null when no student has a grade
+    public Double percentile(double percent) {
+        long numberOfGraded = numberOfGradedStudents();
+        if (numberOfGraded == 0)
+            return null;
+        long rank = Math.max((long) Math.ceil(percent / 100 * numberOfGraded), 1);
+        long studentsUpToGrade = 0;
+        for (int tenths = 0; tenths < studentsByGradeTenths.length; tenths++) {
+            studentsUpToGrade += studentsByGradeTenths[tenths];
+            if (studentsUpToGrade >= rank)
+                return tenths / 10.0;
+        }
+        return Grades.MAX_TENTHS / 10.0;
+    }
+
+    // Oldest first, years without students are left out
+    public List<BirthYearCohort> getBirthYearCohorts() {
+        List<BirthYearCohort> cohorts = new ArrayList<>();
+        for (int year = 0; year < studentsByBirthYear.length; year++) {
+            if (studentsByBirthYear[year] == 0)
+                continue;
+            long graded = gradedStudentsByBirthYear[year];
+            cohorts.add(new BirthYearCohort(firstBirthYear + year, studentsByBirthYear[year], graded,
+                    graded == 0 ? null : gradeTenthsSumByBirthYear[year] / 10.0 / graded));
+        }
+        return cohorts;
+    }
+
+    public GradeDistribution getGradeDistribution() {
+        List<GradeCount> grades = new ArrayList<>(studentsByGradeTenths.length);
+        for (int tenths = 0; tenths < studentsByGradeTenths.length; tenths++)
+            grades.add(new GradeCount(tenths / 10.0, studentsByGradeTenths[tenths]));
+        return new GradeDistribution(numberOfUngradedStudents, grades);
+    }
+
+    private long numberOfGradedStudents() {
+        long numberOfGraded = 0;
+        for (long students : studentsByGradeTenths)
+            numberOfGraded += students;
+        return numberOfGraded;
+    }
+
+    private void count(StudentSnapshot snapshot, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int year = snapshot.birthYearIndex(i);
+            studentsByBirthYear[year]++;
+            short gradeTenths = snapshot.gradeTenths(i);
+            if (gradeTenths == StudentSnapshot.UNGRADED) {
+                numberOfUngradedStudents++;
+                continue;
+            }
+            studentsByGradeTenths[gradeTenths]++;
+            gradedStudentsByBirthYear[year]++;
+            gradeTenthsSumByBirthYear[year] += gradeTenths;
+        }
+    }
+
+    private SnapshotAnalytics add(SnapshotAnalytics other) {
+        for (int tenths = 0; tenths < studentsByGradeTenths.length; tenths++)
+            studentsByGradeTenths[tenths] += other.studentsByGradeTenths[tenths];
+        numberOfUngradedStudents += other.numberOfUngradedStudents;
+        for (int year = 0; year < studentsByBirthYear.length; year++) {
+            studentsByBirthYear[year] += other.studentsByBirthYear[year];
+            gradedStudentsByBirthYear[year] += other.gradedStudentsByBirthYear[year];
+            gradeTenthsSumByBirthYear[year] += other.gradeTenthsSumByBirthYear[year];
+        }
+        return this;
+    }
+
+    // Halves its range until it is at most LEAF_SIZE students
+    private static class CountTask extends RecursiveTask<SnapshotAnalytics> {
+        private final StudentSnapshot snapshot;
+        private final int from;
+        private final int to;
+
+        CountTask(StudentSnapshot snapshot, int from, int to) {
+            this.snapshot = snapshot;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SnapshotAnalytics compute() {
+            if (to - from <= LEAF_SIZE) {
+                SnapshotAnalytics analytics = new SnapshotAnalytics(snapshot);
+                analytics.count(snapshot, from, to);
+                return analytics;
+            }
+            int middle = (from + to) >>> 1;
+            CountTask firstHalf = new CountTask(snapshot, from, middle);
+            firstHalf.fork();
+            SnapshotAnalytics secondHalf = new CountTask(snapshot, middle, to).compute();
+            return firstHalf.join().add(secondHalf);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package se.verran.springbootdemowithtests.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.stereotype.Component;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Collapses the lookups of getStudentById. A lookup of an id that is already being loaded waits
+// for that load, and the ids asked for within the batch window are loaded together with one
+// StudentRepository.loadAllById. The window starts with the first id of a batch. A batch that
+// reaches the maximum size is loaded right away by the thread that filled it, the others by the
+// timer thread, so while a query is slow the next batch grows instead of more queries piling up.
+// A lookup can get the student as it was when the load it joined started, and waits at most the
+// timeout for it. A window of zero turns it off, every lookup is a findById.
+@Component
+public class StudentByIdLoader implements DisposableBean {
+    private final StudentRepository studentRepository;
+    private final long batchWindowNanos;
+    private final int maxBatchSize;
+    private final Duration timeout;
+    private final DistributionSummary batchSizes;
+    private final Counter sharedLoads;
+    private final ScheduledExecutorService timer;
+    private final Map<Integer, CompletableFuture<Optional<Student>>> loads = new ConcurrentHashMap<>();
+    // Guarded by this, replaced when it is loaded
+    private List<Integer> batch = new ArrayList<>();
+
+    public StudentByIdLoader(StudentRepository studentRepository, MeterRegistry meterRegistry,
+                             @Value("${student.by-id.batch-window:PT0.002S}") Duration batchWindow,
+                             @Value("${student.by-id.max-batch-size:100}") int maxBatchSize,
+                             @Value("${student.by-id.timeout:PT30S}") Duration timeout) {
+        if (batchWindow.isNegative() || maxBatchSize < 1 || timeout.isNegative() || timeout.isZero())
+            throw new IllegalArgumentException("The batch window can't be negative, the maximum batch size has to be at least 1 and the timeout positive");
+        this.studentRepository = studentRepository;
+        this.batchWindowNanos = batchWindow.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.timeout = timeout;
+        this.batchSizes = DistributionSummary.builder("student.by.id.batch.size")
+                .description("Ids per query of StudentByIdLoader")
+                .baseUnit("ids")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.sharedLoads = Counter.builder("student.by.id.shared")
+                .description("Lookups that waited for a load of the same id")
+                .register(meterRegistry);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "student-by-id-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Optional<Student> load(int id) {
+        if (batchWindowNanos == 0)
+            return studentRepository.findById(id);
+        CompletableFuture<Optional<Student>> load = new CompletableFuture<>();
+        CompletableFuture<Optional<Student>> existingLoad = loads.putIfAbsent(id, load);
+        if (existingLoad != null) {
+            sharedLoads.increment();
+            return await(existingLoad);
+        }
+        List<Integer> batchToLoad;
+        try {
+            batchToLoad = addToBatch(id);
+        } catch (Throwable e) {
+            loads.remove(id, load);
+            load.completeExceptionally(e);
+            throw e;
+        }
+        if (batchToLoad != null)
+            loadBatch(batchToLoad);
+        return await(load);
+    }
+
+    // Returns the batch when it is full, or when the timer has been shut down by destroy()
+    private synchronized List<Integer> addToBatch(int id) {
+        batch.add(id);
+        if (batch.size() >= maxBatchSize)
+            return takeBatch();
+        if (batch.size() == 1) {
+            List<Integer> scheduledBatch = batch;
+            try {
+                timer.schedule(() -> loadWhenDue(scheduledBatch), batchWindowNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                return takeBatch();
+            }
+        }
+        return null;
+    }
+
+    private void loadWhenDue(List<Integer> scheduledBatch) {
+        List<Integer> ids;
+        synchronized (this) {
+            // Filled up and loaded already
+            if (batch != scheduledBatch)
+                return;
+            ids = takeBatch();
+        }
+        loadBatch(ids);
+    }
+
+    private List<Integer> takeBatch() {
+        List<Integer> ids = batch;
+        batch = new ArrayList<>();
+        return ids;
+    }
+
+    // Every id is removed and answered whatever happens, an Error of the query included
+    private void loadBatch(List<Integer> ids) {
+        Map<Integer, Student> studentsById = new HashMap<>();
+        try {
+            batchSizes.record(ids.size());
+            for (Student student : studentRepository.loadAllById(ids))
+                studentsById.put(student.getId(), student);
+        } catch (Throwable e) {
+            for (Integer id : ids)
+                loads.remove(id).completeExceptionally(e);
+            return;
+        }
+        // Removed before it is answered, a lookup that starts after this one has returned gets a new load
+        for (Integer id : ids)
+            loads.remove(id).complete(Optional.ofNullable(studentsById.get(id)));
+    }
+
+    private Optional<Student> await(CompletableFuture<Optional<Student>> load) {
+        try {
+            return load.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            if (e.getCause() instanceof Error cause)
+                throw cause;
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            // The load goes on and answers the lookups that join it in the meantime
+            throw new QueryTimeoutException("The student wasn't loaded within " + timeout, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the student", e);
+        }
+    }
+
+    // Lookups still waiting for the timer are answered before the repository goes away
+    @Override
+    public void destroy() {
+        timer.shutdownNow();
+        List<Integer> ids;
+        synchronized (this) {
+            ids = takeBatch();
+        }
+        if (!ids.isEmpty())
+            loadBatch(ids);
+    }
+}
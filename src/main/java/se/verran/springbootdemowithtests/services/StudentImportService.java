@@ -0,0 +1,143 @@
+package se.verran.springbootdemowithtests.services;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.verran.springbootdemowithtests.config.CacheConfig;
+import se.verran.springbootdemowithtests.dto.StudentImportResult;
+import se.verran.springbootdemowithtests.dto.StudentImportResult.Conflict;
+import se.verran.springbootdemowithtests.entities.Grades;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+// Imports students in chunks, each chunk in its own transaction: one query finds the emails that
+// already exist and the remaining students are inserted in JDBC batches. A failing chunk doesn't
+// roll back the chunks before it. The grade statistics are evicted after every committed chunk.
+@Service
+public class StudentImportService {
+    private static final int MAX_LENGTH = 50;
+
+    private final StudentRepository studentRepository;
+    private final SchoolAggregateStore aggregateStore;
+    private final StudentTableVersion tableVersion;
+    private final Cache gradeAggregates;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public StudentImportService(StudentRepository studentRepository,
+                                SchoolAggregateStore aggregateStore,
+                                StudentTableVersion tableVersion,
+                                CacheManager cacheManager,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${student.import.chunk-size:500}") int chunkSize) {
+        this.studentRepository = studentRepository;
+        this.aggregateStore = aggregateStore;
+        this.tableVersion = tableVersion;
+        this.gradeAggregates = cacheManager.getCache(CacheConfig.GRADE_AGGREGATES);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+    }
+
+    public StudentImportResult importStudents(Iterator<Student> students) {
+        List<Conflict> conflicts = new ArrayList<>();
+        List<Student> chunk = new ArrayList<>(chunkSize);
+        int imported = 0;
+        int row = 0;
+        while (students.hasNext()) {
+            chunk.add(students.next());
+            if (chunk.size() == chunkSize || !students.hasNext()) {
+                imported += importChunkWithRetry(chunk, row, conflicts);
+                row += chunk.size();
+                chunk.clear();
+            }
+        }
+        return new StudentImportResult(imported, conflicts);
+    }
+
+    // An email inserted by someone else after the lookup fails the whole chunk on the unique
+    // constraint, the retry finds it with the lookup and reports it as a conflict instead
+    private int importChunkWithRetry(List<Student> chunk, int firstRow, List<Conflict> conflicts) {
+        try {
+            return importChunkInTransaction(chunk, firstRow, conflicts);
+        } catch (DataIntegrityViolationException e) {
+            if (!StudentService.isEmailConflict(e))
+                throw e;
+            return importChunkInTransaction(chunk, firstRow, conflicts);
+        }
+    }
+
+    private int importChunkInTransaction(List<Student> chunk, int firstRow, List<Conflict> conflicts) {
+        List<Conflict> chunkConflicts = new ArrayList<>();
+        List<Student> imported = transactionTemplate.execute(status -> importChunk(chunk, firstRow, chunkConflicts));
+        conflicts.addAll(chunkConflicts);
+        imported.forEach(aggregateStore::studentSaved);
+        if (!imported.isEmpty()) {
+            gradeAggregates.clear();
+            tableVersion.bump();
+        }
+        return imported.size();
+    }
+
+    private List<Student> importChunk(List<Student> chunk, int firstRow, List<Conflict> conflicts) {
+        Set<String> emails = new HashSet<>();
+        for (Student student : chunk) {
+            if (student.getEmail() != null)
+                emails.add(student.getEmail());
+        }
+        // Rows from before emails were normalized can differ in case from the ones they match
+        Set<String> takenEmails = new HashSet<>();
+        if (!emails.isEmpty())
+            studentRepository.findExistingEmails(emails).forEach(email -> takenEmails.add(Student.normalizeEmail(email)));
+
+        List<Student> accepted = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            Student student = chunk.get(i);
+            String invalidReason = validate(student);
+            if (invalidReason != null) {
+                conflicts.add(new Conflict(firstRow + i, student.getEmail(), invalidReason));
+            } else if (!takenEmails.add(student.getEmail())) {
+                conflicts.add(new Conflict(firstRow + i, student.getEmail(), "Email " + student.getEmail() + " already exists"));
+            } else {
+                // Always insert, an id in the request would otherwise turn the save into an update
+                student.setId(0);
+                accepted.add(student);
+            }
+        }
+
+        entityManager.unwrap(Session.class).setJdbcBatchSize(chunkSize);
+        studentRepository.saveAll(accepted);
+        // Flushed through the repository so a constraint violation is translated to DataIntegrityViolationException
+        studentRepository.flush();
+        entityManager.clear();
+        return accepted;
+    }
+
+    private String validate(Student student) {
+        if (student.getFirstName() == null || student.getLastName() == null || student.getBirthDate() == null || student.getEmail() == null)
+            return "firstName, lastName, birthDate and email are required";
+        if (student.getFirstName().length() > MAX_LENGTH || student.getLastName().length() > MAX_LENGTH || student.getEmail().length() > MAX_LENGTH)
+            return "firstName, lastName and email can be at most " + MAX_LENGTH + " characters";
+        Short gradeTenths = student.getJavaProgrammingGradeTenths();
+        if (gradeTenths != null && (gradeTenths < 0 || gradeTenths > Grades.MAX_TENTHS))
+            return "Valid grades are 0.0 - 5.0";
+        return null;
+    }
+}
@@ -1,64 +1,287 @@
 package se.verran.springbootdemowithtests.services;
 
+import io.micrometer.core.annotation.Timed;
+import io.r2dbc.spi.R2dbcException;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
+import se.verran.springbootdemowithtests.config.CacheConfig;
+import se.verran.springbootdemowithtests.dto.GradeAggregates;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.dto.StudentPatch;
+import se.verran.springbootdemowithtests.dto.StudentSearchQuery;
+import se.verran.springbootdemowithtests.dto.StudentSummary;
+import se.verran.springbootdemowithtests.entities.Ages;
+import se.verran.springbootdemowithtests.entities.Grades;
 import se.verran.springbootdemowithtests.entities.Student;
 import se.verran.springbootdemowithtests.repositories.StudentRepository;
 
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
+@Timed(value = "service.calls", histogram = true)
 public class StudentService {
+    private static final int MAX_LENGTH = 50;
+
     private final StudentRepository studentRepository;
+    private final SchoolAggregateStore aggregateStore;
+    private final StudentTableVersion tableVersion;
+    private final StudentByIdLoader studentByIdLoader;
+    private final GradeWriteBehind gradeWriteBehind;
 
     @Autowired
-    public StudentService(StudentRepository studentRepository) {
+    public StudentService(StudentRepository studentRepository, SchoolAggregateStore aggregateStore, StudentTableVersion tableVersion,
+                          StudentByIdLoader studentByIdLoader, GradeWriteBehind gradeWriteBehind) {
         this.studentRepository = studentRepository;
+        this.aggregateStore = aggregateStore;
+        this.tableVersion = tableVersion;
+        this.studentByIdLoader = studentByIdLoader;
+        this.gradeWriteBehind = gradeWriteBehind;
     }
 
+    // The unique constraint on email decides, which takes one round trip and holds under concurrent inserts
+    @CacheEvict(cacheNames = CacheConfig.GRADE_AGGREGATES, allEntries = true)
     public Student addStudent(Student student){
-        boolean emailAlreadyExists = studentRepository.existsStudentByEmail(student.getEmail());
-        if(emailAlreadyExists){
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "Email " + student.getEmail() + " already exists");
+        checkGrade(student);
+        Student savedStudent;
+        try {
+            savedStudent = studentRepository.saveAndFlush(student);
+        } catch (DataIntegrityViolationException e) {
+            if(isEmailConflict(e)){
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Email " + student.getEmail() + " already exists");
+            }
+            throw e;
+        }
+        aggregateStore.studentSaved(savedStudent);
+        tableVersion.bump();
+        return savedStudent;
+    }
+
+    // Hibernate names the constraint, a JdbcTemplate or R2DBC write only has the driver's message
+    static boolean isEmailConflict(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if(cause instanceof ConstraintViolationException violation && violation.getConstraintName() != null)
+                return violation.getConstraintName().toLowerCase().contains(Student.EMAIL_CONSTRAINT);
+            if((cause instanceof SQLException || cause instanceof R2dbcException) && cause.getMessage() != null)
+                return cause.getMessage().toLowerCase().contains(Student.EMAIL_CONSTRAINT);
+        }
+        return false;
+    }
+    public List<StudentDto> getAllStudents()   {
+        return withPendingGrades(studentRepository.findAllDtos());
+    }
+
+    public List<StudentDto> getStudentsByAge(int minAge, int maxAge, Pageable pageable) {
+        LocalDate today = Ages.today();
+        return withPendingGrades(studentRepository.findDtosByBirthDateBetween(Ages.earliestBirthDate(maxAge, today), Ages.latestBirthDate(minAge, today), pageable));
+    }
+
+    // Grades are compared in SQL, so pending grades are written before a search by grade
+    public List<StudentSummary> searchStudents(StudentSearchQuery query, int afterId, int limit) {
+        if(query.minGrade() != null || query.maxGrade() != null)
+            gradeWriteBehind.flush();
+        List<StudentSummary> students = studentRepository.search(query, afterId, limit);
+        if(!gradeWriteBehind.hasPendingGrades())
+            return students;
+        return students.stream().map(student -> {
+            Short gradeTenths = gradeWriteBehind.getPendingGradeTenths(student.id());
+            return gradeTenths == null ? student
+                    : new StudentSummary(student.id(), student.firstName(), student.lastName(), student.email(), gradeTenths);
+        }).toList();
+    }
+
+    public List<StudentDto> getStudentsAfter(int afterId, int limit) {
+        return withPendingGrades(studentRepository.findDtosByIdGreaterThan(afterId, Limit.of(limit)));
+    }
+
+    // Hands every student to the consumer one at a time. They are DTOs, the persistence context
+    // doesn't grow with the table.
+    @Transactional(readOnly = true)
+    public void forEachStudent(Consumer<StudentDto> consumer) {
+        try (Stream<StudentDto> students = studentRepository.streamAllDtos()) {
+            students.map(this::withPendingGrade).forEach(consumer);
         }
-        return studentRepository.save(student);
     }
-    public List<Student> getAllStudents()   {
-        return studentRepository.findAll();
+
+    // Kept up to date by the aggregate store, no query at all
+    public int countStudents() {
+        return aggregateStore.getNumberOfStudents();
     }
 
+    // One query by primary key, returned in the order of the ids. Ids of students deleted in the
+    // meantime are skipped.
+    public List<StudentDto> getStudentsByIds(List<Integer> ids) {
+        Map<Integer, StudentDto> studentsById = new HashMap<>();
+        for (StudentDto student : studentRepository.findDtosByIdIn(ids))
+            studentsById.put(student.id(), student);
+        List<StudentDto> students = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            StudentDto student = studentsById.get(id);
+            if (student != null)
+                students.add(withPendingGrade(student));
+        }
+        return students;
+    }
+
+    @Cacheable(CacheConfig.GRADE_AGGREGATES)
+    public GradeAggregates getGradeAggregates() {
+        gradeWriteBehind.flush();
+        return studentRepository.aggregateGrades();
+    }
+
+    @CacheEvict(cacheNames = CacheConfig.GRADE_AGGREGATES, allEntries = true)
     public void deleteStudent(int id){
         if(!studentRepository.existsById(id)){
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Could not find and delete student by id " + id);
         }
         studentRepository.deleteById(id);
+        aggregateStore.studentDeleted(id);
+        tableVersion.bump();
     }
+    @CacheEvict(cacheNames = CacheConfig.GRADE_AGGREGATES, allEntries = true)
     public Student updateStudent(Student student){
+        checkGrade(student);
+        flushPendingGrade(student.getId());
         if(!studentRepository.existsById(student.getId())){
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Could not find and update student by id " + student.getId());
         }
-        return studentRepository.save(student);
+        Student savedStudent;
+        try {
+            savedStudent = studentRepository.save(student);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Student by id " + student.getId() + " was changed after version " + student.getVersion());
+        }
+        aggregateStore.studentSaved(savedStudent);
+        tableVersion.bump();
+        return savedStudent;
+    }
+
+    // One conditional UPDATE of the given fields, the student isn't read first. Returns the new version.
+    @CacheEvict(cacheNames = CacheConfig.GRADE_AGGREGATES, allEntries = true)
+    public int patchStudent(int id, StudentPatch patch) {
+        checkPatch(patch);
+        flushPendingGrade(id);
+        Double grade = patch.javaProgrammingGrade();
+        int updatedRows;
+        try {
+            updatedRows = studentRepository.patchStudent(id, patch.version(), patch);
+        } catch (DataIntegrityViolationException e) {
+            if(isEmailConflict(e)){
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Email " + patch.email() + " already exists");
+            }
+            throw e;
+        }
+        // Only a failed update pays for telling a missing student from a newer version
+        if(updatedRows == 0){
+            if(!studentRepository.existsById(id))
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Could not find and update student by id " + id);
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Student by id " + id + " was changed after version " + patch.version());
+        }
+        if(grade != null)
+            aggregateStore.gradeChanged(id, Grades.toTenths(grade));
+        tableVersion.bump();
+        return patch.version() + 1;
+    }
+
+    // Shared with ReactiveStudentService
+    static void checkPatch(StudentPatch patch) {
+        if(patch.version() == null)
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The version the student was read at is required");
+        if(!patch.hasChanges())
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Nothing to update");
+        if(isTooLong(patch.firstName()) || isTooLong(patch.lastName()) || isTooLong(patch.email()))
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "firstName, lastName and email can be at most " + MAX_LENGTH + " characters");
+        Double grade = patch.javaProgrammingGrade();
+        if(grade != null && !(grade >= 0 && grade <= Grades.MAX_TENTHS / 10.0))
+            throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, "Valid grades are 0.0 - 5.0");
+    }
+
+    // Shared with ReactiveStudentService, the check of StudentImportService. The analytics count
+    // grades by tenths and can't take one outside 0.0 - 5.0.
+    static void checkGrade(Student student) {
+        Short gradeTenths = student.getJavaProgrammingGradeTenths();
+        if(gradeTenths != null && (gradeTenths < 0 || gradeTenths > Grades.MAX_TENTHS))
+            throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, "Valid grades are 0.0 - 5.0");
+    }
+
+    private static boolean isTooLong(String value) {
+        return value != null && value.length() > MAX_LENGTH;
     }
 
+    // Concurrent lookups share their queries, see StudentByIdLoader
     public Student getStudentById(int id) {
-        return studentRepository.findById(id).orElseThrow(()->new ResponseStatusException(HttpStatus.NOT_FOUND, "Could not find student by id " + id));
+        Student student = studentByIdLoader.load(id).orElseThrow(()->new ResponseStatusException(HttpStatus.NOT_FOUND, "Could not find student by id " + id));
+        Short gradeTenths = gradeWriteBehind.getPendingGradeTenths(id);
+        if(gradeTenths == null)
+            return student;
+        // A copy, the loaded student may be shared with other lookups
+        Student withPendingGrade = new Student(student.getFirstName(), student.getLastName(), student.getBirthDate(), student.getEmail());
+        withPendingGrade.setId(student.getId());
+        withPendingGrade.setJavaProgrammingGradeTenths(gradeTenths);
+        withPendingGrade.setVersion(student.getVersion() + 1);
+        return withPendingGrade;
     }
 
-    public Student setGradeForStudentById(int studentId, String gradeAsString) {
-        double grade;
-        try {
-            grade = Double.parseDouble(gradeAsString);
-        } catch (Exception e){
+    // Reads show the grades GradeWriteBehind hasn't written yet, with the version the row gets when
+    // they are written
+    private List<StudentDto> withPendingGrades(List<StudentDto> students) {
+        if(!gradeWriteBehind.hasPendingGrades())
+            return students;
+        return students.stream().map(this::withPendingGrade).toList();
+    }
+
+    private StudentDto withPendingGrade(StudentDto student) {
+        Short gradeTenths = gradeWriteBehind.getPendingGradeTenths(student.id());
+        if(gradeTenths == null)
+            return student;
+        return new StudentDto(student.id(), student.firstName(), student.lastName(), student.birthDate(), student.email(),
+                gradeTenths, student.version() + 1);
+    }
+
+    // A write of the student after a pending grade mustn't be overwritten by it
+    private void flushPendingGrade(int studentId) {
+        if(gradeWriteBehind.getPendingGradeTenths(studentId) != null)
+            gradeWriteBehind.flush();
+    }
+
+    @CacheEvict(cacheNames = CacheConfig.GRADE_AGGREGATES, allEntries = true)
+    // One UPDATE, the student is never loaded. Returns the grade that was stored. With write-behind
+    // the grade is stored in the journal of GradeWriteBehind and written by its next flush, which
+    // updates the aggregate store and bumps the table version again once it has committed. The
+    // table version is also bumped right away: the student reads show the pending grade, and a
+    // cached response or an ETag from before it mustn't hide it.
+    public double setGradeForStudentById(int studentId, String gradeAsString) {
+        int gradeTenths = Grades.parseTenths(gradeAsString);
+        if(gradeTenths == Grades.INVALID)
             throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, "Valid grades are 0.0 - 5.0");
+        if(gradeWriteBehind.isEnabled()){
+            // The aggregate store knows every student once it has been seeded, until then the database is asked
+            if(!aggregateStore.contains(studentId) && !studentRepository.existsById(studentId))
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Could not find and update grades for student by id " + studentId);
+            gradeWriteBehind.setGrade(studentId, (short) gradeTenths);
+            tableVersion.bump();
+            return gradeTenths / 10.0;
         }
-        if(grade < 0 || grade > 5)
-            throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, "Valid grades are 0.0 - 5.0");
-        Student student = studentRepository.findById(studentId).orElseThrow(() ->
-                new ResponseStatusException(HttpStatus.NOT_FOUND, "Could not find and update grades for student by id " + studentId)
-        );
-        student.setJavaProgrammingGrade(grade);
-        return studentRepository.save(student);
+        if(studentRepository.updateGradeTenths(studentId, (short) gradeTenths) == 0)
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Could not find and update grades for student by id " + studentId);
+        aggregateStore.gradeChanged(studentId, (short) gradeTenths);
+        tableVersion.bump();
+        return gradeTenths / 10.0;
     }
 }
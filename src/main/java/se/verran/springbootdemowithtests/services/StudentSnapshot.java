@@ -0,0 +1,91 @@
+package se.verran.springbootdemowithtests.services;
+
+import se.verran.springbootdemowithtests.dto.StudentAnalyticsRow;
+import se.verran.springbootdemowithtests.entities.Grades;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+// Columnar copy of the student columns the school analytics read, one primitive array per
+// column and the same index for the same student. Never changed after it has been built, so
+// any number of threads can read it.
+public final class StudentSnapshot {
+    // Far outside the grades StudentService accepts
+    public static final short UNGRADED = Short.MIN_VALUE;
+
+    private final int[] ids;
+    private final short[] gradeTenths;
+    private final int[] birthEpochDays;
+    private final int firstBirthYear;
+    // Epoch day of January 1st of every year from firstBirthYear up to the year after the last birth year
+    private final int[] yearStartEpochDays;
+
+    public StudentSnapshot(int[] ids, short[] gradeTenths, int[] birthEpochDays) {
+        if (ids.length != gradeTenths.length || ids.length != birthEpochDays.length)
+            throw new IllegalArgumentException("Every column needs one value per student");
+        // SnapshotAnalytics counts the grades by tenths
+        for (int i = 0; i < gradeTenths.length; i++) {
+            if (gradeTenths[i] != UNGRADED && (gradeTenths[i] < 0 || gradeTenths[i] > Grades.MAX_TENTHS))
+                throw new IllegalArgumentException("Student " + ids[i] + " has the grade tenths " + gradeTenths[i] + ", valid grades are 0.0 - 5.0");
+        }
+        this.ids = ids;
+        this.gradeTenths = gradeTenths;
+        this.birthEpochDays = birthEpochDays;
+        if (ids.length == 0) {
+            firstBirthYear = 0;
+            yearStartEpochDays = new int[0];
+            return;
+        }
+        int firstDay = Arrays.stream(birthEpochDays).min().getAsInt();
+        int lastDay = Arrays.stream(birthEpochDays).max().getAsInt();
+        firstBirthYear = LocalDate.ofEpochDay(firstDay).getYear();
+        int lastBirthYear = LocalDate.ofEpochDay(lastDay).getYear();
+        yearStartEpochDays = new int[lastBirthYear - firstBirthYear + 2];
+        for (int year = 0; year < yearStartEpochDays.length; year++)
+            yearStartEpochDays[year] = (int) LocalDate.of(firstBirthYear + year, 1, 1).toEpochDay();
+    }
+
+    static StudentSnapshot of(Stream<StudentAnalyticsRow> rows) {
+        int[] ids = new int[1024];
+        short[] gradeTenths = new short[ids.length];
+        int[] birthEpochDays = new int[ids.length];
+        int size = 0;
+        for (Iterator<StudentAnalyticsRow> iterator = rows.iterator(); iterator.hasNext(); size++) {
+            StudentAnalyticsRow row = iterator.next();
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                gradeTenths = Arrays.copyOf(gradeTenths, size * 2);
+                birthEpochDays = Arrays.copyOf(birthEpochDays, size * 2);
+            }
+            ids[size] = row.getId();
+            gradeTenths[size] = row.getGradeTenths() == null ? UNGRADED : row.getGradeTenths();
+            birthEpochDays[size] = (int) row.getBirthDate().toEpochDay();
+        }
+        return new StudentSnapshot(Arrays.copyOf(ids, size), Arrays.copyOf(gradeTenths, size), Arrays.copyOf(birthEpochDays, size));
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    // UNGRADED for a student without a grade
+    short gradeTenths(int index) {
+        return gradeTenths[index];
+    }
+
+    int firstBirthYear() {
+        return firstBirthYear;
+    }
+
+    int numberOfBirthYears() {
+        return Math.max(yearStartEpochDays.length - 1, 0);
+    }
+
+    // Birth year of the student at index, counted from firstBirthYear
+    int birthYearIndex(int index) {
+        int year = Arrays.binarySearch(yearStartEpochDays, birthEpochDays[index]);
+        return year >= 0 ? year : -year - 2;
+    }
+}
@@ -0,0 +1,28 @@
+package se.verran.springbootdemowithtests.services;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Version of the student table as a whole, bumped after every committed write. Responses built
+// from the table are tagged with the version that was read before they were built, so a response
+// never claims to be newer than it is. The instance part tells the versions of two runs apart.
+// Only the writes made through this JVM bump it, another instance has a version of its own.
+@Component
+public class StudentTableVersion {
+
+    private final String instance = Long.toHexString(System.currentTimeMillis());
+    private final AtomicLong version = new AtomicLong();
+
+    public long current() {
+        return version.get();
+    }
+
+    public String instance() {
+        return instance;
+    }
+
+    public void bump() {
+        version.incrementAndGet();
+    }
+}
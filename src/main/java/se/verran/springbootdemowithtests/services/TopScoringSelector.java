@@ -0,0 +1,39 @@
+package se.verran.springbootdemowithtests.services;
+
+import se.verran.springbootdemowithtests.entities.Student;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Top-k selection for students that are already in memory. A min-heap of size k keeps
+// the best students seen so far, which is O(n log k) time and O(k) extra memory
+// instead of sorting the whole collection.
+public final class TopScoringSelector {
+
+    // Highest grade first, students without a grade last
+    public static final Comparator<Student> BY_GRADE_DESCENDING = Comparator.comparing(
+            Student::getJavaProgrammingGradeTenths, Comparator.nullsFirst(Comparator.<Short>naturalOrder())).reversed();
+
+    private TopScoringSelector() {
+    }
+
+    public static List<Student> selectTop(Collection<Student> students, int numberOfStudents) {
+        if(numberOfStudents <= 0)
+            return List.of();
+        PriorityQueue<Student> heap = new PriorityQueue<>(numberOfStudents + 1, BY_GRADE_DESCENDING.reversed());
+        for (Student student : students) {
+            if(heap.size() < numberOfStudents) {
+                heap.add(student);
+            } else if(BY_GRADE_DESCENDING.compare(student, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(student);
+            }
+        }
+        List<Student> topStudents = new ArrayList<>(heap);
+        topStudents.sort(BY_GRADE_DESCENDING);
+        return topStudents;
+    }
+}
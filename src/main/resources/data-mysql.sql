@@ -0,0 +1,7 @@
+-- Runs after Hibernate has updated the schema, on every start, see spring.sql.init in application.properties.
+-- ddl-auto=update creates the student_seq table at 1 on a student table whose ids AUTO_INCREMENT handed out.
+-- The pooled optimizer hands out the 50 ids up to the value it reads, so the table has to be at least
+-- 50 past the highest id. Once it is, this changes nothing.
+UPDATE student_seq
+SET next_val = (SELECT COALESCE(MAX(id), 0) FROM student) + 51
+WHERE next_val <= (SELECT COALESCE(MAX(id), 0) FROM student) + 50;
@@ -0,0 +1,20 @@
+-- Runs after Hibernate has updated the schema and before data-mysql.sql, on every start.
+-- Grades used to be kept in the double column java_programming_grade. ddl-auto=update adds
+-- java_programming_grade_tenths next to it but neither moves the grades nor drops the old column,
+-- which also takes the old idx_student_grade with it. MySQL has no DROP COLUMN IF EXISTS, so the
+-- statements are prepared as DO 0 once the old column is gone. Rerunning after a failure in between
+-- only copies grades that are still missing.
+SET @old_grade_columns = (SELECT COUNT(*) FROM information_schema.columns
+                          WHERE table_schema = DATABASE() AND table_name = 'student' AND column_name = 'java_programming_grade');
+
+SET @migration = IF(@old_grade_columns > 0,
+    'UPDATE student SET java_programming_grade_tenths = ROUND(java_programming_grade * 10) WHERE java_programming_grade IS NOT NULL AND java_programming_grade_tenths IS NULL',
+    'DO 0');
+PREPARE migration FROM @migration;
+EXECUTE migration;
+DEALLOCATE PREPARE migration;
+
+SET @migration = IF(@old_grade_columns > 0, 'ALTER TABLE student DROP COLUMN java_programming_grade', 'DO 0');
+PREPARE migration FROM @migration;
+EXECUTE migration;
+DEALLOCATE PREPARE migration;
@@ -0,0 +1,74 @@
+package se.verran.springbootdemowithtests.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ConnectionLimitingDataSourceTest {
+
+    private DataSource targetDataSource;
+
+    private ConnectionLimitingDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        targetDataSource = mock(DataSource.class);
+        when(targetDataSource.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+        dataSource = new ConnectionLimitingDataSource(targetDataSource, 2, Duration.ofMillis(50));
+    }
+
+    @Test
+    void getConnection_shouldWaitForAPermitAndTimeOut() throws SQLException {
+        // Arrange
+        Connection first = dataSource.getConnection();
+        dataSource.getConnection();
+
+        // Act & Assert, both permits are taken
+        assertThrows(SQLTransientConnectionException.class, () -> dataSource.getConnection());
+
+        // Act & Assert, closing returns the permit, closing twice doesn't return it twice
+        first.close();
+        first.close();
+        assertEquals(1, dataSource.getAvailablePermits());
+        assertDoesNotThrow(() -> dataSource.getConnection());
+        assertEquals(0, dataSource.getAvailablePermits());
+    }
+
+    @Test
+    void getConnection_shouldReturnThePermitWhenThePoolFails() throws SQLException {
+        // Arrange
+        when(targetDataSource.getConnection()).thenThrow(new SQLTransientConnectionException("pool exhausted"));
+
+        // Act & Assert
+        assertThrows(SQLTransientConnectionException.class, () -> dataSource.getConnection());
+        assertEquals(2, dataSource.getAvailablePermits());
+    }
+
+    @Test
+    void connection_shouldDelegateToTheTargetConnection() throws SQLException {
+        // Arrange
+        Connection target = mock(Connection.class);
+        when(target.getAutoCommit()).thenReturn(true);
+        when(targetDataSource.getConnection()).thenReturn(target);
+
+        // Act
+        Connection connection = dataSource.getConnection();
+        connection.setReadOnly(true);
+        connection.close();
+
+        // Assert
+        assertTrue(connection.getAutoCommit());
+        verify(target).setReadOnly(true);
+        verify(target).close();
+        assertEquals(connection, connection);
+        assertNotEquals(connection, target);
+    }
+}
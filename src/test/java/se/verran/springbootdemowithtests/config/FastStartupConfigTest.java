@@ -0,0 +1,36 @@
+package se.verran.springbootdemowithtests.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import se.verran.springbootdemowithtests.services.SchoolAnalyticsService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The schema is created and dropped like in the other tests
+@SpringBootTest(properties = "spring.jpa.hibernate.ddl-auto=create-drop")
+@ActiveProfiles("fast-startup")
+class FastStartupConfigTest {
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Test
+    void startup_shouldOnlyCreateTheBeansWithWorkToDoAtStartup() {
+        // Arrange
+        ConfigurableListableBeanFactory beanFactory = context.getBeanFactory();
+
+        // Act & Assert
+        assertTrue(beanFactory.containsSingleton("gradeWriteBehind"));
+        assertTrue(beanFactory.containsSingleton("schoolAggregateStore"));
+        assertFalse(beanFactory.containsSingleton("schoolAnalyticsService"));
+        assertFalse(beanFactory.containsSingleton("studentController"));
+
+        // Act & Assert, created on first use
+        assertNotNull(context.getBean(SchoolAnalyticsService.class));
+        assertTrue(beanFactory.containsSingleton("schoolAnalyticsService"));
+    }
+}
@@ -0,0 +1,52 @@
+package se.verran.springbootdemowithtests.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+
+import java.time.LocalDate;
+
+import static org.hamcrest.Matchers.containsString;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class MetricsConfigTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Test
+    void prometheusShouldExposeEndpointServiceRepositoryAndRowMetrics() throws Exception {
+        // Arrange
+        studentRepository.save(new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com"));
+        studentRepository.save(new Student("Bertil", "Ek", LocalDate.of(1991, 6, 4), "bertil.ek@example.com"));
+
+        // Act
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/getallstudents"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        // Assert
+        mockMvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().string(containsString("http_server_requests_seconds_bucket{")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("method=\"getAllStudents\"")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("service_calls_seconds_bucket{")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("spring_data_repository_invocations_seconds_bucket{")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("student_repository_rows_sum{method=\"findAllDtos\"} 2.0")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("http_server_requests_rows_sum{uri=\"/edu/api/v1/getallstudents\"} 2.0")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString("hibernate_")));
+    }
+}
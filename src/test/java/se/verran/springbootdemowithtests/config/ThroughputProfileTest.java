@@ -0,0 +1,83 @@
+package se.verran.springbootdemowithtests.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Every test is rolled back
+@SpringBootTest
+@ActiveProfiles("throughput")
+@Transactional
+class ThroughputProfileTest {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Test
+    void dataSource_shouldBeAFixedPoolThatCachesPreparedStatements() {
+        // Act
+        HikariDataSource hikari = (HikariDataSource) dataSource;
+
+        // Assert
+        assertEquals(20, hikari.getMaximumPoolSize());
+        assertEquals(20, hikari.getMinimumIdle());
+        assertEquals("true", hikari.getDataSourceProperties().getProperty("useServerPrepStmts"));
+        assertEquals("true", hikari.getDataSourceProperties().getProperty("cachePrepStmts"));
+    }
+
+    @Test
+    void saveAll_shouldInsertTheStudentsOfAFlushInOneBatch() {
+        // Arrange
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            students.add(new Student("First" + i, "Last" + i, LocalDate.of(1990, 1, 1), "throughput" + i + "@example.com"));
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getStatistics();
+        statistics.clear();
+
+        // Act
+        studentRepository.saveAll(students);
+        studentRepository.flush();
+
+        // Assert, the calls of the pooled sequence and one statement for the batch instead of one per student
+        assertTrue(statistics.getPrepareStatementCount() <= 3, statistics.getPrepareStatementCount() + " statements");
+        assertEquals(20, statistics.getEntityInsertCount());
+    }
+
+    @Test
+    void findDtosByIdIn_shouldFindEveryStudentOfAPaddedInList() {
+        // Arrange
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            ids.add(studentRepository.save(new Student("First" + i, "Last" + i, LocalDate.of(1990, 1, 1), "padded" + i + "@example.com")).getId());
+        studentRepository.flush();
+
+        // Act, three ids are sent as four
+        List<StudentDto> students = studentRepository.findDtosByIdIn(ids);
+
+        // Assert
+        assertTrue(entityManagerFactory.unwrap(SessionFactoryImplementor.class).getSessionFactoryOptions().inClauseParameterPaddingEnabled());
+        assertEquals(ids, students.stream().map(StudentDto::id).sorted().toList());
+    }
+}
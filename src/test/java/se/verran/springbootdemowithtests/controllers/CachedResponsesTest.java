@@ -0,0 +1,137 @@
+package se.verran.springbootdemowithtests.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.web.context.request.ServletWebRequest;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.services.SchoolService;
+import se.verran.springbootdemowithtests.services.StudentService;
+import se.verran.springbootdemowithtests.services.StudentTableVersion;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class CachedResponsesTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @SpyBean
+    private StudentService studentService;
+
+    @SpyBean
+    private SchoolService schoolService;
+
+    @Test
+    void getAllStudentsShouldAnswerNotModifiedUntilTheNextWrite() throws Exception {
+        // Arrange
+        studentService.addStudent(student("anna.berg@example.com"));
+
+        // Act & Assert, the first poll builds the body
+        String etag = mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/getallstudents"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.LAST_MODIFIED))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        assertFalse(etag.startsWith("W/"));
+
+        // Act & Assert, polling with the ETag neither reads nor writes the students
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/getallstudents").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, etag))
+                .andExpect(MockMvcResultMatchers.content().bytes(new byte[0]));
+
+        // Act & Assert, a client without the ETag gets the bytes written for the first poll
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/getallstudents"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, etag));
+        verify(studentService, times(1)).getAllStudents();
+
+        // Act & Assert, a write changes the ETag and the old one gets the new body
+        studentService.addStudent(student("bertil.ek@example.com"));
+        String newEtag = mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/getallstudents").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(etag, newEtag);
+        verify(studentService, times(2)).getAllStudents();
+    }
+
+    @Test
+    void schoolEndpointsShouldAnswerNotModifiedUntilTheNextWrite() throws Exception {
+        // Arrange
+        Student student = studentService.addStudent(student("anna.berg@example.com"));
+        studentService.setGradeForStudentById(student.getId(), "4.0");
+        String averageEtag = mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/school/averagegrade"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().string("Average grade is 4.0"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String topEtag = mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/school/top20percentscoringstudents"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].javaProgrammingGrade").value(4.0))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // Act & Assert
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/school/averagegrade").header(HttpHeaders.IF_NONE_MATCH, averageEtag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/school/top20percentscoringstudents").header(HttpHeaders.IF_NONE_MATCH, topEtag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+        verify(schoolService, times(1)).calculateAverageGrade();
+        verify(schoolService, times(1)).getTopScoringStudents(20);
+
+        // Act & Assert, a grade update is a write too
+        studentService.setGradeForStudentById(student.getId(), "2.0");
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/school/averagegrade").header(HttpHeaders.IF_NONE_MATCH, averageEtag))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().string("Average grade is 2.0"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/school/top20percentscoringstudents").header(HttpHeaders.IF_NONE_MATCH, topEtag))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].javaProgrammingGrade").value(2.0));
+    }
+
+    @Test
+    void bodiesShouldBeWrittenAgainUnderANewEtagAfterMaxAge() throws Exception {
+        // Arrange
+        CachedResponses cachedResponses = new CachedResponses(new StudentTableVersion(), new ObjectMapper(), Duration.ofMillis(1), 1024);
+        AtomicInteger built = new AtomicInteger();
+        String etag = cachedResponses.get(new ServletWebRequest(new MockHttpServletRequest()), "key", () -> "body " + built.incrementAndGet())
+                .getHeaders().getETag();
+        Thread.sleep(10);
+
+        // Act, a client polling another instance could have missed a write in the meantime
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        ResponseEntity<byte[]> response = cachedResponses.get(new ServletWebRequest(request), "key", () -> "body " + built.incrementAndGet());
+
+        // Assert
+        assertNotNull(response);
+        assertNotEquals(etag, response.getHeaders().getETag());
+        assertEquals("body 2", new String(response.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private Student student(String email) {
+        return new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), email);
+    }
+}
@@ -0,0 +1,384 @@
+package se.verran.springbootdemowithtests.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import se.verran.springbootdemowithtests.entities.Student;
+
+import java.time.LocalDate;
+
+// StudentControllerTest against the reactive profile, WebFlux and R2DBC on the same H2 database
+@SpringBootTest(properties = "spring.main.web-application-type=reactive")
+@ActiveProfiles("reactive")
+@AutoConfigureWebTestClient
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ReactiveStudentControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private String studentJson;
+    private String expectedStudentJson;
+
+    @BeforeEach
+    public void setup() throws JsonProcessingException {
+        Student studentIn = new Student("Michael", "Granbäck", LocalDate.of(1983, 1, 29), "michael.granback@xlent.se");
+        Student expectedStudentReturnData = new Student("Michael", "Granbäck", LocalDate.of(1983, 1, 29), "michael.granback@xlent.se");
+        expectedStudentReturnData.setId(1);
+        studentJson = objectMapper.writeValueAsString(studentIn);
+        expectedStudentJson = objectMapper.writeValueAsString(expectedStudentReturnData);
+    }
+
+    @Test
+    public void addStudentShouldReturnStatusOK() {
+        addStudent(studentJson)
+                .expectStatus().isOk()
+                .expectBody().json(expectedStudentJson);
+    }
+    @Test
+    public void addStudentWithConflictingEmailShouldReturnStatusConflict() {
+        addStudent(studentJson)
+                .expectStatus().isOk()
+                .expectBody().json(expectedStudentJson);
+        addStudent(studentJson)
+                .expectStatus().isEqualTo(409);
+    }
+    @Test
+    public void getStudentByIdShouldReturnTheStudentOrNotFound() {
+        addStudent(studentJson).expectStatus().isOk();
+
+        webTestClient.get().uri("/edu/api/v1/getstudentbyid/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().json(expectedStudentJson);
+        webTestClient.get().uri("/edu/api/v1/getstudentbyid/2")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+    @Test
+    public void getAllStudentsWithAfterAndLimitShouldReturnOnePageOrderedById() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            Student student = new Student("Student", "Number" + i, LocalDate.of(1990, 1, i), "student" + i + "@example.com");
+            addStudent(objectMapper.writeValueAsString(student)).expectStatus().isOk();
+        }
+        webTestClient.get().uri("/edu/api/v1/getallstudents?after=1&limit=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].id").isEqualTo(2);
+        webTestClient.get().uri("/edu/api/v1/getallstudents")
+                .exchange()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3);
+        webTestClient.get().uri("/edu/api/v1/getallstudents?limit=0")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+    @Test
+    public void streamAllStudentsShouldReturnOneJsonDocumentPerLine() {
+        addStudent(studentJson).expectStatus().isOk();
+
+        webTestClient.get().uri("/edu/api/v1/streamallstudents")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class).isEqualTo(expectedStudentJson + "\n");
+    }
+    @Test
+    public void addStudentsShouldImportJsonArrayAndReportConflicts() throws Exception {
+        addStudent(studentJson).expectStatus().isOk();
+        Student newStudent = new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com");
+        Student missingEmail = new Student("Erik", "Lund", LocalDate.of(1992, 8, 14), null);
+        String students = objectMapper.writeValueAsString(new Student[]{newStudent, objectMapper.readValue(studentJson, Student.class), newStudent, missingEmail});
+
+        webTestClient.post().uri("/edu/api/v1/addstudents")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(students)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.imported").isEqualTo(1)
+                .jsonPath("$.conflicts.length()").isEqualTo(3)
+                .jsonPath("$.conflicts[0].row").isEqualTo(1)
+                .jsonPath("$.conflicts[1].row").isEqualTo(2)
+                .jsonPath("$.conflicts[2].row").isEqualTo(3);
+    }
+    @Test
+    public void addStudentsShouldImportNdjson() throws Exception {
+        String students = objectMapper.writeValueAsString(new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com"))
+                + "\n" + studentJson + "\n";
+
+        webTestClient.post().uri("/edu/api/v1/addstudents")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(students)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.imported").isEqualTo(2)
+                .jsonPath("$.conflicts.length()").isEqualTo(0);
+        webTestClient.get().uri("/edu/api/v1/getallstudents")
+                .exchange()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2);
+    }
+    @Test
+    public void setGradeShouldUpdateTheGradeOrReturnNotFound() {
+        addStudent(studentJson).expectStatus().isOk();
+
+        webTestClient.put().uri("/edu/api/v1/setgrade/1/4.5")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("Grade of student by id 1 set to 4.5");
+        webTestClient.get().uri("/edu/api/v1/getstudentbyid/1")
+                .exchange()
+                .expectBody()
+                .jsonPath("$.javaProgrammingGrade").isEqualTo(4.5)
+                .jsonPath("$.email").isEqualTo("michael.granback@xlent.se")
+                .jsonPath("$.javaProgrammingGradeTenths").doesNotExist();
+        webTestClient.put().uri("/edu/api/v1/setgrade/2/4.5")
+                .exchange()
+                .expectStatus().isNotFound();
+        webTestClient.put().uri("/edu/api/v1/setgrade/1/4.55")
+                .exchange()
+                .expectStatus().isEqualTo(406);
+    }
+    @Test
+    public void setGradesShouldReportEveryRowFromJson() {
+        addStudent(studentJson).expectStatus().isOk();
+
+        webTestClient.put().uri("/edu/api/v1/setgrades")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[{\"studentId\":1,\"grade\":4.5},{\"studentId\":2,\"grade\":\"3\"},{\"studentId\":1,\"grade\":\"5.5\"}]")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.updated").isEqualTo(1)
+                .jsonPath("$.notFound").isEqualTo(1)
+                .jsonPath("$.invalidGrade").isEqualTo(1)
+                .jsonPath("$.results[0].status").isEqualTo("UPDATED")
+                .jsonPath("$.results[1].status").isEqualTo("NOT_FOUND")
+                .jsonPath("$.results[2].status").isEqualTo("INVALID_GRADE");
+        webTestClient.get().uri("/edu/api/v1/getstudentbyid/1")
+                .exchange()
+                .expectBody()
+                .jsonPath("$.javaProgrammingGrade").isEqualTo(4.5);
+    }
+    @Test
+    public void setGradesShouldReadCsvWithOrWithoutHeader() {
+        addStudent(studentJson).expectStatus().isOk();
+
+        webTestClient.put().uri("/edu/api/v1/setgrades")
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .bodyValue("studentId,grade\n1,3.5\n\n2, 4\n")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.updated").isEqualTo(1)
+                .jsonPath("$.notFound").isEqualTo(1);
+        webTestClient.put().uri("/edu/api/v1/setgrades")
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .bodyValue("1,2.0\n")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.updated").isEqualTo(1);
+        webTestClient.get().uri("/edu/api/v1/getstudentbyid/1")
+                .exchange()
+                .expectBody()
+                .jsonPath("$.javaProgrammingGrade").isEqualTo(2.0);
+        webTestClient.put().uri("/edu/api/v1/setgrades")
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .bodyValue("1,2.0\nx,3.0\n")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+    @Test
+    public void patchStudentShouldWriteTheGivenFieldsAndRejectOlderVersions() throws Exception {
+        addStudent(studentJson)
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.version").isEqualTo(0);
+
+        patchStudent(1, "{\"email\":\"changed@example.com\",\"version\":0}")
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("Student by id 1 updated to version 1");
+        webTestClient.get().uri("/edu/api/v1/getstudentbyid/1")
+                .exchange()
+                .expectBody()
+                .jsonPath("$.email").isEqualTo("changed@example.com")
+                .jsonPath("$.firstName").isEqualTo("Michael")
+                .jsonPath("$.version").isEqualTo(1);
+        patchStudent(1, "{\"firstName\":\"Anna\",\"version\":0}")
+                .expectStatus().isEqualTo(409);
+        patchStudent(2, "{\"firstName\":\"Anna\",\"version\":0}")
+                .expectStatus().isNotFound();
+
+        // A full update based on the version before the patch is rejected as well
+        Student stale = objectMapper.readValue(expectedStudentJson, Student.class);
+        webTestClient.put().uri("/edu/api/v1/updatestudent")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(objectMapper.writeValueAsString(stale))
+                .exchange()
+                .expectStatus().isEqualTo(409);
+    }
+    @Test
+    public void updateAndDeleteStudentShouldReturnNotFoundForMissingStudents() throws Exception {
+        addStudent(studentJson).expectStatus().isOk();
+        Student changed = objectMapper.readValue(expectedStudentJson, Student.class);
+        changed.setFirstName("Mikael");
+
+        webTestClient.put().uri("/edu/api/v1/updatestudent")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(objectMapper.writeValueAsString(changed))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.firstName").isEqualTo("Mikael")
+                .jsonPath("$.version").isEqualTo(1);
+        changed.setId(2);
+        webTestClient.put().uri("/edu/api/v1/updatestudent")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(objectMapper.writeValueAsString(changed))
+                .exchange()
+                .expectStatus().isNotFound();
+        webTestClient.delete().uri("/edu/api/v1/deletestudentbyid/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("Student by id 1 deleted");
+        webTestClient.delete().uri("/edu/api/v1/deletestudentbyid/1")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+    @Test
+    public void getStudentsByAgeShouldFilterOnBirthDate() throws Exception {
+        LocalDate today = LocalDate.now();
+        for (int age : new int[]{17, 18, 25, 26}) {
+            Student student = new Student("Student", "Aged" + age, today.minusYears(age), "aged" + age + "@example.com");
+            addStudent(objectMapper.writeValueAsString(student)).expectStatus().isOk();
+        }
+
+        webTestClient.get().uri("/edu/api/v1/students?minAge=18&maxAge=25")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].age").isEqualTo(18)
+                .jsonPath("$[1].age").isEqualTo(25);
+        webTestClient.get().uri("/edu/api/v1/students?minAge=26")
+                .exchange()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1);
+        webTestClient.get().uri("/edu/api/v1/students?minAge=30&maxAge=20")
+                .exchange()
+                .expectStatus().isBadRequest();
+        webTestClient.get().uri("/edu/api/v1/students?page=1&size=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].age").isEqualTo(25)
+                .jsonPath("$[1].age").isEqualTo(26);
+        webTestClient.get().uri("/edu/api/v1/students?size=1001")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+    @Test
+    public void searchStudentsShouldReturnSummariesOfMatchingStudents() {
+        addStudent(studentJson).expectStatus().isOk();
+
+        webTestClient.get().uri("/edu/api/v1/students/search?lastName=Gran")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].email").isEqualTo("michael.granback@xlent.se")
+                .jsonPath("$[0].birthDate").doesNotExist();
+        webTestClient.get().uri("/edu/api/v1/students/search?lastName=Gr_n")
+                .exchange()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(0);
+        webTestClient.get().uri("/edu/api/v1/students/search?email=someone@example.com")
+                .exchange()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(0);
+        webTestClient.get().uri("/edu/api/v1/students/search")
+                .exchange()
+                .expectStatus().isBadRequest();
+        webTestClient.get().uri("/edu/api/v1/students/search?minGrade=6")
+                .exchange()
+                .expectStatus().isBadRequest();
+        // Bounds that aren't whole tenths are rounded inwards
+        webTestClient.put().uri("/edu/api/v1/setgrade/1/3.4").exchange().expectStatus().isOk();
+        webTestClient.get().uri("/edu/api/v1/students/search?minGrade=3.35&maxGrade=3.46")
+                .exchange()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1);
+        webTestClient.get().uri("/edu/api/v1/students/search?minGrade=3.44")
+                .exchange()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(0);
+    }
+    @Test
+    public void schoolEndpointsShouldReadTheAggregatesAndTheTopStudents() throws Exception {
+        for (int i = 1; i <= 4; i++) {
+            Student student = new Student("Student", "Number" + i, LocalDate.of(1990, 1, i), "student" + i + "@example.com");
+            addStudent(objectMapper.writeValueAsString(student)).expectStatus().isOk();
+            webTestClient.put().uri("/edu/api/v1/setgrade/" + i + "/" + i).exchange().expectStatus().isOk();
+        }
+
+        webTestClient.get().uri("/edu/api/v1/school/countstudents")
+                .exchange()
+                .expectBody(Integer.class).isEqualTo(4);
+        webTestClient.get().uri("/edu/api/v1/school/averagegrade")
+                .exchange()
+                .expectBody(String.class).isEqualTo("Average grade is 2.5");
+        webTestClient.get().uri("/edu/api/v1/school/gradestats")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.numberOfStudents").isEqualTo(4)
+                .jsonPath("$.max").isEqualTo(4.0)
+                .jsonPath("$.histogram[4].count").isEqualTo(1);
+        webTestClient.get().uri("/edu/api/v1/school/top50percentscoringstudents")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].id").isEqualTo(4)
+                .jsonPath("$[1].id").isEqualTo(3);
+        webTestClient.get().uri("/edu/api/v1/school/groups?count=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.numberOfGroups").isEqualTo(2);
+        webTestClient.get().uri("/edu/api/v1/school/groups")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    private WebTestClient.ResponseSpec addStudent(String json) {
+        return webTestClient.post().uri("/edu/api/v1/addstudent")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(json)
+                .exchange();
+    }
+
+    private WebTestClient.ResponseSpec patchStudent(int id, String json) {
+        return webTestClient.patch().uri("/edu/api/v1/updatestudent/" + id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(json)
+                .exchange();
+    }
+}
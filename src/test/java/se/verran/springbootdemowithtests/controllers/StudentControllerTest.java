@@ -10,10 +10,12 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import se.verran.springbootdemowithtests.entities.Student;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 
 @SpringBootTest
@@ -62,4 +64,262 @@ class StudentControllerTest {
                 )
                 .andExpect(MockMvcResultMatchers.status().isConflict());
     }
-}
\ No newline at end of file
+    @Test
+    public void addStudentWithANegativeGradeShouldReturnNotAcceptableAndCountNoGradedStudent() throws Exception {
+        Student negative = new Student("Michael", "Granbäck", LocalDate.of(1983, 1, 29), "negative@example.com");
+        negative.setJavaProgrammingGrade(-0.1);
+        mockMvc.perform(MockMvcRequestBuilders.post("/edu/api/v1/addstudent")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(negative))
+                )
+                .andExpect(MockMvcResultMatchers.status().isNotAcceptable());
+        mockMvc.perform(MockMvcRequestBuilders.post("/edu/api/v1/addstudent")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(studentJson)
+                )
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        // The SQL statistics and the aggregate store agree that no student has a grade
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/school/gradestats"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.numberOfStudents").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.numberOfGradedStudents").value(0));
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/school/averagegrade"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+    }
+
+    @Test
+    public void getAllStudentsWithAfterAndLimitShouldReturnOnePageOrderedById() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            Student student = new Student("Student", "Number" + i, LocalDate.of(1990, 1, i), "student" + i + "@example.com");
+            mockMvc.perform(MockMvcRequestBuilders.post("/edu/api/v1/addstudent")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(student)))
+                    .andExpect(MockMvcResultMatchers.status().isOk());
+        }
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/getallstudents")
+                        .param("after", "1")
+                        .param("limit", "1"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(2));
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/getallstudents")
+                        .param("limit", "0"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+    @Test
+    public void streamAllStudentsShouldReturnOneJsonDocumentPerLine() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/edu/api/v1/addstudent")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(studentJson))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/streamallstudents"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(mvcResult))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(MockMvcResultMatchers.content().bytes((expectedStudentJson + "\n").getBytes(StandardCharsets.UTF_8)));
+    }
+    @Test
+    public void addStudentsShouldImportJsonArrayAndReportConflicts() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/edu/api/v1/addstudent")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(studentJson))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        Student newStudent = new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com");
+        Student missingEmail = new Student("Erik", "Lund", LocalDate.of(1992, 8, 14), null);
+        String students = objectMapper.writeValueAsString(new Student[]{newStudent, objectMapper.readValue(studentJson, Student.class), newStudent, missingEmail});
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/edu/api/v1/addstudents")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(students))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.imported").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.conflicts.length()").value(3))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.conflicts[0].row").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.conflicts[1].row").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.conflicts[2].row").value(3));
+    }
+    @Test
+    public void addStudentsShouldImportNdjson() throws Exception {
+        String students = objectMapper.writeValueAsString(new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com"))
+                + "\n" + studentJson + "\n";
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/edu/api/v1/addstudents")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(students))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.imported").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.conflicts.length()").value(0));
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/getallstudents"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2));
+    }
+    @Test
+    public void setGradeShouldUpdateTheGradeOrReturnNotFound() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/edu/api/v1/addstudent")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(studentJson))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        mockMvc.perform(MockMvcRequestBuilders.put("/edu/api/v1/setgrade/1/4.5"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().string("Grade of student by id 1 set to 4.5"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/getstudentbyid/1"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.javaProgrammingGrade").value(4.5))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.email").value("michael.granback@xlent.se"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.javaProgrammingGradeTenths").doesNotExist());
+        mockMvc.perform(MockMvcRequestBuilders.put("/edu/api/v1/setgrade/2/4.5"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.put("/edu/api/v1/setgrade/1/4.55"))
+                .andExpect(MockMvcResultMatchers.status().isNotAcceptable());
+    }
+    @Test
+    public void setGradesShouldReportEveryRowFromJson() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/edu/api/v1/addstudent")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(studentJson))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        mockMvc.perform(MockMvcRequestBuilders.put("/edu/api/v1/setgrades")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"studentId\":1,\"grade\":4.5},{\"studentId\":2,\"grade\":\"3\"},{\"studentId\":1,\"grade\":\"5.5\"}]"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.updated").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.notFound").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.invalidGrade").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[0].status").value("UPDATED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[1].status").value("NOT_FOUND"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results[2].status").value("INVALID_GRADE"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/getstudentbyid/1"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.javaProgrammingGrade").value(4.5));
+    }
+    @Test
+    public void setGradesShouldReadCsvWithOrWithoutHeader() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/edu/api/v1/addstudent")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(studentJson))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        mockMvc.perform(MockMvcRequestBuilders.put("/edu/api/v1/setgrades")
+                        .contentType("text/csv")
+                        .content("studentId,grade\n1,3.5\n\n2, 4\n"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.updated").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.notFound").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.put("/edu/api/v1/setgrades")
+                        .contentType("text/csv")
+                        .content("1,2.0\n"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.updated").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/getstudentbyid/1"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.javaProgrammingGrade").value(2.0));
+        // Nothing is written when a row can't be read
+        mockMvc.perform(MockMvcRequestBuilders.put("/edu/api/v1/setgrades")
+                        .contentType("text/csv")
+                        .content("1,1.0\nx,3.0\n"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/getstudentbyid/1"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.javaProgrammingGrade").value(2.0));
+        // Blank lines before the header, a student sent twice counts once and gets the last grade
+        mockMvc.perform(MockMvcRequestBuilders.put("/edu/api/v1/setgrades")
+                        .contentType("text/csv")
+                        .content("\n\nstudentId,grade\n1,3.0\n1,4.0\n"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.updated").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.results.length()").value(2));
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/getstudentbyid/1"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.javaProgrammingGrade").value(4.0));
+    }
+    @Test
+    public void patchStudentShouldWriteTheGivenFieldsAndRejectOlderVersions() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/edu/api/v1/addstudent")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(studentJson))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.version").value(0));
+
+        mockMvc.perform(MockMvcRequestBuilders.patch("/edu/api/v1/updatestudent/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"changed@example.com\",\"version\":0}"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().string("Student by id 1 updated to version 1"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/getstudentbyid/1"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.email").value("changed@example.com"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.firstName").value("Michael"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.version").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.patch("/edu/api/v1/updatestudent/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"firstName\":\"Anna\",\"version\":0}"))
+                .andExpect(MockMvcResultMatchers.status().isConflict());
+        mockMvc.perform(MockMvcRequestBuilders.patch("/edu/api/v1/updatestudent/2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"firstName\":\"Anna\",\"version\":0}"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+
+        // A full update based on the version before the patch is rejected as well
+        Student stale = objectMapper.readValue(expectedStudentJson, Student.class);
+        mockMvc.perform(MockMvcRequestBuilders.put("/edu/api/v1/updatestudent")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(stale)))
+                .andExpect(MockMvcResultMatchers.status().isConflict());
+    }
+    @Test
+    public void getStudentsByAgeShouldFilterOnBirthDate() throws Exception {
+        LocalDate today = LocalDate.now();
+        for (int age : new int[]{17, 18, 25, 26}) {
+            Student student = new Student("Student", "Aged" + age, today.minusYears(age), "aged" + age + "@example.com");
+            mockMvc.perform(MockMvcRequestBuilders.post("/edu/api/v1/addstudent")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(student)))
+                    .andExpect(MockMvcResultMatchers.status().isOk());
+        }
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/students")
+                        .param("minAge", "18")
+                        .param("maxAge", "25"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].age").value(18))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].age").value(25));
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/students")
+                        .param("minAge", "26"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1));
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/students")
+                        .param("minAge", "30")
+                        .param("maxAge", "20"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        // Pages of the youngest first
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/students")
+                        .param("page", "1")
+                        .param("size", "2"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].age").value(25))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].age").value(26));
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/students")
+                        .param("size", "1001"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+    @Test
+    public void searchStudentsShouldReturnSummariesOfMatchingStudents() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/edu/api/v1/addstudent")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(studentJson))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/students/search")
+                        .param("lastName", "Gran"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].email").value("michael.granback@xlent.se"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].birthDate").doesNotExist());
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/students/search")
+                        .param("email", "someone@example.com"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(0));
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/students/search"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.get("/edu/api/v1/students/search")
+                        .param("minGrade", "6"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+}
@@ -0,0 +1,35 @@
+package se.verran.springbootdemowithtests.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import se.verran.springbootdemowithtests.config.JacksonConfig;
+import se.verran.springbootdemowithtests.entities.Student;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StudentDtoSerializerTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @Test
+    void studentDtoShouldBeWrittenAsTheSameJsonAsStudent() throws Exception {
+        // Arrange
+        Student graded = new Student("Abenezer", "Änglö \"A\"", LocalDate.of(1983, 1, 29), "abenezer@example.com");
+        graded.setId(1);
+        graded.setJavaProgrammingGrade(4.5);
+        graded.setVersion(3);
+        Student ungraded = new Student("Anna", "Berg", LocalDate.of(2000, 2, 29), "anna.berg@example.com");
+        ungraded.setId(2);
+
+        // Act & Assert
+        for (Student student : new Student[]{graded, ungraded}) {
+            StudentDto dto = new StudentDto(student.getId(), student.getFirstName(), student.getLastName(), student.getBirthDate(),
+                    student.getEmail(), student.getJavaProgrammingGrade(), student.getVersion());
+            assertEquals(objectMapper.readTree(JacksonConfig.withToday(objectMapper.writer()).writeValueAsString(student)),
+                    objectMapper.readTree(JacksonConfig.withToday(objectMapper.writer()).writeValueAsString(dto)));
+        }
+    }
+}
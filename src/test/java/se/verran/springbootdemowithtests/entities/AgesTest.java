@@ -0,0 +1,41 @@
+package se.verran.springbootdemowithtests.entities;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.Period;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgesTest {
+
+    @Test
+    void age_shouldMatchPeriodBetweenIncludingLeapDays() {
+        LocalDate[] birthDates = {LocalDate.of(2000, 2, 29), LocalDate.of(1999, 12, 31), LocalDate.of(2001, 3, 1), LocalDate.of(1983, 1, 29)};
+        for (LocalDate birthDate : birthDates) {
+            for (LocalDate date = LocalDate.of(2003, 12, 25); date.isBefore(LocalDate.of(2005, 3, 5)); date = date.plusDays(1)) {
+                assertEquals(Period.between(birthDate, date).getYears(), Ages.age(birthDate, date), birthDate + " on " + date);
+            }
+        }
+    }
+
+    @Test
+    void birthDateRange_shouldHoldExactlyTheAgesInRange() {
+        LocalDate date = LocalDate.of(2004, 2, 29);
+        LocalDate earliest = Ages.earliestBirthDate(20, date);
+        LocalDate latest = Ages.latestBirthDate(18, date);
+
+        for (LocalDate birthDate = LocalDate.of(1981, 1, 1); birthDate.isBefore(LocalDate.of(1988, 1, 1)); birthDate = birthDate.plusDays(1)) {
+            int age = Ages.age(birthDate, date);
+            boolean inRange = !birthDate.isBefore(earliest) && !birthDate.isAfter(latest);
+            assertEquals(age >= 18 && age <= 20, inRange, birthDate.toString());
+        }
+    }
+
+    @Test
+    void today_shouldBeTheCurrentDate() {
+        LocalDate before = LocalDate.now();
+        LocalDate today = Ages.today();
+        assertTrue(!today.isBefore(before) && !today.isAfter(LocalDate.now()));
+    }
+}
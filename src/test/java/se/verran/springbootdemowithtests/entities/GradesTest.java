@@ -0,0 +1,52 @@
+package se.verran.springbootdemowithtests.entities;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GradesTest {
+
+    @Test
+    void parseTenths_shouldReadGradesFrom0To5() {
+        assertEquals(0, Grades.parseTenths("0"));
+        assertEquals(0, Grades.parseTenths("0.0"));
+        assertEquals(35, Grades.parseTenths("3.5"));
+        assertEquals(35, Grades.parseTenths("3.50"));
+        assertEquals(40, Grades.parseTenths("4."));
+        assertEquals(5, Grades.parseTenths(".5"));
+        assertEquals(50, Grades.parseTenths("005.0"));
+    }
+
+    @Test
+    void parseTenths_shouldRejectEverythingElse() {
+        assertEquals(Grades.INVALID, Grades.parseTenths(""));
+        assertEquals(Grades.INVALID, Grades.parseTenths("."));
+        assertEquals(Grades.INVALID, Grades.parseTenths("-1.0"));
+        assertEquals(Grades.INVALID, Grades.parseTenths("5.1"));
+        assertEquals(Grades.INVALID, Grades.parseTenths("6"));
+        assertEquals(Grades.INVALID, Grades.parseTenths("99999999999"));
+        assertEquals(Grades.INVALID, Grades.parseTenths("3.55"));
+        assertEquals(Grades.INVALID, Grades.parseTenths("3,5"));
+        assertEquals(Grades.INVALID, Grades.parseTenths("3.5 "));
+        assertEquals(Grades.INVALID, Grades.parseTenths("invalidGrade"));
+    }
+
+    @Test
+    void toTenths_shouldRoundToTheNearestTenth() {
+        assertNull(Grades.toTenths(null));
+        assertEquals((short) 35, Grades.toTenths(3.5));
+        assertEquals((short) 43, Grades.toTenths(4.25));
+        assertEquals(3.5, Grades.toGrade((short) 35));
+        assertThrows(IllegalArgumentException.class, () -> Grades.toTenths(1e10));
+    }
+
+    @Test
+    void boundTenths_shouldRoundInwards() {
+        assertEquals((short) 35, Grades.lowerBoundTenths(3.44));
+        assertEquals((short) 34, Grades.upperBoundTenths(3.46));
+        assertEquals((short) 7, Grades.lowerBoundTenths(0.7));
+        assertEquals((short) 7, Grades.upperBoundTenths(0.7));
+        assertEquals((short) 0, Grades.lowerBoundTenths(0.0));
+        assertEquals((short) 50, Grades.upperBoundTenths(5.0));
+    }
+}
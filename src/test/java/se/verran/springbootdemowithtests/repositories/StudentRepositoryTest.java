@@ -4,9 +4,25 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import se.verran.springbootdemowithtests.dto.GradeAggregates;
+import se.verran.springbootdemowithtests.dto.StudentAnalyticsRow;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.dto.StudentGrade;
+import se.verran.springbootdemowithtests.dto.StudentPatch;
+import se.verran.springbootdemowithtests.dto.StudentSearchQuery;
+import se.verran.springbootdemowithtests.dto.StudentSummary;
 import se.verran.springbootdemowithtests.entities.Student;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 @DataJpaTest
@@ -15,6 +31,9 @@ class StudentRepositoryTest {
     @Autowired
     private StudentRepository studentRepository;
 
+    @Autowired
+    private TestEntityManager entityManager;
+
     @BeforeEach
     void setUp() {
         Student student = new Student("Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "abenezer.anglo@example.com");
@@ -32,5 +51,223 @@ class StudentRepositoryTest {
 
     }
 
+    @Test
+    void findExistingEmails() {
+        Set<String> existingEmails = studentRepository.findExistingEmails(List.of("abenezer.anglo@example.com", "unknown@example.com"));
+
+        assertEquals(Set.of("abenezer.anglo@example.com"), existingEmails);
+    }
+
+    @Test
+    void aggregateGrades() {
+        Student gradedStudent = new Student("Michael", "Granbäck", LocalDate.of(1983, 1, 29), "michael.granback@example.com");
+        gradedStudent.setJavaProgrammingGrade(4.5);
+        studentRepository.save(gradedStudent);
+        Student otherGradedStudent = new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com");
+        otherGradedStudent.setJavaProgrammingGrade(2.5);
+        studentRepository.save(otherGradedStudent);
+
+        GradeAggregates aggregates = studentRepository.aggregateGrades();
+
+        // The student from setUp has no grade and only counts towards numberOfStudents
+        assertEquals(3, aggregates.getNumberOfStudents());
+        assertEquals(2, aggregates.getNumberOfGradedStudents());
+        assertEquals(3.5, aggregates.getAverage(), 1e-9);
+        assertEquals(2.5, aggregates.getMin());
+        assertEquals(4.5, aggregates.getMax());
+        assertEquals(26.5, aggregates.getSumOfSquares(), 1e-9);
+        assertEquals(0, aggregates.getGradesFrom0());
+        assertEquals(1, aggregates.getGradesFrom2());
+        assertEquals(1, aggregates.getGradesFrom4());
+    }
+
+    @Test
+    void findByOrderByJavaProgrammingGradeTenthsDesc() {
+        Student gradedStudent = new Student("Michael", "Granbäck", LocalDate.of(1983, 1, 29), "michael.granback@example.com");
+        gradedStudent.setJavaProgrammingGrade(4.5);
+        studentRepository.save(gradedStudent);
+        Student otherGradedStudent = new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com");
+        otherGradedStudent.setJavaProgrammingGrade(2.5);
+        studentRepository.save(otherGradedStudent);
+
+        List<Student> topTwo = studentRepository.findByOrderByJavaProgrammingGradeTenthsDesc(Limit.of(2));
+        List<Student> all = studentRepository.findByOrderByJavaProgrammingGradeTenthsDesc(Limit.of(5));
+
+        assertEquals(2, topTwo.size());
+        assertEquals(4.5, topTwo.get(0).getJavaProgrammingGrade());
+        assertEquals(2.5, topTwo.get(1).getJavaProgrammingGrade());
+        assertEquals(3, all.size());
+        assertNull(all.get(2).getJavaProgrammingGrade());
+    }
+
+
+    @Test
+    void findDtosByIdGreaterThan() {
+        Student secondStudent = studentRepository.save(new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com"));
+        Student thirdStudent = studentRepository.save(new Student("Erik", "Lund", LocalDate.of(1992, 8, 14), "erik.lund@example.com"));
+
+        List<StudentDto> page = studentRepository.findDtosByIdGreaterThan(0, Limit.of(2));
+        List<StudentDto> nextPage = studentRepository.findDtosByIdGreaterThan(page.get(1).id(), Limit.of(2));
+
+        assertEquals(2, page.size());
+        assertEquals(secondStudent.getId(), page.get(1).id());
+        assertEquals(1, nextPage.size());
+        assertEquals(new StudentDto(thirdStudent.getId(), "Erik", "Lund", LocalDate.of(1992, 8, 14), "erik.lund@example.com", (Double) null, 0), nextPage.get(0));
+    }
+
+    @Test
+    void streamAllDtos() {
+        studentRepository.save(new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com"));
+
+        List<String> emails;
+        try (Stream<StudentDto> students = studentRepository.streamAllDtos()) {
+            emails = students.map(StudentDto::email).toList();
+        }
+
+        assertEquals(List.of("abenezer.anglo@example.com", "anna.berg@example.com"), emails);
+    }
+
+    @Test
+    void streamGrades() {
+        Student graded = new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com");
+        graded.setJavaProgrammingGrade(4.5);
+        graded = studentRepository.save(graded);
+
+        Map<Integer, Short> gradesById = new HashMap<>();
+        try (Stream<StudentGrade> grades = studentRepository.streamGrades()) {
+            grades.forEach(grade -> gradesById.put(grade.getId(), grade.getGradeTenths()));
+        }
+
+        assertEquals(2, gradesById.size());
+        assertEquals((short) 45, gradesById.get(graded.getId()));
+        assertTrue(gradesById.containsValue(null));
+    }
+
+    @Test
+    void streamAnalyticsRows() {
+        Student graded = new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com");
+        graded.setJavaProgrammingGrade(4.5);
+        graded = studentRepository.save(graded);
+
+        Map<Integer, StudentAnalyticsRow> rowsById = new HashMap<>();
+        try (Stream<StudentAnalyticsRow> rows = studentRepository.streamAnalyticsRows()) {
+            rows.forEach(row -> rowsById.put(row.getId(), row));
+        }
+
+        assertEquals(2, rowsById.size());
+        assertEquals((short) 45, rowsById.get(graded.getId()).getGradeTenths());
+        assertEquals(LocalDate.of(1990, 5, 3), rowsById.get(graded.getId()).getBirthDate());
+    }
+
+    @Test
+    void updateGradeTenths() {
+        Student student = studentRepository.save(new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com"));
+        studentRepository.flush();
+
+        assertEquals(1, studentRepository.updateGradeTenths(student.getId(), (short) 35));
+        assertEquals(0, studentRepository.updateGradeTenths(student.getId() + 1000, (short) 35));
+
+        entityManager.clear();
+        Student updated = studentRepository.findById(student.getId()).orElseThrow();
+        assertEquals(3.5, updated.getJavaProgrammingGrade());
+        assertEquals("anna.berg@example.com", updated.getEmail());
+    }
+
+    @Test
+    void batchUpdateGradeTenthsAndFindExistingIds() {
+        Student first = studentRepository.save(new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com"));
+        Student second = studentRepository.save(new Student("Erik", "Lund", LocalDate.of(1992, 8, 14), "erik.lund@example.com"));
+        studentRepository.flush();
+        int missingId = second.getId() + 1000;
+
+        int[] updatedRows = studentRepository.batchUpdateGradeTenths(new int[]{first.getId(), missingId, second.getId()}, new short[]{35, 40, 50});
+
+        assertArrayEquals(new int[]{1, 0, 1}, updatedRows);
+        assertEquals(Set.of(first.getId(), second.getId()), studentRepository.findExistingIds(List.of(first.getId(), missingId, second.getId())));
+        entityManager.clear();
+        assertEquals(3.5, studentRepository.findById(first.getId()).orElseThrow().getJavaProgrammingGrade());
+        assertEquals(5.0, studentRepository.findById(second.getId()).orElseThrow().getJavaProgrammingGrade());
+    }
+
+    @Test
+    void patchStudent() {
+        Student student = studentRepository.saveAndFlush(new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com"));
+        int version = student.getVersion();
+
+        assertEquals(1, studentRepository.patchStudent(student.getId(), version, new StudentPatch(null, null, null, "changed@example.com", 3.5, version)));
+        assertEquals(0, studentRepository.patchStudent(student.getId(), version, new StudentPatch("Erik", null, null, null, null, version)));
+
+        entityManager.clear();
+        Student patched = studentRepository.findById(student.getId()).orElseThrow();
+        assertEquals("Anna", patched.getFirstName());
+        assertEquals("changed@example.com", patched.getEmail());
+        assertEquals(3.5, patched.getJavaProgrammingGrade());
+        assertEquals(version + 1, patched.getVersion());
+    }
+
+    @Test
+    void findDtosByBirthDateBetween() {
+        studentRepository.save(new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com"));
+        studentRepository.save(new Student("Erik", "Lund", LocalDate.of(1992, 8, 14), "erik.lund@example.com"));
 
-}
\ No newline at end of file
+        List<String> emails = studentRepository.findDtosByBirthDateBetween(LocalDate.of(1983, 1, 29), LocalDate.of(1992, 8, 13), Pageable.unpaged())
+                .stream().map(StudentDto::email).toList();
+
+        assertEquals(List.of("anna.berg@example.com", "abenezer.anglo@example.com"), emails);
+    }
+
+    @Test
+    void search() {
+        Student anna = new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com");
+        anna.setJavaProgrammingGrade(4.5);
+        anna = studentRepository.save(anna);
+        Student annika = new Student("Annika", "Bergman", LocalDate.of(1991, 5, 3), "annika@example.com");
+        annika.setJavaProgrammingGrade(2.0);
+        annika = studentRepository.save(annika);
+        studentRepository.save(new Student("An_a", "Lund", LocalDate.of(1992, 8, 14), "an_a@example.com"));
+        studentRepository.flush();
+
+        assertEquals(List.of(new StudentSummary(anna.getId(), "Anna", "Berg", "anna.berg@example.com", 4.5), new StudentSummary(annika.getId(), "Annika", "Bergman", "annika@example.com", 2.0)),
+                studentRepository.search(new StudentSearchQuery("Ann", "Berg", null, null, null), 0, 10));
+        assertEquals(List.of(annika.getId()), ids(studentRepository.search(new StudentSearchQuery("Ann", null, null, null, null), anna.getId(), 10)));
+        assertEquals(List.of(anna.getId()), ids(studentRepository.search(new StudentSearchQuery(null, null, null, 3.0, 5.0), 0, 10)));
+        assertEquals(List.of(annika.getId()), ids(studentRepository.search(new StudentSearchQuery(null, null, "annika@example.com", null, 2.0), 0, 10)));
+        // The underscore is a character, not a wildcard
+        assertEquals(1, studentRepository.search(new StudentSearchQuery("An_", null, null, null, null), 0, 10).size());
+        assertEquals(1, studentRepository.search(new StudentSearchQuery("Ann", "Berg", null, null, null), 0, 1).size());
+    }
+
+    @Test
+    void search_shouldKeepGradesOutsideBoundsThatAreNotWholeTenths() {
+        List<Integer> ids = new ArrayList<>();
+        for (double grade : new double[]{0.7, 3.4, 3.5}) {
+            Student student = new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna" + grade + "@example.com");
+            student.setJavaProgrammingGrade(grade);
+            ids.add(studentRepository.save(student).getId());
+        }
+        studentRepository.flush();
+
+        assertEquals(List.of(ids.get(2)), ids(studentRepository.search(new StudentSearchQuery(null, null, null, 3.44, null), 0, 10)));
+        assertEquals(List.of(ids.get(0), ids.get(1)), ids(studentRepository.search(new StudentSearchQuery(null, null, null, null, 3.46), 0, 10)));
+        assertEquals(List.of(ids.get(0)), ids(studentRepository.search(new StudentSearchQuery(null, null, null, 0.7, 0.7), 0, 10)));
+    }
+
+    // EXPLAIN of the statements search generates, every criterion has to be answered by its index
+    @Test
+    void search_shouldUseIndexes() {
+        assertPlanUses("IDX_STUDENT_LAST_NAME", "s1_0.last_name like 'Berg%' escape '\\'");
+        assertPlanUses("IDX_STUDENT_FIRST_NAME", "s1_0.first_name like 'Ann%' escape '\\'");
+        assertPlanUses("UK_STUDENT_EMAIL", "s1_0.email = 'anna.berg@example.com'");
+        assertPlanUses("IDX_STUDENT_GRADE", "s1_0.java_programming_grade_tenths >= 45 and s1_0.java_programming_grade_tenths <= 50");
+    }
+
+    private void assertPlanUses(String index, String condition) {
+        String plan = entityManager.getEntityManager().createNativeQuery("explain select s1_0.id, s1_0.first_name, s1_0.last_name, s1_0.email, s1_0.java_programming_grade_tenths"
+                + " from student s1_0 where " + condition + " order by s1_0.id fetch first 100 rows only").getSingleResult().toString();
+        assertTrue(plan.toUpperCase().contains(index), plan);
+    }
+
+    private static List<Integer> ids(List<StudentSummary> students) {
+        return students.stream().map(StudentSummary::id).toList();
+    }
+}
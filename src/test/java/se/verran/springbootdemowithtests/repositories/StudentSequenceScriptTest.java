@@ -0,0 +1,63 @@
+package se.verran.springbootdemowithtests.repositories;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// data-mysql.sql on the tables Hibernate creates on MySQL, where the sequence is the student_seq table
+class StudentSequenceScriptTest {
+
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:sequence" + System.nanoTime() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table student (id int primary key)");
+        jdbcTemplate.execute("create table student_seq (next_val bigint)");
+    }
+
+    @Test
+    void script_shouldMoveANewSequencePastTheIdsOfAutoIncrement() {
+        // Arrange, ddl-auto=update has just created the sequence next to existing rows
+        jdbcTemplate.update("insert into student (id) values (1), (2), (120)");
+        jdbcTemplate.update("insert into student_seq (next_val) values (1)");
+
+        // Act
+        runScript();
+
+        // Assert, the 50 ids below the value read next start after 120
+        assertEquals(171, nextVal());
+    }
+
+    @Test
+    void script_shouldLeaveASequenceThatIsAheadAlone() {
+        // Arrange
+        jdbcTemplate.update("insert into student (id) values (1), (120)");
+        jdbcTemplate.update("insert into student_seq (next_val) values (251)");
+
+        // Act
+        runScript();
+        runScript();
+
+        // Assert
+        assertEquals(251, nextVal());
+    }
+
+    private void runScript() {
+        new ResourceDatabasePopulator(new ClassPathResource("data-mysql.sql")).execute(dataSource);
+    }
+
+    private long nextVal() {
+        return jdbcTemplate.queryForObject("select next_val from student_seq", Long.class);
+    }
+}
@@ -0,0 +1,255 @@
+package se.verran.springbootdemowithtests.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class GradeWriteBehindTest {
+
+    @TempDir
+    private Path journalDirectory;
+
+    private StudentRepository studentRepository;
+
+    private StudentTableVersion tableVersion;
+
+    // The grades of every batch that was committed, by student id
+    private Map<Integer, Short> writtenGrades;
+
+    @BeforeEach
+    void setUp() {
+        studentRepository = mock(StudentRepository.class);
+        tableVersion = new StudentTableVersion();
+        writtenGrades = new HashMap<>();
+        when(studentRepository.batchUpdateGradeTenths(any(), any())).thenAnswer(this::writeGrades);
+    }
+
+    @Test
+    void setGrade_shouldCoalesceUpdatesOfAStudentIntoOneRowOfTheBatch() throws IOException {
+        // Arrange
+        GradeWriteBehind writeBehind = start(1024);
+
+        // Act
+        writeBehind.setGrade(1, (short) 30);
+        writeBehind.setGrade(2, (short) 40);
+        writeBehind.setGrade(1, (short) 45);
+
+        // Assert, pending until the flush, which is a new version of the table once it has committed
+        assertEquals((short) 45, writeBehind.getPendingGradeTenths(1));
+        verify(studentRepository, never()).batchUpdateGradeTenths(any(), any());
+        assertEquals(0, tableVersion.current());
+
+        writeBehind.flush();
+        verify(studentRepository, times(1)).batchUpdateGradeTenths(argThat(ids -> ids.length == 2), any());
+        assertEquals(Map.of(1, (short) 45, 2, (short) 40), writtenGrades);
+        assertEquals(1, tableVersion.current());
+        assertFalse(writeBehind.hasPendingGrades());
+        assertNull(writeBehind.getPendingGradeTenths(1));
+
+        // Assert, nothing left to replay after a clean shutdown
+        writeBehind.destroy();
+        assertEquals(0, segmentFiles());
+    }
+
+    @Test
+    void getPendingGradeTenths_shouldFindTheGradesOfAFlushUntilTheyAreCommitted() throws Exception {
+        // Arrange, the batch waits until the test has read the grade
+        CountDownLatch batchStarted = new CountDownLatch(1);
+        CountDownLatch gradeRead = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            batchStarted.countDown();
+            assertTrue(gradeRead.await(10, TimeUnit.SECONDS));
+            return new int[]{1};
+        }).when(studentRepository).batchUpdateGradeTenths(any(), any());
+        GradeWriteBehind writeBehind = start(1024);
+        writeBehind.setGrade(1, (short) 30);
+
+        // Act
+        ExecutorService flusher = Executors.newSingleThreadExecutor();
+        Future<?> flush = flusher.submit(writeBehind::flush);
+        assertTrue(batchStarted.await(10, TimeUnit.SECONDS));
+        Short gradeDuringFlush = writeBehind.getPendingGradeTenths(1);
+        gradeRead.countDown();
+        flush.get(10, TimeUnit.SECONDS);
+        flusher.shutdown();
+
+        // Assert
+        assertEquals((short) 30, gradeDuringFlush);
+        assertNull(writeBehind.getPendingGradeTenths(1));
+    }
+
+    @Test
+    void start_shouldReplayTheJournalWhenTheFlusherIsKilledMidBatch() throws IOException {
+        // Arrange, the process dies while the batch is being written, nothing is committed
+        doThrow(new ProcessKilled()).when(studentRepository).batchUpdateGradeTenths(any(), any());
+        GradeWriteBehind crashed = start(1024);
+        crashed.setGrade(1, (short) 30);
+        crashed.setGrade(2, (short) 40);
+        crashed.setGrade(1, (short) 50);
+        assertThrows(ProcessKilled.class, crashed::flush);
+
+        // Act, a new start on the same journal
+        setUp();
+        GradeWriteBehind restarted = start(1024);
+
+        // Assert, the last grade of every student is pending again and written by the first flush
+        assertEquals((short) 50, restarted.getPendingGradeTenths(1));
+        assertEquals((short) 40, restarted.getPendingGradeTenths(2));
+        restarted.flush();
+        assertEquals(Map.of(1, (short) 50, 2, (short) 40), writtenGrades);
+
+        // Assert, once written the journal isn't replayed again
+        restarted.destroy();
+        assertFalse(start(1024).hasPendingGrades());
+    }
+
+    @Test
+    void start_shouldReplayEverySegmentInOrder() throws IOException {
+        // Arrange, segments of two records and a crash before any flush
+        GradeWriteBehind crashed = start(2 * GradeJournal.RECORD_BYTES);
+        for (short grade = 10; grade <= 50; grade += 10)
+            crashed.setGrade(grade / 10, grade);
+        crashed.setGrade(1, (short) 0);
+        assertEquals(3, segmentFiles());
+
+        // Act
+        GradeWriteBehind restarted = start(2 * GradeJournal.RECORD_BYTES);
+        restarted.flush();
+
+        // Assert, the grade appended last wins
+        assertEquals(Map.of(1, (short) 0, 2, (short) 20, 3, (short) 30, 4, (short) 40, 5, (short) 50), writtenGrades);
+        restarted.destroy();
+        assertEquals(0, segmentFiles());
+    }
+
+    @Test
+    void start_shouldStopReplayingASegmentAtARecordCutShort() throws IOException {
+        // Arrange, a crash left half a record after two complete ones
+        GradeWriteBehind crashed = start(1024);
+        crashed.setGrade(1, (short) 30);
+        crashed.setGrade(2, (short) 40);
+        Path segment;
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(3).flip(), 2L * GradeJournal.RECORD_BYTES);
+        }
+
+        // Act
+        GradeWriteBehind restarted = start(1024);
+
+        // Assert
+        assertEquals((short) 30, restarted.getPendingGradeTenths(1));
+        assertEquals((short) 40, restarted.getPendingGradeTenths(2));
+        assertNull(restarted.getPendingGradeTenths(3));
+    }
+
+    @Test
+    void flush_shouldKeepTheGradesWhenTheDatabaseFailsAndLetNewerOnesWin() throws IOException {
+        // Arrange, the first batch fails after a newer grade of student 1 has been set
+        GradeWriteBehind writeBehind = start(1024);
+        writeBehind.setGrade(1, (short) 30);
+        writeBehind.setGrade(2, (short) 40);
+        doAnswer(invocation -> {
+            writeBehind.setGrade(1, (short) 35);
+            throw new DataAccessResourceFailureException("Connection refused");
+        }).doAnswer(this::writeGrades).when(studentRepository).batchUpdateGradeTenths(any(), any());
+
+        // Act
+        writeBehind.flush();
+
+        // Assert, still pending and still in the journal
+        assertEquals((short) 35, writeBehind.getPendingGradeTenths(1));
+        assertEquals((short) 40, writeBehind.getPendingGradeTenths(2));
+        assertEquals(Map.of(1, (short) 35, 2, (short) 40), replay());
+
+        writeBehind.flush();
+        assertEquals(Map.of(1, (short) 35, 2, (short) 40), writtenGrades);
+        assertTrue(replay().isEmpty());
+    }
+
+    @Test
+    void constructor_shouldLeaveNoJournalWhenDisabled() throws IOException {
+        // Arrange
+        Path missingDirectory = journalDirectory.resolve("missing");
+
+        // Act
+        GradeWriteBehind writeBehind = new GradeWriteBehind(studentRepository, new SchoolAggregateStore(studentRepository), tableVersion,
+                mock(PlatformTransactionManager.class), false, missingDirectory, GradeJournal.FsyncPolicy.PERIODIC, 1024);
+
+        // Assert
+        assertFalse(writeBehind.isEnabled());
+        assertThrows(IllegalStateException.class, () -> writeBehind.setGrade(1, (short) 30));
+        writeBehind.flush();
+        writeBehind.destroy();
+        assertFalse(Files.exists(missingDirectory));
+    }
+
+    private GradeWriteBehind start(int segmentBytes) {
+        return new GradeWriteBehind(studentRepository, new SchoolAggregateStore(studentRepository), tableVersion,
+                mock(PlatformTransactionManager.class), true, journalDirectory, GradeJournal.FsyncPolicy.ALWAYS, segmentBytes);
+    }
+
+    private int[] writeGrades(InvocationOnMock invocation) {
+        int[] ids = invocation.getArgument(0);
+        short[] gradeTenths = invocation.getArgument(1);
+        for (int i = 0; i < ids.length; i++)
+            writtenGrades.put(ids[i], gradeTenths[i]);
+        return new int[ids.length];
+    }
+
+    // What a start would replay, without starting
+    private Map<Integer, Short> replay() throws IOException {
+        Map<Integer, Short> grades = new HashMap<>();
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            segments = files.sorted().toList();
+        }
+        for (Path segment : segments) {
+            ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(segment));
+            while (records.remaining() >= GradeJournal.RECORD_BYTES) {
+                int studentId = records.getInt();
+                short gradeTenths = records.getShort();
+                records.getShort();
+                if (studentId == 0)
+                    break;
+                grades.put(studentId, gradeTenths);
+            }
+        }
+        return grades;
+    }
+
+    private long segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            return files.count();
+        }
+    }
+
+    // Stands in for the process dying, it isn't caught like a failing database
+    private static class ProcessKilled extends Error {
+    }
+}
@@ -0,0 +1,75 @@
+package se.verran.springbootdemowithtests.services;
+
+import org.junit.jupiter.api.Test;
+import se.verran.springbootdemowithtests.dto.StudentGroups;
+import se.verran.springbootdemowithtests.dto.StudentGroups.Group;
+
+import java.util.Arrays;
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupPartitionerTest {
+
+    @Test
+    void partition_shouldSnakeDraftByRank() {
+        // Ranks 1 - 7 with ids 101 - 107, three groups pick 1 2 3, 3 2 1, 1
+        RankedStudents students = rankedStudents(7);
+
+        StudentGroups result = GroupPartitioner.partition(students, 3);
+
+        assertEquals(7, result.numberOfStudents());
+        assertEquals(3, result.numberOfGroups());
+        assertArrayEquals(new int[]{101, 106, 107}, result.groups().get(0).studentIds());
+        assertArrayEquals(new int[]{102, 105}, result.groups().get(1).studentIds());
+        assertArrayEquals(new int[]{103, 104}, result.groups().get(2).studentIds());
+        assertEquals(List.of(1, 2, 3), result.groups().stream().map(Group::number).toList());
+    }
+
+    @Test
+    void partition_shouldSpreadTheRemainderAndBalanceAverages() {
+        RankedStudents students = new RankedStudents(new int[]{1, 2, 3, 4, 5}, new short[]{50, 40, 30, 20, -1});
+
+        StudentGroups result = GroupPartitioner.partition(students, 2);
+
+        // 5.0, 2.0 and the ungraded student against 4.0 and 3.0
+        assertEquals(3, result.groups().get(0).size());
+        assertEquals(2, result.groups().get(1).size());
+        assertEquals(3.5, result.groups().get(0).averageGrade());
+        assertEquals(3.5, result.groups().get(1).averageGrade());
+    }
+
+    @Test
+    void partition_shouldLeaveTheAverageOfUngradedGroupsEmpty() {
+        RankedStudents students = new RankedStudents(new int[]{1, 2}, new short[]{-1, -1});
+
+        StudentGroups result = GroupPartitioner.partition(students, 2);
+
+        assertNull(result.groups().get(0).averageGrade());
+        assertThrows(IllegalArgumentException.class, () -> GroupPartitioner.partition(students, 3));
+        assertThrows(IllegalArgumentException.class, () -> GroupPartitioner.partition(students, 0));
+    }
+
+    @Test
+    void partition_shouldAssignEveryStudentOnceInParallel() {
+        int numberOfStudents = GroupPartitioner.PARALLEL_THRESHOLD + 17;
+        RankedStudents students = rankedStudents(numberOfStudents);
+
+        StudentGroups result = GroupPartitioner.partition(students, 24);
+
+        int[] assigned = result.groups().stream().flatMapToInt(group -> Arrays.stream(group.studentIds())).sorted().toArray();
+        assertArrayEquals(students.ids(), assigned);
+        IntSummaryStatistics sizes = result.groups().stream().mapToInt(Group::size).summaryStatistics();
+        assertTrue(sizes.getMax() - sizes.getMin() <= 1);
+    }
+
+    private static RankedStudents rankedStudents(int numberOfStudents) {
+        int[] ids = IntStream.rangeClosed(101, 100 + numberOfStudents).toArray();
+        short[] gradeTenths = new short[numberOfStudents];
+        for (int rank = 0; rank < numberOfStudents; rank++)
+            gradeTenths[rank] = (short) (50 - rank * 50L / numberOfStudents);
+        return new RankedStudents(ids, gradeTenths);
+    }
+}
@@ -0,0 +1,233 @@
+package se.verran.springbootdemowithtests.services;
+
+import io.r2dbc.spi.R2dbcDataIntegrityViolationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.dto.StudentPatch;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.repositories.ReactiveStudentRepository;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+// StudentServiceTest for ReactiveStudentService, the same rules and errors
+class ReactiveStudentServiceTest {
+
+    private ReactiveStudentService studentService;
+
+    private ReactiveStudentRepository studentRepository;
+
+    private SchoolAggregateStore aggregateStore;
+
+    private StudentTableVersion tableVersion;
+
+    @BeforeEach
+    void setUp() {
+        studentRepository = mock(ReactiveStudentRepository.class);
+        aggregateStore = new SchoolAggregateStore(mock(StudentRepository.class));
+        tableVersion = new StudentTableVersion();
+        studentService = new ReactiveStudentService(studentRepository, aggregateStore, tableVersion);
+    }
+
+    @Test
+    void addStudent_shouldHandleUniqueAndExistingEmails() {
+        // Arrange
+        Student uniqueEmailStudent = new Student("Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "unique@example.com");
+        Student existingEmailStudent = new Student("Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "existing@example.com");
+        when(studentRepository.insert(uniqueEmailStudent)).thenReturn(Mono.just(uniqueEmailStudent));
+        when(studentRepository.insert(existingEmailStudent)).thenReturn(Mono.error(uniqueConstraintViolation(Student.EMAIL_CONSTRAINT)));
+
+        // Act & Assert for unique email, the store and the table version follow the insert
+        StepVerifier.create(studentService.addStudent(uniqueEmailStudent))
+                .expectNext(uniqueEmailStudent)
+                .verifyComplete();
+        assertEquals(1, aggregateStore.getNumberOfStudents());
+        assertEquals(1, tableVersion.current());
+
+        // Act & Assert for existing email
+        StepVerifier.create(studentService.addStudent(existingEmailStudent))
+                .expectErrorSatisfies(e -> assertEquals(HttpStatus.CONFLICT, ((ResponseStatusException) e).getStatusCode()))
+                .verify();
+        assertEquals(1, tableVersion.current());
+    }
+
+    @Test
+    void addStudent_shouldNotTurnOtherConstraintViolationsIntoConflicts() {
+        // Arrange
+        Student student = new Student("Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "unique@example.com");
+        when(studentRepository.insert(student)).thenReturn(Mono.error(uniqueConstraintViolation("some_other_constraint")));
+
+        // Act & Assert
+        StepVerifier.create(studentService.addStudent(student))
+                .expectError(DataIntegrityViolationException.class)
+                .verify();
+    }
+
+    @Test
+    void addAndUpdateStudent_shouldRejectGradesOutsideTheValidRange() {
+        // Arrange
+        Student tooHigh = new Student("Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "high@example.com");
+        tooHigh.setJavaProgrammingGrade(6.0);
+        Student negative = new Student("Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "negative@example.com");
+        negative.setId(1);
+        negative.setJavaProgrammingGrade(-0.1);
+
+        // Act & Assert
+        StepVerifier.create(studentService.addStudent(tooHigh))
+                .expectErrorSatisfies(e -> assertEquals(HttpStatus.NOT_ACCEPTABLE, ((ResponseStatusException) e).getStatusCode()))
+                .verify();
+        StepVerifier.create(studentService.updateStudent(negative))
+                .expectErrorSatisfies(e -> assertEquals(HttpStatus.NOT_ACCEPTABLE, ((ResponseStatusException) e).getStatusCode()))
+                .verify();
+        verifyNoInteractions(studentRepository);
+    }
+
+    @Test
+    void getStudentsByIds_shouldKeepTheOrderOfTheIds() {
+        // Arrange
+        StudentDto first = new StudentDto(1, "Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "first@example.com", 4.0, 0);
+        StudentDto second = new StudentDto(2, "Anna", "Berg", LocalDate.of(1990, 5, 3), "second@example.com", 3.0, 0);
+        when(studentRepository.findDtosByIdIn(List.of(2, 3, 1))).thenReturn(Flux.just(first, second));
+
+        // Act & Assert, id 3 has been deleted in the meantime
+        StepVerifier.create(studentService.getStudentsByIds(List.of(2, 3, 1)))
+                .expectNext(second, first)
+                .verifyComplete();
+    }
+
+    @Test
+    void getStudentById() {
+        // Arrange
+        StudentDto existingStudent = new StudentDto(1, "Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "abenezer@example.com", (Double) null, 0);
+        when(studentRepository.findDtoById(1)).thenReturn(Mono.just(existingStudent));
+        when(studentRepository.findDtoById(2)).thenReturn(Mono.empty());
+
+        // Act & Assert
+        StepVerifier.create(studentService.getStudentById(1))
+                .expectNext(existingStudent)
+                .verifyComplete();
+        StepVerifier.create(studentService.getStudentById(2))
+                .expectErrorSatisfies(e -> assertEquals(HttpStatus.NOT_FOUND, ((ResponseStatusException) e).getStatusCode()))
+                .verify();
+    }
+
+    @Test
+    void deleteStudent() {
+        // Arrange, one DELETE tells an existing student from a missing one
+        when(studentRepository.deleteById(1)).thenReturn(Mono.just(1L));
+        when(studentRepository.deleteById(2)).thenReturn(Mono.just(0L));
+
+        // Act & Assert
+        StepVerifier.create(studentService.deleteStudent(1)).verifyComplete();
+        StepVerifier.create(studentService.deleteStudent(2))
+                .expectErrorSatisfies(e -> assertEquals(HttpStatus.NOT_FOUND, ((ResponseStatusException) e).getStatusCode()))
+                .verify();
+        verify(studentRepository, never()).existsById(anyInt());
+        assertEquals(1, tableVersion.current());
+    }
+
+    @Test
+    void updateStudent() {
+        // Arrange, student 1 is at version 0, student 2 doesn't exist
+        Student existingStudent = new Student("Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "abenezer@example.com");
+        existingStudent.setId(1);
+        Student nonExistingStudent = new Student("Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "abenezer@example.com");
+        nonExistingStudent.setId(2);
+        when(studentRepository.update(existingStudent)).thenReturn(Mono.just(1L));
+        when(studentRepository.update(nonExistingStudent)).thenReturn(Mono.just(0L));
+        when(studentRepository.existsById(2)).thenReturn(Mono.just(false));
+
+        // Act & Assert for existing student, the version is the one the update wrote
+        StepVerifier.create(studentService.updateStudent(existingStudent))
+                .assertNext(result -> assertEquals(1, result.getVersion()))
+                .verifyComplete();
+        verify(studentRepository, never()).existsById(1);
+
+        // Act & Assert for non-existing student
+        StepVerifier.create(studentService.updateStudent(nonExistingStudent))
+                .expectErrorSatisfies(e -> assertEquals(HttpStatus.NOT_FOUND, ((ResponseStatusException) e).getStatusCode()))
+                .verify();
+    }
+
+    @Test
+    void setGradeForStudentById() {
+        // Arrange
+        when(studentRepository.updateGradeTenths(eq(1), anyShort())).thenReturn(Mono.just(1L));
+        when(studentRepository.updateGradeTenths(eq(2), anyShort())).thenReturn(Mono.just(0L));
+
+        // Act & Assert for valid grade, a single update without loading the student
+        StepVerifier.create(studentService.setGradeForStudentById(1, "3.0"))
+                .expectNext(3.0)
+                .verifyComplete();
+        verify(studentRepository).updateGradeTenths(1, (short) 30);
+        verify(studentRepository, never()).findDtoById(anyInt());
+
+        // Act & Assert for non-existing student
+        StepVerifier.create(studentService.setGradeForStudentById(2, "3.0"))
+                .expectErrorSatisfies(e -> assertEquals(HttpStatus.NOT_FOUND, ((ResponseStatusException) e).getStatusCode()))
+                .verify();
+
+        // Act & Assert for invalid grades, nothing reaches the database
+        for (String invalidGrade : new String[]{"invalidGrade", "-1.0", "6.0"}) {
+            StepVerifier.create(studentService.setGradeForStudentById(1, invalidGrade))
+                    .expectErrorSatisfies(e -> assertEquals(HttpStatus.NOT_ACCEPTABLE, ((ResponseStatusException) e).getStatusCode()))
+                    .verify();
+        }
+        verify(studentRepository, times(1)).updateGradeTenths(eq(1), anyShort());
+
+        // Act & Assert for min and max grade
+        StepVerifier.create(studentService.setGradeForStudentById(1, "0.0")).expectNext(0.0).verifyComplete();
+        StepVerifier.create(studentService.setGradeForStudentById(1, "5.0")).expectNext(5.0).verifyComplete();
+    }
+
+    @Test
+    void patchStudent() {
+        // Arrange, student 1 is at version 3, student 2 doesn't exist
+        StudentPatch patch = new StudentPatch(null, null, null, "changed@example.com", 4.5, 3);
+        when(studentRepository.patchStudent(1, 3, patch)).thenReturn(Mono.just(1L));
+        StudentPatch stalePatch = new StudentPatch("Anna", null, null, null, null, 2);
+        when(studentRepository.patchStudent(1, 2, stalePatch)).thenReturn(Mono.just(0L));
+        when(studentRepository.existsById(1)).thenReturn(Mono.just(true));
+        StudentPatch missingPatch = new StudentPatch("Anna", null, null, null, null, 0);
+        when(studentRepository.patchStudent(2, 0, missingPatch)).thenReturn(Mono.just(0L));
+        when(studentRepository.existsById(2)).thenReturn(Mono.just(false));
+
+        // Act & Assert, one update without loading the student
+        StepVerifier.create(studentService.patchStudent(1, patch)).expectNext(4).verifyComplete();
+        verify(studentRepository, never()).existsById(anyInt());
+
+        // Act & Assert, an older version is a conflict and a missing student is not found
+        StepVerifier.create(studentService.patchStudent(1, stalePatch))
+                .expectErrorSatisfies(e -> assertEquals(HttpStatus.CONFLICT, ((ResponseStatusException) e).getStatusCode()))
+                .verify();
+        StepVerifier.create(studentService.patchStudent(2, missingPatch))
+                .expectErrorSatisfies(e -> assertEquals(HttpStatus.NOT_FOUND, ((ResponseStatusException) e).getStatusCode()))
+                .verify();
+
+        // Act & Assert, nothing reaches the database without a version, without changes or with an invalid grade
+        StepVerifier.create(studentService.patchStudent(1, new StudentPatch("Anna", null, null, null, null, null)))
+                .expectErrorSatisfies(e -> assertEquals(HttpStatus.BAD_REQUEST, ((ResponseStatusException) e).getStatusCode()))
+                .verify();
+        StepVerifier.create(studentService.patchStudent(1, new StudentPatch(null, null, null, null, 5.5, 3)))
+                .expectErrorSatisfies(e -> assertEquals(HttpStatus.NOT_ACCEPTABLE, ((ResponseStatusException) e).getStatusCode()))
+                .verify();
+        verify(studentRepository, times(3)).patchStudent(anyInt(), anyInt(), any());
+    }
+
+    // What DatabaseClient turns a unique index violation from the driver into
+    private DataIntegrityViolationException uniqueConstraintViolation(String constraintName) {
+        return new DataIntegrityViolationException("insert into student",
+                new R2dbcDataIntegrityViolationException("Unique index or primary key violation: \"PUBLIC." + constraintName.toUpperCase() + " ON PUBLIC.STUDENT(EMAIL)\""));
+    }
+}
@@ -0,0 +1,144 @@
+package se.verran.springbootdemowithtests.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.verran.springbootdemowithtests.dto.StudentGrade;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SchoolAggregateStoreTest {
+
+    private SchoolAggregateStore aggregateStore;
+
+    private StudentRepository studentRepository;
+
+    @BeforeEach
+    void setUp() {
+        studentRepository = mock(StudentRepository.class);
+        aggregateStore = new SchoolAggregateStore(studentRepository);
+    }
+
+    @Test
+    void writesShouldUpdateCountAverageAndTopStudents() {
+        // Act
+        aggregateStore.studentSaved(student(1, 2.0));
+        aggregateStore.studentSaved(student(2, null));
+        aggregateStore.studentSaved(student(3, 4.0));
+        aggregateStore.studentSaved(student(1, 5.0));
+        aggregateStore.studentDeleted(3);
+
+        // Assert
+        assertEquals(2, aggregateStore.getNumberOfStudents());
+        assertEquals(1, aggregateStore.getNumberOfGradedStudents());
+        assertEquals(5.0, aggregateStore.getAverageGrade());
+        assertEquals(List.of(1, 2), aggregateStore.getTopStudentIds(5));
+        assertEquals(List.of(1), aggregateStore.getTopStudentIds(1));
+    }
+
+    @Test
+    void gradeChanged_shouldUpdateKnownStudentsOnly() {
+        // Arrange
+        aggregateStore.studentSaved(student(1, null));
+
+        // Act
+        aggregateStore.gradeChanged(1, (short) 35);
+        aggregateStore.gradeChanged(2, (short) 50);
+
+        // Assert, student 2 may have been deleted, the store doesn't bring it back
+        assertEquals(1, aggregateStore.getNumberOfStudents());
+        assertEquals(3.5, aggregateStore.getAverageGrade());
+    }
+
+    @Test
+    void getStudentsByGrade_shouldRankByGradeWithUngradedLast() {
+        // Arrange
+        aggregateStore.studentSaved(student(1, 2.0));
+        aggregateStore.studentSaved(student(2, null));
+        aggregateStore.studentSaved(student(3, 4.5));
+
+        // Act
+        RankedStudents students = aggregateStore.getStudentsByGrade();
+
+        // Assert
+        assertArrayEquals(new int[]{3, 1, 2}, students.ids());
+        assertArrayEquals(new short[]{45, 20, Short.MIN_VALUE}, students.gradeTenths());
+    }
+
+    @Test
+    void getAverageGrade_shouldBeNullWithoutGradedStudents() {
+        assertNull(aggregateStore.getAverageGrade());
+        aggregateStore.studentSaved(student(1, null));
+        assertNull(aggregateStore.getAverageGrade());
+    }
+
+    @Test
+    void concurrentWritesShouldAddUp() throws Exception {
+        // Arrange, every thread grades its own students and all of them delete and re-add student 0
+        int numberOfThreads = 8;
+        int studentsPerThread = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // Act
+        for (int thread = 0; thread < numberOfThreads; thread++) {
+            int firstId = 1 + thread * studentsPerThread;
+            futures.add(executor.submit(() -> {
+                for (int id = firstId; id < firstId + studentsPerThread; id++) {
+                    aggregateStore.studentSaved(student(id, 1.0));
+                    aggregateStore.studentSaved(student(id, 3.0));
+                    aggregateStore.studentDeleted(0);
+                    aggregateStore.studentSaved(student(0, 3.0));
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+
+        // Assert
+        assertEquals(numberOfThreads * studentsPerThread + 1, aggregateStore.getNumberOfStudents());
+        assertEquals(3.0, aggregateStore.getAverageGrade(), 1e-9);
+        assertEquals(numberOfThreads * studentsPerThread + 1, aggregateStore.getTopStudentIds(2 * numberOfThreads * studentsPerThread).size());
+    }
+
+    @Test
+    void reconcile_shouldRepairDrift() {
+        // Arrange, the store missed a grade change, a delete and an insert
+        aggregateStore.studentSaved(student(1, 2.0));
+        aggregateStore.studentSaved(student(2, 3.0));
+        Stream<StudentGrade> rowsInDatabase = Stream.of(studentGrade(1, (short) 40), studentGrade(3, null));
+        when(studentRepository.streamGrades()).thenReturn(rowsInDatabase);
+
+        // Act
+        aggregateStore.reconcile();
+
+        // Assert
+        assertEquals(2, aggregateStore.getNumberOfStudents());
+        assertEquals(4.0, aggregateStore.getAverageGrade());
+        assertEquals(List.of(1, 3), aggregateStore.getTopStudentIds(2));
+    }
+
+    private Student student(int id, Double grade) {
+        Student student = new Student();
+        student.setId(id);
+        student.setJavaProgrammingGrade(grade);
+        return student;
+    }
+
+    private StudentGrade studentGrade(int id, Short gradeTenths) {
+        StudentGrade studentGrade = mock(StudentGrade.class);
+        when(studentGrade.getId()).thenReturn(id);
+        when(studentGrade.getGradeTenths()).thenReturn(gradeTenths);
+        return studentGrade;
+    }
+}
@@ -0,0 +1,77 @@
+package se.verran.springbootdemowithtests.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import se.verran.springbootdemowithtests.dto.StudentAnalyticsRow;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SchoolAnalyticsServiceTest {
+
+    private StudentRepository studentRepository;
+
+    private ForkJoinPool pool;
+
+    @BeforeEach
+    void setUp() {
+        studentRepository = mock(StudentRepository.class);
+        pool = new ForkJoinPool(2);
+        when(studentRepository.streamAnalyticsRows()).thenAnswer(invocation -> Stream.of(
+                row(1, (short) 30, LocalDate.of(2000, 3, 3)),
+                row(2, null, LocalDate.of(2001, 4, 4))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void analytics_shouldShareTheSnapshotUntilItIsTooOld() {
+        // Arrange
+        SchoolAnalyticsService schoolAnalyticsService = service(Duration.ofHours(1));
+
+        // Act
+        schoolAnalyticsService.getGradePercentiles();
+        schoolAnalyticsService.getBirthYearCohorts();
+
+        // Assert
+        assertEquals(3.0, schoolAnalyticsService.getGradePercentiles().p50());
+        assertEquals(1, schoolAnalyticsService.getGradeDistribution().numberOfUngradedStudents());
+        verify(studentRepository, times(1)).streamAnalyticsRows();
+    }
+
+    @Test
+    void analytics_shouldReadTheTableAgainWhenTheSnapshotIsTooOld() {
+        // Arrange
+        SchoolAnalyticsService schoolAnalyticsService = service(Duration.ZERO);
+
+        // Act
+        schoolAnalyticsService.getBirthYearCohorts();
+        schoolAnalyticsService.getBirthYearCohorts();
+
+        // Assert
+        verify(studentRepository, times(2)).streamAnalyticsRows();
+    }
+
+    private SchoolAnalyticsService service(Duration snapshotMaxAge) {
+        return new SchoolAnalyticsService(studentRepository, pool, mock(PlatformTransactionManager.class), snapshotMaxAge);
+    }
+
+    private StudentAnalyticsRow row(int id, Short gradeTenths, LocalDate birthDate) {
+        StudentAnalyticsRow row = mock(StudentAnalyticsRow.class);
+        when(row.getId()).thenReturn(id);
+        when(row.getGradeTenths()).thenReturn(gradeTenths);
+        when(row.getBirthDate()).thenReturn(birthDate);
+        return row;
+    }
+}
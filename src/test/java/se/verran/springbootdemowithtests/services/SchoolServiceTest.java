@@ -3,7 +3,13 @@ package se.verran.springbootdemowithtests.services;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.web.server.ResponseStatusException;
+import se.verran.springbootdemowithtests.dto.GradeAggregates;
+import se.verran.springbootdemowithtests.dto.GradeStatistics;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.dto.StudentGroups;
 import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -19,12 +25,15 @@ class SchoolServiceTest {
 
     private StudentService studentService;
 
+    private SchoolAggregateStore aggregateStore;
+
 
     @BeforeEach
     void setUp() {
 
         studentService = mock(StudentService.class);
-        schoolService = new SchoolService(studentService);
+        aggregateStore = new SchoolAggregateStore(mock(StudentRepository.class));
+        schoolService = new SchoolService(studentService, aggregateStore);
 
     }
 
@@ -32,68 +41,46 @@ class SchoolServiceTest {
     void numberOfStudentsPerGroupWhenDivideIntoNumberOfGroups() {
 
         // Test case: numberOfGroups < 2
-        when(studentService.getAllStudents()).thenReturn(new ArrayList<>());
+        when(studentService.countStudents()).thenReturn(0);
         String result = schoolService.numberOfStudentsPerGroupWhenDivideIntoNumberOfGroups(1);
         assertEquals("There should be at least two groups", result);
-        verify(studentService, times(1)).getAllStudents();
+        verify(studentService, times(1)).countStudents();
 
         // Test case: numberOfStudents < numberOfGroups
-        List<Student> oneStudentList = new ArrayList<>();
-        oneStudentList.add(new Student());
-        when(studentService.getAllStudents()).thenReturn(oneStudentList);
+        when(studentService.countStudents()).thenReturn(1);
         result = schoolService.numberOfStudentsPerGroupWhenDivideIntoNumberOfGroups(2);
         assertEquals("Not able to divide 1 students into 2 groups", result);
-        verify(studentService, times(2)).getAllStudents();
+        verify(studentService, times(2)).countStudents();
 
         // Test case: numberOfStudents / numberOfGroups < 2
-        List<Student> twoStudentsList = new ArrayList<>();
-        for (int i = 0; i < 2; i++) {
-            twoStudentsList.add(new Student());
-        }
-        when(studentService.getAllStudents()).thenReturn(twoStudentsList);
+        when(studentService.countStudents()).thenReturn(2);
         result = schoolService.numberOfStudentsPerGroupWhenDivideIntoNumberOfGroups(2);
         assertEquals("Not able to manage 2 groups with 2 students", result);
-        verify(studentService, times(3)).getAllStudents();
+        verify(studentService, times(3)).countStudents();
 
         // Test case: remainder == 0
-        List<Student> tenStudentsList = new ArrayList<>();
-        for (int i = 0; i < 10; i++) {
-            tenStudentsList.add(new Student());
-        }
-        when(studentService.getAllStudents()).thenReturn(tenStudentsList);
+        when(studentService.countStudents()).thenReturn(10);
         result = schoolService.numberOfStudentsPerGroupWhenDivideIntoNumberOfGroups(2);
         assertEquals("2 groups could be formed with 5 students per group", result);
 
         // Test case: remainder != 0
-        List<Student> elevenStudentsList = new ArrayList<>();
-        for (int i = 0; i < 11; i++) {
-            elevenStudentsList.add(new Student());
-        }
-        when(studentService.getAllStudents()).thenReturn(elevenStudentsList);
+        when(studentService.countStudents()).thenReturn(11);
         result = schoolService.numberOfStudentsPerGroupWhenDivideIntoNumberOfGroups(2);
         assertEquals("2 groups could be formed with 5 students per group, but that would leave 1 student hanging", result);
-        verify(studentService, times(5)).getAllStudents();
+        verify(studentService, times(5)).countStudents();
 
 
         // Test case: reminder == 1 (for singular condition)
-        List<Student> nineStudentsList = new ArrayList<>();
-        for (int i = 0; i < 9; i++) {
-            nineStudentsList.add(new Student());
-        }
-        when(studentService.getAllStudents()).thenReturn(nineStudentsList);
+        when(studentService.countStudents()).thenReturn(9);
         result = schoolService.numberOfStudentsPerGroupWhenDivideIntoNumberOfGroups(4);
         assertEquals("4 groups could be formed with 2 students per group, but that would leave 1 student hanging", result);
-        verify(studentService, times(6)).getAllStudents();
+        verify(studentService, times(6)).countStudents();
 
         // Test case: remainder > 1 (for plural condition)
-        List<Student> fourteenStudentsList = new ArrayList<>();
-        for (int i = 0; i < 14; i++) {
-            fourteenStudentsList.add(new Student());
-        }
-        when(studentService.getAllStudents()).thenReturn(fourteenStudentsList);
+        when(studentService.countStudents()).thenReturn(14);
         result = schoolService.numberOfStudentsPerGroupWhenDivideIntoNumberOfGroups(5);
         assertEquals("5 groups could be formed with 2 students per group, but that would leave 4 students hanging", result);
-        verify(studentService, times(7)).getAllStudents();
+        verify(studentService, times(7)).countStudents();
     }
 
 
@@ -101,124 +88,168 @@ class SchoolServiceTest {
     @Test
     void numberOfGroupsWhenDividedIntoGroupsOf() {
         // Test case: studentsPerGroup < 2
-        when(studentService.getAllStudents()).thenReturn(new ArrayList<>());
+        when(studentService.countStudents()).thenReturn(0);
         String result = schoolService.numberOfGroupsWhenDividedIntoGroupsOf(1);
         assertEquals("Size of group should be at least 2", result);
-        verify(studentService, times (1)).getAllStudents();
+        verify(studentService, times (1)).countStudents();
 
 
         // Test case: numberOfStudents < studentsPerGroup
-        List<Student> oneStudentList = new ArrayList<>();
-        oneStudentList.add(new Student());
-        when(studentService.getAllStudents()).thenReturn(oneStudentList);
+        when(studentService.countStudents()).thenReturn(1);
         result = schoolService.numberOfGroupsWhenDividedIntoGroupsOf(3);
         assertEquals("Not able to manage groups of 3 with only 1 students", result);
-        verify (studentService, times(2)).getAllStudents();
+        verify (studentService, times(2)).countStudents();
 
 
         // Test case: numberOfStudents / studentsPerGroup < 2
-        List<Student> threeStudentsList = new ArrayList<>();
-        for (int i = 0; i < 3; i++) {
-            threeStudentsList.add(new Student());
-        }
-        when(studentService.getAllStudents()).thenReturn(threeStudentsList);
+        when(studentService.countStudents()).thenReturn(3);
         result = schoolService.numberOfGroupsWhenDividedIntoGroupsOf(2);
         assertEquals("Not able to manage groups of 2 with only 3 students", result);
-        verify(studentService, times(3)).getAllStudents();
+        verify(studentService, times(3)).countStudents();
 
         // Test case: remainder == 0
-        List<Student> tenStudentsList = new ArrayList<>();
-        for (int i = 0; i < 10; i++) {
-            tenStudentsList.add(new Student());
-        }
-        when(studentService.getAllStudents()).thenReturn(tenStudentsList);
+        when(studentService.countStudents()).thenReturn(10);
         result = schoolService.numberOfGroupsWhenDividedIntoGroupsOf(2);
         assertEquals("2 students per group is possible, there will be 5 groups", result);
-        verify(studentService, times(4)).getAllStudents();
+        verify(studentService, times(4)).countStudents();
 
         // Test case: remainder == 1
-        List<Student> elevenStudentsList = new ArrayList<>();
-        for (int i = 0; i<11; i++) {
-            elevenStudentsList.add(new Student());
-        }
-        when(studentService.getAllStudents()).thenReturn(elevenStudentsList);
+        when(studentService.countStudents()).thenReturn(11);
         result = schoolService.numberOfGroupsWhenDividedIntoGroupsOf(2);
         assertEquals("2 students per group is possible, there will be 5 groups, there will be 1 student hanging", result);
-        verify(studentService, times(5)).getAllStudents();
+        verify(studentService, times(5)).countStudents();
 
         // Test case: remainder > 1
-        List<Student> fourteenStudentsList = new ArrayList<>();
-        for (int i = 0; i<14; i++) {
-            fourteenStudentsList.add(new Student());
-        }
-        when(studentService.getAllStudents()).thenReturn(fourteenStudentsList);
+        when(studentService.countStudents()).thenReturn(14);
         result = schoolService.numberOfGroupsWhenDividedIntoGroupsOf(3);
         assertEquals("3 students per group is possible, there will be 4 groups, there will be 2 students hanging", result);
-        verify(studentService, times(6)).getAllStudents();
+        verify(studentService, times(6)).countStudents();
     }
 
 
+    @Test
+    void divideIntoGroups() {
+
+        // Test case: too small groups and too few students
+        assertThrows(ResponseStatusException.class, () -> schoolService.divideIntoGroupsOf(1));
+        assertThrows(ResponseStatusException.class, () -> schoolService.divideIntoNumberOfGroups(1));
+        for (int id = 1; id <= 3; id++)
+            aggregateStore.studentSaved(student(id, null));
+        assertThrows(ResponseStatusException.class, () -> schoolService.divideIntoGroupsOf(2));
+        assertThrows(ResponseStatusException.class, () -> schoolService.divideIntoNumberOfGroups(2));
+
+        // Test case: 7 students in groups of 3 gives 2 groups, the seventh student joins the group picking last
+        for (int id = 4; id <= 7; id++)
+            aggregateStore.studentSaved(student(id, (double) id % 5));
+        StudentGroups groups = schoolService.divideIntoGroupsOf(3);
+        assertEquals(7, groups.numberOfStudents());
+        assertEquals(2, groups.numberOfGroups());
+        assertEquals(List.of(3, 4), groups.groups().stream().map(StudentGroups.Group::size).toList());
+
+        // Test case: 3 groups of 7 students
+        groups = schoolService.divideIntoNumberOfGroups(3);
+        assertEquals(List.of(3, 2, 2), groups.groups().stream().map(StudentGroups.Group::size).toList());
+        verify(studentService, never()).getAllStudents();
+    }
+
     @Test
     void calculateAverageGrade() {
 
-        // Test case: studentList.isEmpty()
-        when(studentService.getAllStudents()).thenReturn(new ArrayList<>());
+        // Test case: no students
         assertThrows(RuntimeException.class, () -> schoolService.calculateAverageGrade());
-        verify(studentService, times(1)).getAllStudents();
 
-        // Test case: studentList.size() == 1
-        List<Student> oneStudentList = new ArrayList<>();
-        Student student = new Student();
-        student.setJavaProgrammingGrade(3.0);
-        oneStudentList.add(student);
-        when(studentService.getAllStudents()).thenReturn(oneStudentList);
+        // Test case: students but none of them graded
+        aggregateStore.studentSaved(student(1, null));
+        aggregateStore.studentSaved(student(2, null));
+        assertThrows(ResponseStatusException.class, () -> schoolService.calculateAverageGrade());
+
+        // Test case: graded students
+        aggregateStore.studentSaved(student(1, 2.0));
+        aggregateStore.studentSaved(student(3, 4.0));
         String result = schoolService.calculateAverageGrade();
         assertEquals("Average grade is 3.0", result);
-        verify(studentService, times(2)).getAllStudents();
-
-        // Test case: studentList.size() > 1
-        List<Student> threeStudentsList = new ArrayList<>();
-        for (int i = 0; i < 3; i++) {
-            Student student1 = new Student();
-            student1.setJavaProgrammingGrade(3.0);
-            threeStudentsList.add(student1);
-        }
-        when(studentService.getAllStudents()).thenReturn(threeStudentsList);
-        result = schoolService.calculateAverageGrade();
-        assertEquals("Average grade is 3.0", result);
-        verify(studentService, times(3)).getAllStudents();
+        verify(studentService, never()).getGradeAggregates();
+        verify(studentService, never()).getAllStudents();
+    }
 
+    @Test
+    void getGradeStatistics() {
+
+        // Test case: no graded students leaves the grade statistics empty
+        GradeAggregates noGradedStudents = gradeAggregates(2, 0, null);
+        when(studentService.getGradeAggregates()).thenReturn(noGradedStudents);
+        GradeStatistics result = schoolService.getGradeStatistics();
+        assertEquals(2, result.numberOfStudents());
+        assertNull(result.average());
+        assertNull(result.standardDeviation());
+        assertEquals(5, result.histogram().size());
+
+        // Test case: grades 2.0 and 4.0
+        GradeAggregates gradedStudents = gradeAggregates(3, 2, 3.0);
+        when(gradedStudents.getMin()).thenReturn(2.0);
+        when(gradedStudents.getMax()).thenReturn(4.0);
+        when(gradedStudents.getSumOfSquares()).thenReturn(20.0);
+        when(gradedStudents.getGradesFrom2()).thenReturn(1L);
+        when(gradedStudents.getGradesFrom4()).thenReturn(1L);
+        when(studentService.getGradeAggregates()).thenReturn(gradedStudents);
+        result = schoolService.getGradeStatistics();
+        assertEquals(3, result.numberOfStudents());
+        assertEquals(2, result.numberOfGradedStudents());
+        assertEquals(3.0, result.average());
+        assertEquals(2.0, result.min());
+        assertEquals(4.0, result.max());
+        assertEquals(1.0, result.standardDeviation(), 1e-9);
+        assertEquals(1, result.histogram().get(2).count());
+        assertEquals(1, result.histogram().get(4).count());
+        verify(studentService, never()).getAllStudents();
+    }
 
+    private GradeAggregates gradeAggregates(long numberOfStudents, long numberOfGradedStudents, Double average) {
+        GradeAggregates aggregates = mock(GradeAggregates.class);
+        when(aggregates.getNumberOfStudents()).thenReturn(numberOfStudents);
+        when(aggregates.getNumberOfGradedStudents()).thenReturn(numberOfGradedStudents);
+        when(aggregates.getAverage()).thenReturn(average);
+        return aggregates;
     }
 
     @Test
     void getTopScoringStudents() {
 
-        // Test case: When studentList is empty, expect a ResponseStatusException.
-        when(studentService.getAllStudents()).thenReturn(new ArrayList<>());
+        // Test case: When there are no students, expect a ResponseStatusException.
+        when(studentService.countStudents()).thenReturn(0);
         assertThrows(ResponseStatusException.class, () -> schoolService.getTopScoringStudents());
-        verify(studentService, times(1)).getAllStudents();
+        verify(studentService, never()).getStudentsByIds(anyList());
+
+        // Test case: numberOfStudents == 1
+        Student student = student(1, 1.0);
+        aggregateStore.studentSaved(student);
+        when(studentService.countStudents()).thenReturn(1);
+        when(studentService.getStudentsByIds(List.of(1))).thenReturn(List.of(new StudentDto(1, "Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "abenezer@example.com", 1.0, 0)));
+        List<StudentDto> result = schoolService.getTopScoringStudents();
+        assertEquals(1, result.size());
+        verify(studentService, times(1)).getStudentsByIds(List.of(1));
+
+        // Test case: numberOfStudents > 1, 20 percent of 3 rounds up to 1
+        aggregateStore.studentSaved(student(2, 4.0));
+        aggregateStore.studentSaved(student(3, null));
+        when(studentService.countStudents()).thenReturn(3);
+        schoolService.getTopScoringStudents();
+        verify(studentService, times(1)).getStudentsByIds(List.of(2));
+
+        // Test case: custom percent, 50 percent of 3 rounds up to 2
+        schoolService.getTopScoringStudents(50);
+        verify(studentService, times(1)).getStudentsByIds(List.of(2, 1));
+
+        // Test case: percent out of range
+        assertThrows(ResponseStatusException.class, () -> schoolService.getTopScoringStudents(0));
+        assertThrows(ResponseStatusException.class, () -> schoolService.getTopScoringStudents(101));
+        verify(studentService, never()).getAllStudents();
+    }
 
-        // Test case: studentList.size() == 1
-        List<Student> oneStudentList = new ArrayList<>();
+    private Student student(int id, Double grade) {
         Student student = new Student();
-        student.setJavaProgrammingGrade(1.0);
-        oneStudentList.add(student);
-        when(studentService.getAllStudents()).thenReturn(oneStudentList);
-        List<Student> result = schoolService.getTopScoringStudents();
-        assertEquals(1, result.size());
-        verify(studentService, times(2)).getAllStudents();
-
-        // Test case: studentList.size() > 1
-        List<Student> threeStudentsList = new ArrayList<>();
-        for (int i = 0; i < 3; i++) {
-            Student student1 = new Student();
-            student1.setJavaProgrammingGrade(3.0);
-            threeStudentsList.add(student1);
-        }
-        when(studentService.getAllStudents()).thenReturn(threeStudentsList);
-        result = schoolService.getTopScoringStudents();
-        assertEquals(1, result.size());
-        verify(studentService, times(3)).getAllStudents();
+        student.setId(id);
+        student.setJavaProgrammingGrade(grade);
+        return student;
     }
-}
\ No newline at end of file
+}
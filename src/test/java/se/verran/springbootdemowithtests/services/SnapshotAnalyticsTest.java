@@ -0,0 +1,87 @@
+package se.verran.springbootdemowithtests.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import se.verran.springbootdemowithtests.dto.BirthYearCohort;
+import se.verran.springbootdemowithtests.dto.GradeDistribution;
+import se.verran.springbootdemowithtests.dto.GradePercentiles;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotAnalyticsTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void compute_shouldCountPercentilesCohortsAndDistribution() {
+        // Arrange, grades 1.0 - 5.0 and one ungraded student, born in 1999 and 2001
+        StudentSnapshot snapshot = new StudentSnapshot(
+                new int[]{1, 2, 3, 4, 5, 6},
+                new short[]{10, 20, 30, 40, 50, StudentSnapshot.UNGRADED},
+                new int[]{epochDay(1999, 1, 1), epochDay(1999, 12, 31), epochDay(2001, 6, 1), epochDay(2001, 1, 1), epochDay(2001, 12, 31), epochDay(1999, 5, 5)});
+
+        // Act
+        SnapshotAnalytics analytics = SnapshotAnalytics.compute(snapshot, pool);
+
+        // Assert
+        assertEquals(new GradePercentiles(5, 1.0, 3.0, 5.0), analytics.getGradePercentiles());
+        assertEquals(List.of(new BirthYearCohort(1999, 3, 2, 1.5), new BirthYearCohort(2001, 3, 3, 4.0)), analytics.getBirthYearCohorts());
+        GradeDistribution distribution = analytics.getGradeDistribution();
+        assertEquals(1, distribution.numberOfUngradedStudents());
+        assertEquals(51, distribution.grades().size());
+        assertEquals(new GradeDistribution.GradeCount(2.0, 1), distribution.grades().get(20));
+        assertEquals(0, distribution.grades().get(21).count());
+    }
+
+    @Test
+    void compute_shouldLeaveEmptyResultsWithoutGrades() {
+        SnapshotAnalytics empty = SnapshotAnalytics.compute(new StudentSnapshot(new int[0], new short[0], new int[0]), pool);
+        SnapshotAnalytics ungraded = SnapshotAnalytics.compute(new StudentSnapshot(new int[]{1}, new short[]{StudentSnapshot.UNGRADED}, new int[]{0}), pool);
+
+        assertEquals(new GradePercentiles(0, null, null, null), empty.getGradePercentiles());
+        assertTrue(empty.getBirthYearCohorts().isEmpty());
+        assertEquals(List.of(new BirthYearCohort(1970, 1, 0, null)), ungraded.getBirthYearCohorts());
+    }
+
+    @Test
+    void snapshot_shouldRejectGradesOutsideTheValidRange() {
+        assertThrows(IllegalArgumentException.class, () -> new StudentSnapshot(new int[]{1}, new short[]{60}, new int[]{0}));
+        assertThrows(IllegalArgumentException.class, () -> new StudentSnapshot(new int[]{1}, new short[]{-2}, new int[]{0}));
+    }
+
+    @Test
+    void compute_shouldAddUpEveryLeaf() {
+        // Arrange, enough students for several leaves, every tenth and every year of 1980 - 2004
+        int numberOfStudents = SnapshotAnalytics.LEAF_SIZE * 5 + 3;
+        int[] ids = new int[numberOfStudents];
+        short[] gradeTenths = new short[numberOfStudents];
+        int[] birthEpochDays = new int[numberOfStudents];
+        for (int i = 0; i < numberOfStudents; i++) {
+            ids[i] = i + 1;
+            gradeTenths[i] = (short) (i % 51);
+            birthEpochDays[i] = epochDay(1980 + i % 25, 1 + i % 12, 1 + i % 28);
+        }
+
+        // Act
+        SnapshotAnalytics analytics = SnapshotAnalytics.compute(new StudentSnapshot(ids, gradeTenths, birthEpochDays), pool);
+
+        // Assert
+        assertEquals(25, analytics.getBirthYearCohorts().size());
+        assertEquals(numberOfStudents, analytics.getBirthYearCohorts().stream().mapToLong(BirthYearCohort::numberOfStudents).sum());
+        assertEquals(numberOfStudents, analytics.getGradeDistribution().grades().stream().mapToLong(GradeDistribution.GradeCount::count).sum());
+        assertEquals(2.5, analytics.percentile(50));
+    }
+
+    private static int epochDay(int year, int month, int day) {
+        return (int) LocalDate.of(year, month, day).toEpochDay();
+    }
+}
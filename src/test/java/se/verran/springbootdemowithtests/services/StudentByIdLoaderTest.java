@@ -0,0 +1,194 @@
+package se.verran.springbootdemowithtests.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StudentByIdLoaderTest {
+    private static final int THREADS = 20;
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private StudentRepository studentRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        studentRepository = mock(StudentRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void load_shouldShareOneQueryBetweenConcurrentLookupsOfTheSameId() throws Exception {
+        // Arrange, the query answers once every other thread waits for it
+        when(studentRepository.loadAllById(anyCollection())).thenAnswer(invocation -> {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (meterRegistry.counter("student.by.id.shared").count() < THREADS - 1 && System.nanoTime() < deadline)
+                Thread.sleep(1);
+            return students(invocation.getArgument(0));
+        });
+        StudentByIdLoader loader = new StudentByIdLoader(studentRepository, meterRegistry, Duration.ofMillis(1), 100, TIMEOUT);
+
+        // Act
+        List<Future<Optional<Student>>> lookups = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            lookups.add(executor.submit(() -> loader.load(7)));
+        }
+
+        // Assert
+        for (Future<Optional<Student>> lookup : lookups)
+            assertEquals(7, lookup.get(10, TimeUnit.SECONDS).orElseThrow().getId());
+        verify(studentRepository, times(1)).loadAllById(anyCollection());
+        verify(studentRepository, never()).findById(anyInt());
+    }
+
+    @Test
+    void load_shouldLoadDifferentIdsWithinTheWindowWithOneQuery() throws Exception {
+        // Arrange, the window is long enough for every thread to ask
+        when(studentRepository.loadAllById(anyCollection())).thenAnswer(invocation -> students(invocation.getArgument(0)));
+        StudentByIdLoader loader = new StudentByIdLoader(studentRepository, meterRegistry, Duration.ofSeconds(2), 100, TIMEOUT);
+
+        // Act
+        List<Future<Optional<Student>>> lookups = new ArrayList<>();
+        for (int id = 1; id <= THREADS; id++) {
+            int studentId = id;
+            lookups.add(executor.submit(() -> loader.load(studentId)));
+        }
+
+        // Assert
+        for (int id = 1; id <= THREADS; id++)
+            assertEquals(id, lookups.get(id - 1).get(10, TimeUnit.SECONDS).orElseThrow().getId());
+        verify(studentRepository, times(1)).loadAllById(anyCollection());
+        DistributionSummary batchSizes = meterRegistry.get("student.by.id.batch.size").summary();
+        assertEquals(1, batchSizes.count());
+        assertEquals(THREADS, batchSizes.totalAmount());
+    }
+
+    @Test
+    void load_shouldLoadAFullBatchWithoutWaitingForTheWindow() throws Exception {
+        // Arrange, a window that would outlast the test
+        when(studentRepository.loadAllById(anyCollection())).thenAnswer(invocation -> students(invocation.getArgument(0)));
+        StudentByIdLoader loader = new StudentByIdLoader(studentRepository, meterRegistry, Duration.ofMinutes(10), 5, TIMEOUT);
+
+        // Act
+        List<Future<Optional<Student>>> lookups = new ArrayList<>();
+        for (int id = 1; id <= 10; id++) {
+            int studentId = id;
+            lookups.add(executor.submit(() -> loader.load(studentId)));
+        }
+
+        // Assert, two full batches of five
+        for (Future<Optional<Student>> lookup : lookups)
+            assertTrue(lookup.get(10, TimeUnit.SECONDS).isPresent());
+        verify(studentRepository, times(2)).loadAllById(argThat(ids -> ids.size() == 5));
+    }
+
+    @Test
+    void load_shouldAnswerMissingStudentsAndFailuresOfTheQuery() {
+        // Arrange, id 2 doesn't exist and a query with id 3 fails
+        when(studentRepository.loadAllById(anyCollection())).thenAnswer(invocation -> {
+            Collection<Integer> ids = invocation.getArgument(0);
+            if (ids.contains(3))
+                throw new IllegalStateException("Connection lost");
+            return students(ids.stream().filter(id -> id != 2).toList());
+        });
+        StudentByIdLoader loader = new StudentByIdLoader(studentRepository, meterRegistry, Duration.ofMillis(1), 100, TIMEOUT);
+
+        // Act & Assert
+        assertTrue(loader.load(1).isPresent());
+        assertTrue(loader.load(2).isEmpty());
+        assertThrows(IllegalStateException.class, () -> loader.load(3));
+
+        // Act & Assert, a finished load isn't shared with the lookups after it
+        assertTrue(loader.load(1).isPresent());
+        verify(studentRepository, times(4)).loadAllById(anyCollection());
+    }
+
+    @Test
+    void load_shouldFailTheLookupsOfAQueryThatThrowsAnError() {
+        // Arrange
+        when(studentRepository.loadAllById(anyCollection()))
+                .thenThrow(new OutOfMemoryError("Java heap space"))
+                .thenAnswer(invocation -> students(invocation.getArgument(0)));
+        StudentByIdLoader loader = new StudentByIdLoader(studentRepository, meterRegistry, Duration.ofMillis(1), 100, TIMEOUT);
+
+        // Act & Assert, the failed load is gone and the next lookup gets its own
+        assertThrows(OutOfMemoryError.class, () -> loader.load(1));
+        assertTrue(loader.load(1).isPresent());
+    }
+
+    @Test
+    void load_shouldGiveUpOnALoadThatTakesLongerThanTheTimeout() {
+        // Arrange
+        when(studentRepository.loadAllById(anyCollection())).thenAnswer(invocation -> {
+            Thread.sleep(2000);
+            return students(invocation.getArgument(0));
+        });
+        StudentByIdLoader loader = new StudentByIdLoader(studentRepository, meterRegistry, Duration.ofMillis(1), 100, Duration.ofMillis(50));
+
+        // Act & Assert
+        assertThrows(QueryTimeoutException.class, () -> loader.load(1));
+    }
+
+    @Test
+    void load_shouldLoadItselfOnceTheTimerIsShutDown() {
+        // Arrange
+        when(studentRepository.loadAllById(anyCollection())).thenAnswer(invocation -> students(invocation.getArgument(0)));
+        StudentByIdLoader loader = new StudentByIdLoader(studentRepository, meterRegistry, Duration.ofMinutes(10), 100, TIMEOUT);
+        loader.destroy();
+
+        // Act & Assert, the lookup neither waits for a timer that never runs nor stays behind
+        assertTrue(loader.load(1).isPresent());
+        assertTrue(loader.load(1).isPresent());
+        verify(studentRepository, times(2)).loadAllById(List.of(1));
+    }
+
+    @Test
+    void load_shouldUseFindByIdWithoutAWindow() {
+        // Arrange
+        Student student = student(1);
+        when(studentRepository.findById(1)).thenReturn(Optional.of(student));
+        StudentByIdLoader loader = new StudentByIdLoader(studentRepository, meterRegistry, Duration.ZERO, 100, TIMEOUT);
+
+        // Act & Assert
+        assertSame(student, loader.load(1).orElseThrow());
+        verify(studentRepository, never()).loadAllById(anyCollection());
+    }
+
+    private static List<Student> students(Collection<Integer> ids) {
+        return ids.stream().map(StudentByIdLoaderTest::student).toList();
+    }
+
+    private static Student student(int id) {
+        Student student = new Student("First" + id, "Last" + id, LocalDate.of(1990, 1, 1), "student" + id + "@example.com");
+        student.setId(id);
+        return student;
+    }
+}
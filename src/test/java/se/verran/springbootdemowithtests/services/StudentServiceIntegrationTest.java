@@ -0,0 +1,201 @@
+package se.verran.springbootdemowithtests.services;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import se.verran.springbootdemowithtests.dto.StudentImportResult;
+import se.verran.springbootdemowithtests.entities.Student;
+import se.verran.springbootdemowithtests.repositories.StudentRepository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// StudentService against the H2 database, for behaviour that depends on the database itself
+@SpringBootTest
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class StudentServiceIntegrationTest {
+
+    @Autowired
+    private StudentService studentService;
+
+    @Autowired
+    private SchoolService schoolService;
+
+    @Autowired
+    private StudentImportService studentImportService;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void writesShouldNeverLeaveStaleCachedReads() {
+        // Every read below also fills the caches for the next one
+        Student first = studentService.addStudent(new Student("Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "first@example.com"));
+        assertEquals(1, studentService.countStudents());
+
+        studentService.setGradeForStudentById(first.getId(), "4.0");
+        assertEquals("Average grade is 4.0", schoolService.calculateAverageGrade());
+        assertEquals(4.0, studentService.getStudentById(first.getId()).getJavaProgrammingGrade());
+        assertEquals(1, schoolService.getTopScoringStudents(100).size());
+
+        Student second = studentService.addStudent(new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "second@example.com"));
+        studentService.setGradeForStudentById(second.getId(), "2.0");
+        assertEquals(2, studentService.countStudents());
+        assertEquals("Average grade is 3.0", schoolService.calculateAverageGrade());
+        assertEquals(2, schoolService.getTopScoringStudents(100).size());
+        assertEquals(2, studentService.getAllStudents().size());
+
+        Student changedFirst = studentService.getStudentById(first.getId());
+        changedFirst.setEmail("changed@example.com");
+        changedFirst.setJavaProgrammingGrade(1.0);
+        studentService.updateStudent(changedFirst);
+        assertEquals("changed@example.com", studentService.getStudentById(first.getId()).getEmail());
+        assertEquals("Average grade is 1.5", schoolService.calculateAverageGrade());
+        assertEquals(second.getId(), schoolService.getTopScoringStudents(50).get(0).id());
+        assertTrue(studentService.getAllStudents().stream().anyMatch(student -> student.email().equals("changed@example.com")));
+
+        studentService.deleteStudent(second.getId());
+        assertEquals(1, studentService.countStudents());
+        assertEquals("Average grade is 1.0", schoolService.calculateAverageGrade());
+        assertEquals(1, schoolService.getTopScoringStudents(100).size());
+        assertEquals(1, studentService.getAllStudents().size());
+    }
+
+    @Test
+    void emailsShouldConflictRegardlessOfCase() {
+        // Arrange
+        Student saved = studentService.addStudent(new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "Anna.Berg@Example.com"));
+
+        // Act
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () ->
+                studentService.addStudent(new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna.berg@example.com")));
+        StudentImportResult result = studentImportService.importStudents(List.of(
+                new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "ANNA.BERG@example.com")).iterator());
+
+        // Assert
+        assertEquals("anna.berg@example.com", studentService.getStudentById(saved.getId()).getEmail());
+        assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
+        assertEquals(0, result.imported());
+        assertEquals(1, result.conflicts().size());
+    }
+
+    @Test
+    void loadAllById_shouldOnlyQueryTheStudentsMissingFromTheSecondLevelCache() {
+        // Arrange, the first two of three students are in the second-level cache
+        List<Integer> ids = new ArrayList<>();
+        for (String email : List.of("first@example.com", "second@example.com", "third@example.com"))
+            ids.add(studentService.addStudent(new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), email)).getId());
+        SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        sessionFactory.getCache().evictEntityData(Student.class);
+        studentRepository.loadAllById(ids.subList(0, 2));
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        // Act
+        List<Student> cached = studentRepository.loadAllById(ids.subList(0, 2));
+        long statementsForCached = statistics.getPrepareStatementCount();
+        List<Student> all = studentRepository.loadAllById(ids);
+
+        // Assert
+        assertEquals(2, cached.size());
+        assertEquals(0, statementsForCached);
+        assertEquals(3, all.size());
+        assertEquals(4, statistics.getSecondLevelCacheHitCount());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void gradeUpdates_shouldKeepALoadThatReadTheOldRowOutOfTheSecondLevelCache() {
+        // Arrange, loads that begin before the updates and put the row they read into the cache after them
+        Student student = studentService.addStudent(new Student("Anna", "Berg", LocalDate.of(1990, 5, 3), "anna@example.com"));
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        EntityPersister persister = sessionFactory.getMappingMetamodel().getEntityDescriptor(Student.class);
+        EntityDataAccess cacheAccess = persister.getCacheAccessStrategy();
+        Object key = cacheAccess.generateCacheKey(student.getId(), persister, sessionFactory, null);
+        SessionImplementor firstLoad = sessionFactory.openSession();
+        studentRepository.findById(student.getId());
+        Object oldRow;
+        try (SessionImplementor reader = sessionFactory.openSession()) {
+            oldRow = cacheAccess.get(reader, key);
+        }
+        assertNotNull(oldRow);
+        sessionFactory.getCache().evictEntityData(Student.class, student.getId());
+
+        // Act & Assert, an update without a transaction
+        studentService.setGradeForStudentById(student.getId(), "4.0");
+        assertFalse(cacheAccess.putFromLoad(firstLoad, key, oldRow, 0, false));
+        assertEquals(4.0, studentRepository.findById(student.getId()).orElseThrow().getJavaProgrammingGrade());
+        firstLoad.close();
+
+        // Act & Assert, a batch inside a transaction, locked until it has committed
+        SessionImplementor secondLoad = sessionFactory.openSession();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            studentRepository.batchUpdateGradeTenths(new int[]{student.getId()}, new short[]{20});
+            assertFalse(cacheAccess.putFromLoad(secondLoad, key, oldRow, 0, false));
+        });
+        assertFalse(cacheAccess.putFromLoad(secondLoad, key, oldRow, 0, false));
+        assertEquals(2.0, studentRepository.findById(student.getId()).orElseThrow().getJavaProgrammingGrade());
+        secondLoad.close();
+    }
+
+    @Test
+    void addStudent_concurrentInsertsOfSameEmailShouldLetExactlyOneSucceed() throws Exception {
+        int numberOfThreads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<HttpStatus>> results = new ArrayList<>();
+        for (int i = 0; i < numberOfThreads; i++) {
+            results.add(executor.submit(() -> {
+                Student student = new Student("Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "same@example.com");
+                start.await();
+                try {
+                    studentService.addStudent(student);
+                    return HttpStatus.OK;
+                } catch (ResponseStatusException e) {
+                    return HttpStatus.valueOf(e.getStatusCode().value());
+                }
+            }));
+        }
+        start.countDown();
+
+        int succeeded = 0;
+        int conflicts = 0;
+        for (Future<HttpStatus> result : results) {
+            HttpStatus status = result.get();
+            if (status == HttpStatus.OK)
+                succeeded++;
+            else if (status == HttpStatus.CONFLICT)
+                conflicts++;
+        }
+        executor.shutdown();
+
+        assertEquals(1, succeeded);
+        assertEquals(numberOfThreads - 1, conflicts);
+        assertEquals(1, studentService.countStudents());
+    }
+}
@@ -1,12 +1,25 @@
 package se.verran.springbootdemowithtests.services;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
+import se.verran.springbootdemowithtests.dto.StudentDto;
+import se.verran.springbootdemowithtests.dto.StudentPatch;
 import se.verran.springbootdemowithtests.entities.Student;
 import se.verran.springbootdemowithtests.repositories.StudentRepository;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -19,11 +32,20 @@ class StudentServiceTest {
 
     private StudentRepository studentRepository;
 
+    private SchoolAggregateStore aggregateStore;
+
+    @TempDir
+    private Path journalDirectory;
+
     @BeforeEach
     void setUp() {
 
         studentRepository = mock(StudentRepository.class);
-        studentService = new StudentService(studentRepository);
+        aggregateStore = new SchoolAggregateStore(studentRepository);
+        // Without a batch window every lookup is a findById, and grades are written right away
+        StudentByIdLoader studentByIdLoader = new StudentByIdLoader(studentRepository, new SimpleMeterRegistry(), Duration.ZERO, 1, Duration.ofSeconds(10));
+        studentService = new StudentService(studentRepository, aggregateStore, new StudentTableVersion(), studentByIdLoader,
+                gradeWriteBehind(false));
 
 
     }
@@ -36,36 +58,96 @@ class StudentServiceTest {
         Student existingEmailStudent = new Student("Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "existing@example.com");
 
         // Mock behavior for unique email
-        when(studentRepository.existsStudentByEmail(uniqueEmailStudent.getEmail())).thenReturn(false);
-        when(studentRepository.save(uniqueEmailStudent)).thenReturn(uniqueEmailStudent);
+        when(studentRepository.saveAndFlush(uniqueEmailStudent)).thenReturn(uniqueEmailStudent);
 
-        // Mock behavior for existing email
-        when(studentRepository.existsStudentByEmail(existingEmailStudent.getEmail())).thenReturn(true);
+        // Mock behavior for existing email, the database rejects it on the unique constraint
+        when(studentRepository.saveAndFlush(existingEmailStudent)).thenThrow(uniqueConstraintViolation(Student.EMAIL_CONSTRAINT));
 
         // Act & Assert for unique email
         assertDoesNotThrow(() -> {
             Student result = studentService.addStudent(uniqueEmailStudent);
             assertEquals(uniqueEmailStudent.getEmail(), result.getEmail());
         });
-        verify(studentRepository).existsStudentByEmail(uniqueEmailStudent.getEmail());
-        verify(studentRepository).save(uniqueEmailStudent);
+        verify(studentRepository).saveAndFlush(uniqueEmailStudent);
 
         // Act & Assert for existing email
-        assertThrows(ResponseStatusException.class, () -> studentService.addStudent(existingEmailStudent));
-        verify(studentRepository).existsStudentByEmail(existingEmailStudent.getEmail());
-        verify(studentRepository, never()).save(existingEmailStudent);
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> studentService.addStudent(existingEmailStudent));
+        assertEquals(HttpStatus.CONFLICT, exception.getStatusCode());
+        verify(studentRepository, never()).existsStudentByEmail(anyString());
+    }
+
+    @Test
+    void addStudent_shouldNotTurnOtherConstraintViolationsIntoConflicts() {
+        // Arrange
+        Student student = new Student("Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "unique@example.com");
+        when(studentRepository.saveAndFlush(student)).thenThrow(uniqueConstraintViolation("some_other_constraint"));
+
+        // Act & Assert
+        assertThrows(DataIntegrityViolationException.class, () -> studentService.addStudent(student));
+    }
+
+    @Test
+    void addAndUpdateStudent_shouldRejectGradesOutsideTheValidRange() {
+        // Arrange, 6.0 and -0.1 would be stored as 60 and -1 tenths
+        Student tooHigh = new Student("Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "high@example.com");
+        tooHigh.setJavaProgrammingGrade(6.0);
+        Student negative = new Student("Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "negative@example.com");
+        negative.setId(1);
+        negative.setJavaProgrammingGrade(-0.1);
+
+        // Act & Assert
+        assertEquals(HttpStatus.NOT_ACCEPTABLE, assertThrows(ResponseStatusException.class, () -> studentService.addStudent(tooHigh)).getStatusCode());
+        assertEquals(HttpStatus.NOT_ACCEPTABLE, assertThrows(ResponseStatusException.class, () -> studentService.updateStudent(negative)).getStatusCode());
+        verifyNoInteractions(studentRepository);
+    }
+
+    private DataIntegrityViolationException uniqueConstraintViolation(String constraintName) {
+        return new DataIntegrityViolationException("could not execute statement",
+                new ConstraintViolationException("Unique index or primary key violation", new SQLException(), constraintName));
     }
 
     @Test
     void getAllStudents() {
         // Arrange
-        when(studentRepository.findAll()).thenReturn(null);
+        when(studentRepository.findAllDtos()).thenReturn(null);
 
         // Act
         studentService.getAllStudents();
 
-        // Assert
-        verify(studentRepository).findAll();
+        // Assert, the students are selected as DTOs instead of loaded as entities
+        verify(studentRepository).findAllDtos();
+        verify(studentRepository, never()).findAll();
+    }
+
+    @Test
+    void countStudents() {
+        // Arrange
+        Student student = new Student("Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "abenezer@example.com");
+        student.setId(1);
+        when(studentRepository.saveAndFlush(student)).thenReturn(student);
+        when(studentRepository.existsById(1)).thenReturn(true);
+
+        // Act & Assert, the count follows the writes without asking the database
+        studentService.addStudent(student);
+        assertEquals(1, studentService.countStudents());
+        studentService.deleteStudent(1);
+        assertEquals(0, studentService.countStudents());
+        verify(studentRepository, never()).count();
+        verify(studentRepository, never()).findAll();
+    }
+
+    @Test
+    void getStudentsByIds_shouldKeepTheOrderOfTheIds() {
+        // Arrange
+        StudentDto first = new StudentDto(1, "Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "first@example.com", 4.0, 0);
+        StudentDto second = new StudentDto(2, "Anna", "Berg", LocalDate.of(1990, 5, 3), "second@example.com", 3.0, 0);
+        when(studentRepository.findDtosByIdIn(List.of(2, 3, 1))).thenReturn(List.of(first, second));
+
+        // Act
+        List<StudentDto> result = studentService.getStudentsByIds(List.of(2, 3, 1));
+
+        // Assert, id 3 has been deleted in the meantime
+        assertEquals(List.of(second, first), result);
     }
 
     @Test
@@ -161,27 +243,21 @@ class StudentServiceTest {
         String minGradeAsString = "0.0";
         String maxGradeAsString = "5.0";
         String belowZeroGradeAsString = "-1.0";
-        Student student = new Student();
-        student.setId(existingStudentId);
-        student.setJavaProgrammingGrade(3.0);
 
-        when(studentRepository.findById(existingStudentId)).thenReturn(Optional.of(student));
-        when(studentRepository.findById(nonExistingStudentId)).thenReturn(Optional.empty());
-        when(studentRepository.save(student)).thenReturn(student);
+        when(studentRepository.updateGradeTenths(eq(existingStudentId), anyShort())).thenReturn(1);
+        when(studentRepository.updateGradeTenths(eq(nonExistingStudentId), anyShort())).thenReturn(0);
 
-        // Act & Assert for valid grade
-        assertDoesNotThrow(() -> {
-            Student result = studentService.setGradeForStudentById(existingStudentId, validGradeAsString);
-            assertEquals(3.0, result.getJavaProgrammingGrade());
-        });
-        verify(studentRepository, times(1)).findById(existingStudentId);
-        verify(studentRepository, times(1)).save(student);
+        // Act & Assert for valid grade, a single update without loading the student
+        assertEquals(3.0, studentService.setGradeForStudentById(existingStudentId, validGradeAsString));
+        verify(studentRepository, times(1)).updateGradeTenths(existingStudentId, (short) 30);
+        verify(studentRepository, never()).findById(anyInt());
+        verify(studentRepository, never()).save(any());
 
         // Act & Assert for non-existing student
-        assertThrows(ResponseStatusException.class, () -> {
+        ResponseStatusException notFound = assertThrows(ResponseStatusException.class, () -> {
             studentService.setGradeForStudentById(nonExistingStudentId, validGradeAsString);
         });
-        verify(studentRepository, times(1)).findById(nonExistingStudentId);
+        assertEquals(HttpStatus.NOT_FOUND, notFound.getStatusCode());
 
         // Act & Assert for invalid grade format
         assertThrows(ResponseStatusException.class, () -> {
@@ -194,23 +270,93 @@ class StudentServiceTest {
         });
 
         // Act & Assert for grade above max
-        assertThrows(ResponseStatusException.class, () -> {
+        ResponseStatusException notAcceptable = assertThrows(ResponseStatusException.class, () -> {
             studentService.setGradeForStudentById(existingStudentId, invalidGradeAsString);
         });
+        assertEquals(HttpStatus.NOT_ACCEPTABLE, notAcceptable.getStatusCode());
+        verify(studentRepository, times(1)).updateGradeTenths(eq(existingStudentId), anyShort());
 
         // Act & Assert for min grade
-        assertDoesNotThrow(() -> {
-            Student result = studentService.setGradeForStudentById(existingStudentId, minGradeAsString);
-            assertEquals(0.0, result.getJavaProgrammingGrade());
-        });
+        assertEquals(0.0, studentService.setGradeForStudentById(existingStudentId, minGradeAsString));
 
         // Act & Assert for max grade
-        assertDoesNotThrow(() -> {
-            Student result = studentService.setGradeForStudentById(existingStudentId, maxGradeAsString);
-            assertEquals(5.0, result.getJavaProgrammingGrade());
-        });
+        assertEquals(5.0, studentService.setGradeForStudentById(existingStudentId, maxGradeAsString));
     }
 
+    @Test
+    void patchStudent() {
+        // Arrange, student 1 is at version 3, student 2 doesn't exist
+        StudentPatch patch = new StudentPatch(null, null, null, "changed@example.com", 4.5, 3);
+        when(studentRepository.patchStudent(1, 3, patch)).thenReturn(1);
+        StudentPatch stalePatch = new StudentPatch("Anna", null, null, null, null, 2);
+        when(studentRepository.patchStudent(1, 2, stalePatch)).thenReturn(0);
+        when(studentRepository.existsById(1)).thenReturn(true);
+        StudentPatch missingPatch = new StudentPatch("Anna", null, null, null, null, 0);
+        when(studentRepository.patchStudent(2, 0, missingPatch)).thenReturn(0);
+
+        // Act & Assert, one update without loading the student
+        assertEquals(4, studentService.patchStudent(1, patch));
+        verify(studentRepository, never()).findById(anyInt());
+        verify(studentRepository, never()).existsById(anyInt());
+
+        // Act & Assert, an older version is a conflict and a missing student is not found
+        assertEquals(HttpStatus.CONFLICT, assertThrows(ResponseStatusException.class, () -> studentService.patchStudent(1, stalePatch)).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, assertThrows(ResponseStatusException.class, () -> studentService.patchStudent(2, missingPatch)).getStatusCode());
+
+        // Act & Assert, nothing reaches the database without a version, without changes or with an invalid grade
+        assertEquals(HttpStatus.BAD_REQUEST, assertThrows(ResponseStatusException.class,
+                () -> studentService.patchStudent(1, new StudentPatch("Anna", null, null, null, null, null))).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, assertThrows(ResponseStatusException.class,
+                () -> studentService.patchStudent(1, new StudentPatch(null, null, null, null, null, 3))).getStatusCode());
+        assertEquals(HttpStatus.NOT_ACCEPTABLE, assertThrows(ResponseStatusException.class,
+                () -> studentService.patchStudent(1, new StudentPatch(null, null, null, null, 5.5, 3))).getStatusCode());
+        verify(studentRepository, times(3)).patchStudent(anyInt(), anyInt(), any());
+    }
 
+    @Test
+    void setGradeForStudentById_withWriteBehindShouldBeReadBeforeItIsWritten() {
+        // Arrange, student 1 has 2.0 at version 2, student 2 doesn't exist
+        StudentTableVersion tableVersion = new StudentTableVersion();
+        studentService = new StudentService(studentRepository, aggregateStore, tableVersion,
+                new StudentByIdLoader(studentRepository, new SimpleMeterRegistry(), Duration.ZERO, 1, Duration.ofSeconds(10)), gradeWriteBehind(true));
+        Student student = new Student("Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "abenezer@example.com");
+        student.setId(1);
+        student.setJavaProgrammingGrade(2.0);
+        student.setVersion(2);
+        aggregateStore.studentSaved(student);
+        when(studentRepository.existsById(1)).thenReturn(true);
+        when(studentRepository.findById(1)).thenReturn(Optional.of(student));
+        when(studentRepository.findAllDtos()).thenReturn(List.of(new StudentDto(1, "Abenezer", "Anglo", LocalDate.of(1983, 1, 29), "abenezer@example.com", (short) 20, 2)));
+        when(studentRepository.batchUpdateGradeTenths(any(), any())).thenReturn(new int[]{1});
 
-}
\ No newline at end of file
+        // Act
+        assertEquals(4.5, studentService.setGradeForStudentById(1, "4.5"));
+
+        // Assert, nothing is written yet and reads show the grade with the version the write gives the row.
+        // The table version moves on at once, so no cached response hides the grade. The aggregates
+        // follow once it has been written.
+        verify(studentRepository, never()).updateGradeTenths(anyInt(), anyShort());
+        verify(studentRepository, never()).batchUpdateGradeTenths(any(), any());
+        assertEquals(1, tableVersion.current());
+        assertEquals(2.0, aggregateStore.getAverageGrade());
+        Student read = studentService.getStudentById(1);
+        assertEquals(4.5, read.getJavaProgrammingGrade());
+        assertEquals(3, read.getVersion());
+        assertEquals(2.0, student.getJavaProgrammingGrade());
+        assertEquals(4.5, studentService.getAllStudents().get(0).javaProgrammingGrade());
+        assertEquals(HttpStatus.NOT_FOUND, assertThrows(ResponseStatusException.class,
+                () -> studentService.setGradeForStudentById(2, "4.5")).getStatusCode());
+
+        // Act & Assert, an update of the student writes the pending grade before it
+        when(studentRepository.save(read)).thenReturn(read);
+        studentService.updateStudent(read);
+        InOrder inOrder = inOrder(studentRepository);
+        inOrder.verify(studentRepository).batchUpdateGradeTenths(new int[]{1}, new short[]{45});
+        inOrder.verify(studentRepository).save(read);
+    }
+
+    private GradeWriteBehind gradeWriteBehind(boolean enabled) {
+        return new GradeWriteBehind(studentRepository, aggregateStore, new StudentTableVersion(), mock(PlatformTransactionManager.class), enabled,
+                journalDirectory, GradeJournal.FsyncPolicy.NEVER, 1024);
+    }
+}
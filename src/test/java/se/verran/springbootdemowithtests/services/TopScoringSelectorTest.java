@@ -0,0 +1,52 @@
+package se.verran.springbootdemowithtests.services;
+
+import org.junit.jupiter.api.Test;
+import se.verran.springbootdemowithtests.entities.Student;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopScoringSelectorTest {
+
+    @Test
+    void selectTop_shouldReturnHighestGradesInDescendingOrder() {
+        List<Student> students = new ArrayList<>();
+        for (double grade : new double[]{2.0, 4.5, 1.0, 5.0, 3.5, 0.5}) {
+            students.add(studentWithGrade(grade));
+        }
+
+        List<Student> result = TopScoringSelector.selectTop(students, 3);
+
+        assertEquals(3, result.size());
+        assertEquals(5.0, result.get(0).getJavaProgrammingGrade());
+        assertEquals(4.5, result.get(1).getJavaProgrammingGrade());
+        assertEquals(3.5, result.get(2).getJavaProgrammingGrade());
+    }
+
+    @Test
+    void selectTop_shouldPutStudentsWithoutGradeLast() {
+        List<Student> students = List.of(studentWithGrade(null), studentWithGrade(1.0), studentWithGrade(null));
+
+        List<Student> result = TopScoringSelector.selectTop(students, 2);
+
+        assertEquals(1.0, result.get(0).getJavaProgrammingGrade());
+        assertNull(result.get(1).getJavaProgrammingGrade());
+    }
+
+    @Test
+    void selectTop_shouldHandleSmallInputs() {
+        List<Student> students = List.of(studentWithGrade(3.0));
+
+        assertEquals(1, TopScoringSelector.selectTop(students, 5).size());
+        assertTrue(TopScoringSelector.selectTop(students, 0).isEmpty());
+        assertTrue(TopScoringSelector.selectTop(List.of(), 3).isEmpty());
+    }
+
+    private Student studentWithGrade(Double grade) {
+        Student student = new Student();
+        student.setJavaProgrammingGrade(grade);
+        return student;
+    }
+}